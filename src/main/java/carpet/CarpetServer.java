@@ -26,7 +26,8 @@ import carpet.api.settings.SettingsManager;
 import carpet.logging.HUDController;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
-import carpet.script.utils.ParticleParser;
+import carpet.script.utils.ParseCache;
+import carpet.utils.CarpetProfiler;
 import carpet.utils.MobAI;
 import carpet.utils.SpawnReporter;
 import com.mojang.brigadier.CommandDispatcher;
@@ -108,6 +109,7 @@ public class CarpetServer // static for now - easier to handle all around the co
     {
         HUDController.update_hud(server, null);
         if (scriptServer != null) scriptServer.tick();
+        DrawCommand.tick();
 
         //in case something happens
         CarpetSettings.impendingFillSkipUpdates.set(false);
@@ -187,11 +189,13 @@ public class CarpetServer // static for now - easier to handle all around the co
             }
 
             scriptServer = null;
+            DrawCommand.clearPending();
             ServerNetworkHandler.close();
 
             LoggerRegistry.stopLoggers();
             HUDController.resetScarpetHUDs();
-            ParticleParser.resetCache();
+            ParseCache.clearAll();
+            CarpetProfiler.forget_levels();
             extensions.forEach(e -> e.onServerClosed(server));
             minecraft_server = null;
         }
@@ -223,6 +227,7 @@ public class CarpetServer // static for now - easier to handle all around the co
 
     public static void onReload(MinecraftServer server)
     {
+        ParseCache.clearAll();
         scriptServer.reload(server);
         extensions.forEach(e -> e.onReload(server));
     }
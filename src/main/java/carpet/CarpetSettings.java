@@ -421,6 +421,27 @@ public class CarpetSettings
     )
     public static String commandProfile = "true";
 
+    @Rule(
+            desc = "Keeps recording how long ticks and their parts take, to show their percentiles with /profile histograms",
+            extra = "Covers the last hour, and is also available to scarpet apps with system_info('server_tick_histograms')",
+            category = COMMAND
+    )
+    public static boolean tickHealthHistograms = false;
+
+    @Rule(
+            desc = "Saves a report of the last ticks to the lag_spikes folder of the world when a tick takes longer than this many milliseconds",
+            extra = {
+                    "Reports list sections, slowest entity types per dimension and slowest chunks, at most one a minute",
+                    "Players subscribed to the lagSpikes logger are told when a report is saved",
+                    "0 turns it off, as entity and block entity ticks are timed while it is on"
+            },
+            options = {"0", "100", "250", "1000"},
+            category = COMMAND,
+            strict = false,
+            validate = Validators.NonNegativeNumber.class
+    )
+    public static int lagSpikeThreshold = 0;
+
     @Rule(
             desc = "Required permission level for /perf command",
             options = {"2", "4"},
@@ -489,6 +510,16 @@ public class CarpetSettings
     @Rule(desc = "Enables /draw commands", extra = {"... allows for drawing simple shapes or","other shapes which are sorta difficult to do normally"}, category = COMMAND)
     public static String commandDraw = "ops";
 
+    @Rule(
+            desc = "Number of blocks /draw places each tick, spreading larger shapes over many ticks",
+            extra = {"0 places whole shapes at once", "Shapes still being drawn can be stopped with /draw cancel"},
+            options = {"0", "4096", "32768"},
+            category = CREATIVE,
+            strict = false,
+            validate = Validators.NonNegativeNumber.class
+    )
+    public static int drawBlocksPerTick = 0;
+
 
     @Rule(
             desc = "Enables /script command",
@@ -552,6 +583,13 @@ public class CarpetSettings
     )
     public static boolean scriptsOptimization = true;
 
+    @Rule(
+            desc = "Compiles frequently called scarpet functions to JVM bytecode",
+            extra = {"Can also be enabled for a single app when loading it with '/script load <app> compiled'"},
+            category = {SCARPET, EXPERIMENTAL}
+    )
+    public static boolean scriptsCompilation = false;
+
     private static class ScarpetAppStore extends Validator<String> {
         @Override
         public String validate(CommandSourceStack source, CarpetRule<String> currentRule, String newValue, String stringInput) {
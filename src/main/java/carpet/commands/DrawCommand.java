@@ -13,6 +13,10 @@ import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.RequiredArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -26,7 +30,6 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
 import net.minecraft.world.Container;
-import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.pattern.BlockInWorld;
 import java.lang.Math;
@@ -78,7 +81,9 @@ public class DrawCommand
                                 then(argument("radius", IntegerArgumentType.integer(1)).
                                         then(argument("height",IntegerArgumentType.integer(1)).
                                                 then(argument("orientation",StringArgumentType.word()).suggests( (c, b) -> suggest(new String[]{"y","x","z"},b))
-                                                        .then(drawShape(c -> DrawCommand.drawPrism(c, "square"), context)))))));
+                                                        .then(drawShape(c -> DrawCommand.drawPrism(c, "square"), context))))))).
+                then(literal("cancel").
+                        executes(c -> cancel(c.getSource())));
         dispatcher.register(command);
     }
 
@@ -126,6 +131,24 @@ public class DrawCommand
         return (x * x) + (y * y) + (z * z);
     }
 
+    @FunctionalInterface
+    private interface PositionSink
+    {
+        void accept(int x, int y, int z);
+    }
+
+    /**
+     * Shape split into layers, so large shapes can be generated a bit at a time
+     */
+    @FunctionalInterface
+    private interface Shape
+    {
+        /**
+         * @return false if the shape has no such layer, and all layers have been generated
+         */
+        boolean layer(int index, PositionSink sink);
+    }
+
     private static int setBlock(
             ServerLevel world, BlockPos.MutableBlockPos mbpos, int x, int y, int z,
             BlockInput block, Predicate<BlockInWorld> replacement,
@@ -151,6 +174,180 @@ public class DrawCommand
         return success;
     }
 
+    private static int draw(CommandSourceStack source, Shape shape, BlockInput block, Predicate<BlockInWorld> replacement)
+    {
+        ServerLevel world = source.getLevel();
+        if (CarpetSettings.drawBlocksPerTick > 0)
+        {
+            jobs.add(new DrawJob(source, world, shape, block, replacement));
+            Messenger.m(source, "gi Drawing the shape, " + CarpetSettings.drawBlocksPerTick + " blocks per tick");
+            return 1;
+        }
+        int[] affected = new int[]{0};
+        BlockPos.MutableBlockPos mbpos = new BlockPos.MutableBlockPos();
+        List<BlockPos> list = Lists.newArrayList();
+
+        CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
+        PositionSink sink = (x, y, z) -> affected[0] += setBlock(world, mbpos, x, y, z, block, replacement, list);
+        for (int layer = 0; shape.layer(layer, sink); layer++)
+        {
+        }
+        CarpetSettings.impendingFillSkipUpdates.set(false);
+
+        if (CarpetSettings.fillUpdates)
+        {
+            list.forEach(p -> world.updateNeighborsAt(p, world.getBlockState(p).getBlock()));
+        }
+        Messenger.m(source, "gi Filled " + affected[0] + " blocks");
+        return affected[0];
+    }
+
+    private static final List<DrawJob> jobs = new ArrayList<>();
+
+    /**
+     * Shape placed over many ticks, generated one layer at a time, and placed chunk by chunk within each layer
+     */
+    private static class DrawJob
+    {
+        private final CommandSourceStack source;
+        private final ServerLevel world;
+        private final Shape shape;
+        private final BlockInput block;
+        private final Predicate<BlockInWorld> replacement;
+        private final LongArrayList pending = new LongArrayList();
+        private int pendingIndex = 0;
+        private int nextLayer = 0;
+        private boolean generated = false;
+        private int affected = 0;
+        private long processed = 0;
+        private long lastReport;
+
+        private DrawJob(CommandSourceStack source, ServerLevel world, Shape shape, BlockInput block, Predicate<BlockInWorld> replacement)
+        {
+            this.source = source;
+            this.world = world;
+            this.shape = shape;
+            this.block = block;
+            this.replacement = replacement;
+            this.lastReport = System.nanoTime();
+        }
+
+        /**
+         * @return false if there is nothing more to place
+         */
+        private boolean fillPending()
+        {
+            while (pendingIndex >= pending.size())
+            {
+                if (generated)
+                {
+                    return false;
+                }
+                pending.clear();
+                pendingIndex = 0;
+                generated = !shape.layer(nextLayer++, (x, y, z) -> pending.add(BlockPos.asLong(x, y, z)));
+                long[] positions = pending.elements();
+                LongArrays.quickSort(positions, 0, pending.size(), (p1, p2) -> {
+                    int byX = Integer.compare(BlockPos.getX(p1) >> 4, BlockPos.getX(p2) >> 4);
+                    return byX != 0 ? byX : Integer.compare(BlockPos.getZ(p1) >> 4, BlockPos.getZ(p2) >> 4);
+                });
+            }
+            return true;
+        }
+
+        /**
+         * @return number of blocks processed, less than the budget if the shape is complete
+         */
+        private int place(int budget)
+        {
+            BlockPos.MutableBlockPos mbpos = new BlockPos.MutableBlockPos();
+            List<BlockPos> list = Lists.newArrayList();
+            int done = 0;
+            CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
+            try
+            {
+                while (done < budget && fillPending())
+                {
+                    long pos = pending.getLong(pendingIndex++);
+                    affected += setBlock(world, mbpos, BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos), block, replacement, list);
+                    done++;
+                }
+            }
+            finally
+            {
+                CarpetSettings.impendingFillSkipUpdates.set(false);
+            }
+            if (CarpetSettings.fillUpdates)
+            {
+                list.forEach(p -> world.updateNeighborsAt(p, world.getBlockState(p).getBlock()));
+            }
+            processed += done;
+            return done;
+        }
+
+        private void reportProgress()
+        {
+            long now = System.nanoTime();
+            if (now - lastReport > 5_000_000_000L)
+            {
+                lastReport = now;
+                Messenger.m(source, "gi Drawing... filled " + affected + " blocks so far, " + processed + " checked");
+            }
+        }
+    }
+
+    /**
+     * Places blocks of shapes drawn over many ticks, shapes share the per tick budget in the order they were requested
+     */
+    public static void tick()
+    {
+        int budget = CarpetSettings.drawBlocksPerTick;
+        // when switched off, pending shapes are finished at once
+        boolean unlimited = budget <= 0;
+        Iterator<DrawJob> iterator = jobs.iterator();
+        while (iterator.hasNext() && (unlimited || budget > 0))
+        {
+            DrawJob job = iterator.next();
+            int requested = unlimited ? Integer.MAX_VALUE : budget;
+            int done = job.place(requested);
+            budget -= done;
+            if (done < requested)
+            {
+                iterator.remove();
+                Messenger.m(job.source, "gi Filled " + job.affected + " blocks");
+            }
+            else
+            {
+                job.reportProgress();
+            }
+        }
+    }
+
+    private static int cancel(CommandSourceStack source)
+    {
+        if (jobs.isEmpty())
+        {
+            Messenger.m(source, "gi No shapes are being drawn");
+            return 0;
+        }
+        int count = jobs.size();
+        for (DrawJob job : jobs)
+        {
+            Messenger.m(job.source, "gi Drawing cancelled after filling " + job.affected + " blocks");
+        }
+        jobs.clear();
+        Messenger.m(source, "gi Cancelled drawing " + count + " shape" + (count == 1 ? "" : "s"));
+        return count;
+    }
+
+    /**
+     * Drops shapes still being drawn, when the server stops
+     */
+    public static void clearPending()
+    {
+        jobs.clear();
+    }
+
     private static int drawSphere(CommandContext<CommandSourceStack> ctx, boolean solid) throws CommandSyntaxException
     {
         BlockPos pos;
@@ -166,9 +363,6 @@ public class DrawCommand
         }
         catch (ErrorHandled ignored) { return 0; }
 
-        int affected = 0;
-        ServerLevel world = ctx.getSource().getLevel();
-
         double radiusX = radius+0.5;
         double radiusY = radius+0.5;
         double radiusZ = radius+0.5;
@@ -181,15 +375,19 @@ public class DrawCommand
         final int ceilRadiusY = (int) Math.ceil(radiusY);
         final int ceilRadiusZ = (int) Math.ceil(radiusZ);
 
-        BlockPos.MutableBlockPos mbpos = pos.mutable();
-        List<BlockPos> list = Lists.newArrayList();
-
-        double nextXn = 0;
-
-        forX: for (int x = 0; x <= ceilRadiusX; ++x)
+        // one layer per distance from the center along x
+        return draw(ctx.getSource(), (x, sink) ->
         {
-            final double xn = nextXn;
-            nextXn = (x + 1) * invRadiusX;
+            if (x > ceilRadiusX)
+            {
+                return false;
+            }
+            final double xn = x * invRadiusX;
+            final double nextXn = (x + 1) * invRadiusX;
+            if (lengthSq(xn, 0, 0) > 1)
+            {
+                return false;
+            }
             double nextYn = 0;
             forY: for (int y = 0; y <= ceilRadiusY; ++y)
             {
@@ -206,10 +404,6 @@ public class DrawCommand
                     {
                         if (z == 0)
                         {
-                            if (y == 0)
-                            {
-                                break forX;
-                            }
                             break forY;
                         }
                         break forZ;
@@ -220,30 +414,20 @@ public class DrawCommand
                         continue;
                     }
 
-                    CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
                     for (int xmod = -1; xmod < 2; xmod += 2)
                     {
                         for (int ymod = -1; ymod < 2; ymod += 2)
                         {
                             for (int zmod = -1; zmod < 2; zmod += 2)
                             {
-                                affected+= setBlock(world, mbpos,
-                                        pos.getX() + xmod * x, pos.getY() + ymod * y, pos.getZ() + zmod * z,
-                                        block, replacement, list
-                                );
+                                sink.accept(pos.getX() + xmod * x, pos.getY() + ymod * y, pos.getZ() + zmod * z);
                             }
                         }
                     }
-                    CarpetSettings.impendingFillSkipUpdates.set(false);
                 }
             }
-        }
-        if (CarpetSettings.fillUpdates)
-        {
-            list.forEach(blockpos1 -> world.updateNeighborsAt(blockpos1, world.getBlockState(blockpos1).getBlock()));
-        }
-        Messenger.m(ctx.getSource(), "gi Filled " + affected + " blocks");
-        return affected;
+            return true;
+        }, block, replacement);
     }
 
     private static int drawDiamond(CommandContext<CommandSourceStack> ctx, boolean solid) throws CommandSyntaxException
@@ -261,86 +445,53 @@ public class DrawCommand
         }
         catch (ErrorHandled ignored) { return 0; }
 
-        CommandSourceStack source = ctx.getSource();
-
-        int affected=0;
-
-        BlockPos.MutableBlockPos mbpos = pos.mutable();
-        List<BlockPos> list = Lists.newArrayList();
-
-        ServerLevel world = source.getLevel();
-
-        CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
-
-        for (int r = 0; r < radius; ++r)
+        return draw(ctx.getSource(), (r, sink) ->
         {
+            if (r >= radius)
+            {
+                return false;
+            }
             int y=r-radius+1;
             for (int x = -r; x <= r; ++x)
             {
                 int z=r-Math.abs(x);
 
-                affected+= setBlock(world, mbpos, pos.getX()+x, pos.getY()-y, pos.getZ()+z, block, replacement, list);
-                affected+= setBlock(world, mbpos, pos.getX()+x, pos.getY()-y, pos.getZ()-z, block, replacement, list);
-                affected+= setBlock(world, mbpos, pos.getX()+x, pos.getY()+y, pos.getZ()+z, block, replacement, list);
-                affected+= setBlock(world, mbpos, pos.getX()+x, pos.getY()+y, pos.getZ()-z, block, replacement, list);
+                sink.accept(pos.getX()+x, pos.getY()-y, pos.getZ()+z);
+                sink.accept(pos.getX()+x, pos.getY()-y, pos.getZ()-z);
+                sink.accept(pos.getX()+x, pos.getY()+y, pos.getZ()+z);
+                sink.accept(pos.getX()+x, pos.getY()+y, pos.getZ()-z);
             }
-        }
-
-        CarpetSettings.impendingFillSkipUpdates.set(false);
-
-        if (CarpetSettings.fillUpdates)
-        {
-            list.forEach(p -> world.updateNeighborsAt(p, world.getBlockState(p).getBlock()));
-        }
-
-        Messenger.m(source, "gi Filled " + affected + " blocks");
-
-        return affected;
+            return true;
+        }, block, replacement);
     }
 
-    private static int fillFlat(
-            ServerLevel world, BlockPos pos, int offset, double dr, boolean rectangle, String orientation,
-            BlockInput block, Predicate<BlockInWorld> replacement,
-            List<BlockPos> list, BlockPos.MutableBlockPos mbpos
-    )
+    private static void fillFlat(BlockPos pos, int offset, double dr, boolean rectangle, String orientation, PositionSink sink)
     {
-        int successes=0;
         int r = Mth.floor(dr);
         double drsq = dr*dr;
         if (orientation.equalsIgnoreCase("x"))
         {
             for(int a=-r; a<=r; ++a) for(int b=-r; b<=r; ++b) if(rectangle || a*a + b*b <= drsq)
             {
-                successes += setBlock(
-                        world, mbpos,pos.getX()+offset, pos.getY()+a, pos.getZ()+b,
-                        block, replacement, list
-                );
+                sink.accept(pos.getX()+offset, pos.getY()+a, pos.getZ()+b);
             }
-            return successes;
+            return;
         }
         if (orientation.equalsIgnoreCase("y"))
         {
             for(int a=-r; a<=r; ++a) for(int b=-r; b<=r; ++b) if(rectangle || a*a + b*b <= drsq)
             {
-                successes += setBlock(
-                        world, mbpos,pos.getX()+a, pos.getY()+offset, pos.getZ()+b,
-                        block, replacement, list
-                );
+                sink.accept(pos.getX()+a, pos.getY()+offset, pos.getZ()+b);
             }
-            return successes;
+            return;
         }
         if (orientation.equalsIgnoreCase("z"))
         {
             for(int a=-r; a<=r; ++a) for(int b=-r; b<=r; ++b) if(rectangle || a*a + b*b <= drsq)
             {
-                successes += setBlock(
-                        world, mbpos,pos.getX()+b, pos.getY()+a, pos.getZ()+offset,
-                        block, replacement, list
-                );
+                sink.accept(pos.getX()+b, pos.getY()+a, pos.getZ()+offset);
             }
-            return successes;
         }
-        return 0;
     }
 
     private static int drawPyramid(CommandContext<CommandSourceStack> ctx, String base, boolean solid) throws CommandSyntaxException
@@ -364,38 +515,18 @@ public class DrawCommand
         }
         catch (ErrorHandled ignored) { return 0; }
 
-        CommandSourceStack source = ctx.getSource();
-
-        int affected = 0;
-        BlockPos.MutableBlockPos mbpos = pos.mutable();
-
-        List<BlockPos> list = Lists.newArrayList();
-
-        ServerLevel world = source.getLevel();
-
-        CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
-
         boolean isSquare = base.equalsIgnoreCase("square");
 
-        for(int i =0; i<height;++i)
+        return draw(ctx.getSource(), (i, sink) ->
         {
-            double r = pointup ? radius - radius * i / height - 1 : radius * i / height;
-            affected+= fillFlat(world, pos, i, r, isSquare, orientation, block, replacement, list, mbpos);
-        }
-        
-        CarpetSettings.impendingFillSkipUpdates.set(false);
-
-        if (CarpetSettings.fillUpdates) {
-
-            for (BlockPos blockpos1 : list) {
-                Block blokc = world.getBlockState(blockpos1).getBlock();
-                world.updateNeighborsAt(blockpos1, blokc);
+            if (i >= height)
+            {
+                return false;
             }
-        }
-
-        Messenger.m(source, "gi Filled " + affected + " blocks");
-
-        return affected;
+            double r = pointup ? radius - radius * i / height - 1 : radius * i / height;
+            fillFlat(pos, i, r, isSquare, orientation, sink);
+            return true;
+        }, block, replacement);
     }
 
     private static int drawPrism(CommandContext<CommandSourceStack> ctx, String base){
@@ -416,36 +547,16 @@ public class DrawCommand
         }
         catch (ErrorHandled | CommandSyntaxException ignored) { return 0; }
 
-        CommandSourceStack source = ctx.getSource();
-
-        int affected = 0;
-        BlockPos.MutableBlockPos mbpos = pos.mutable();
-
-        List<BlockPos> list = Lists.newArrayList();
-
-        ServerLevel world = source.getLevel();
-
-        CarpetSettings.impendingFillSkipUpdates.set(!CarpetSettings.fillUpdates);
-
         boolean isSquare = base.equalsIgnoreCase("square");
 
-        for(int i =0; i<height;++i)
+        return draw(ctx.getSource(), (i, sink) ->
         {
-            affected+= fillFlat(world, pos, i, radius, isSquare, orientation, block, replacement, list, mbpos);
-        }
-
-        CarpetSettings.impendingFillSkipUpdates.set(false);
-
-        if (CarpetSettings.fillUpdates) {
-
-            for (BlockPos blockpos1 : list) {
-                Block blokc = world.getBlockState(blockpos1).getBlock();
-                world.updateNeighborsAt(blockpos1, blokc);
+            if (i >= height)
+            {
+                return false;
             }
-        }
-
-        Messenger.m(source, "gi Filled " + affected + " blocks");
-
-        return affected;
+            fillFlat(pos, i, radius, isSquare, orientation, sink);
+            return true;
+        }, block, replacement);
     }
 }
@@ -28,7 +28,11 @@ public class ProfileCommand
                 then(literal("entities").
                         executes((c) -> healthEntities(c.getSource(), 100)).
                         then(argument("ticks", integer(20,24000)).
-                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks")))));
+                                executes((c) -> healthEntities(c.getSource(), getInteger(c, "ticks"))).
+                                then(literal("positions").
+                                        executes((c) -> healthEntityPositions(c.getSource(), getInteger(c, "ticks")))))).
+                then(literal("histograms").
+                        executes((c) -> histograms(c.getSource())));
         dispatcher.register(literalargumentbuilder);
     }
 
@@ -43,4 +47,16 @@ public class ProfileCommand
         CarpetProfiler.prepare_entity_report(source, ticks);
         return 1;
     }
+
+    public static int healthEntityPositions(CommandSourceStack source, int ticks)
+    {
+        CarpetProfiler.prepare_entity_report(source, ticks, true);
+        return 1;
+    }
+
+    public static int histograms(CommandSourceStack source)
+    {
+        CarpetProfiler.report_histograms(source);
+        return 1;
+    }
 }
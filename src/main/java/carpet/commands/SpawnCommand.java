@@ -47,7 +47,23 @@ public class SpawnCommand
         literalargumentbuilder.
                 then(literal("list").
                         then(argument("pos", BlockPosArgument.blockPos()).
-                                executes( (c) -> listSpawns(c.getSource(), BlockPosArgument.getSpawnablePos(c, "pos"))))).
+                                executes( (c) -> listSpawns(c.getSource(), BlockPosArgument.getSpawnablePos(c, "pos"), SpawnReporter.DEFAULT_SAMPLES)).
+                                then(argument("samples", integer(1, 1000)).
+                                        executes( (c) -> listSpawns(c.getSource(), BlockPosArgument.getSpawnablePos(c, "pos"), getInteger(c, "samples")))))).
+                then(literal("heatmap").
+                        then(argument("from", BlockPosArgument.blockPos()).
+                                then(argument("to", BlockPosArgument.blockPos()).
+                                        executes( (c) -> spawnHeatmap(
+                                                c.getSource(),
+                                                BlockPosArgument.getSpawnablePos(c, "from"),
+                                                BlockPosArgument.getSpawnablePos(c, "to"),
+                                                HEATMAP_SAMPLES)).
+                                        then(argument("samples", integer(1, 1000)).
+                                                executes( (c) -> spawnHeatmap(
+                                                        c.getSource(),
+                                                        BlockPosArgument.getSpawnablePos(c, "from"),
+                                                        BlockPosArgument.getSpawnablePos(c, "to"),
+                                                        getInteger(c, "samples"))))))).
                 then(literal("tracking").
                         executes( (c) -> printTrackingReport(c.getSource())).
                         then(literal("start").
@@ -121,9 +137,30 @@ public class SpawnCommand
     }
 
 
-    private static int listSpawns(CommandSourceStack source, BlockPos pos)
+    private static int listSpawns(CommandSourceStack source, BlockPos pos, int samples)
+    {
+        Messenger.send(source, SpawnReporter.report(pos, source.getLevel(), samples));
+        return 1;
+    }
+
+    // fewer samples than for a single position, as each position is checked for each mob that can spawn there
+    private static final int HEATMAP_SAMPLES = 10;
+
+    private static int spawnHeatmap(CommandSourceStack source, BlockPos from, BlockPos to, int samples)
     {
-        Messenger.send(source, SpawnReporter.report(pos, source.getLevel()));
+        BoundingBox area = BoundingBox.fromCorners(from, to);
+        long positions = (long) area.getXSpan() * area.getYSpan() * area.getZSpan();
+        if (positions > SpawnReporter.MAX_HEATMAP_POSITIONS)
+        {
+            Messenger.m(source, "r Area too large: " + positions + " positions, maximum is " + SpawnReporter.MAX_HEATMAP_POSITIONS);
+            return 0;
+        }
+        if (positions * samples > SpawnReporter.MAX_HEATMAP_SAMPLES)
+        {
+            Messenger.m(source, "r Too many samples: " + samples + " samples for " + positions + " positions, use at most " + Math.max(1, SpawnReporter.MAX_HEATMAP_SAMPLES / positions) + " samples or a smaller area");
+            return 0;
+        }
+        Messenger.send(source, SpawnReporter.spawnHeatmap(source.getLevel(), area, samples, source.getPlayer()));
         return 1;
     }
 
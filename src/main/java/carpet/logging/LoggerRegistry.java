@@ -27,6 +27,7 @@ public class LoggerRegistry
     public static boolean __packets;
     public static boolean __pathfinding;
     public static boolean __explosions;
+    public static boolean __lagSpikes;
 
     public static void initLoggers()
     {
@@ -46,6 +47,7 @@ public class LoggerRegistry
         registerLogger("counter",HUDLogger.stardardHUDLogger("counter","white", Arrays.stream(DyeColor.values()).map(Object::toString).toArray(String[]::new)));
         registerLogger("mobcaps", HUDLogger.stardardHUDLogger("mobcaps", "dynamic",new String[]{"dynamic", "overworld", "nether","end"}));
         registerLogger("explosions", Logger.stardardLogger("explosions", "brief",new String[]{"brief", "full"}, true));
+        registerLogger("lagSpikes", Logger.stardardLogger("lagSpikes", "brief", new String[]{"brief", "full"}, true));
 
     }
 
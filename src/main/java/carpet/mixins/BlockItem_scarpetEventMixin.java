@@ -24,13 +24,13 @@ public class BlockItem_scarpetEventMixin
     ))
     private void afterPlacement(BlockPlaceContext context, CallbackInfoReturnable<InteractionResult> cir)
     {
-        if (context.getPlayer() instanceof ServerPlayer && PLAYER_PLACES_BLOCK.isNeeded())
+        if (context.getPlayer() instanceof ServerPlayer && PLAYER_PLACES_BLOCK.shouldDispatch())
             PLAYER_PLACES_BLOCK.onBlockPlaced((ServerPlayer) context.getPlayer(), context.getClickedPos(), context.getHand(), context.getItemInHand());
     }
     
     @Inject(method = "placeBlock", at = @At("HEAD"), cancellable = true)
     private void beforePlacement(BlockPlaceContext context, BlockState placementState, CallbackInfoReturnable<Boolean> cir) {
-        if (context.getPlayer() instanceof ServerPlayer && PLAYER_PLACING_BLOCK.isNeeded()) {
+        if (context.getPlayer() instanceof ServerPlayer && PLAYER_PLACING_BLOCK.shouldDispatch()) {
             if (PLAYER_PLACING_BLOCK.onBlockPlaced((ServerPlayer) context.getPlayer(), context.getClickedPos(), context.getHand(), context.getItemInHand())) {
                 cir.setReturnValue(false);
                 cir.cancel();
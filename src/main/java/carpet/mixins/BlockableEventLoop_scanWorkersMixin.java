@@ -0,0 +1,19 @@
+package carpet.mixins;
+
+import carpet.script.api.BlockIterators;
+import net.minecraft.util.thread.BlockableEventLoop;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(BlockableEventLoop.class)
+public class BlockableEventLoop_scanWorkersMixin
+{
+    // scan_parallel waits on the server thread for its workers, so they can't wait for it in turn
+    @Inject(method = "execute", at = @At("HEAD"))
+    private void failOnScanWorkers(Runnable runnable, CallbackInfo ci)
+    {
+        BlockIterators.checkNotScanWorker();
+    }
+}
@@ -97,7 +97,7 @@ public abstract class Entity_scarpetEventsMixin implements EntityInterface
     @Inject(method = "setPosRaw", at = @At("TAIL"))
     private void secondPos(CallbackInfo ci)
     {
-        if(pos1!=this.position)
+        if(pos1!=this.position && events.isNeeded(EntityEventsGroup.Event.ON_MOVE))
             events.onEvent(EntityEventsGroup.Event.ON_MOVE, motion, pos1, this.position);
     }
 }
@@ -24,7 +24,7 @@ public abstract class Inventory_scarpetEventMixin
     ))
     private boolean onItemAcquired(Inventory playerInventory, int slot, ItemStack stack)
     {
-        if (!PLAYER_PICKS_UP_ITEM.isNeeded() || !(player instanceof ServerPlayer))
+        if (!PLAYER_PICKS_UP_ITEM.shouldDispatch() || !(player instanceof ServerPlayer))
             return playerInventory.add(-1, stack);
         int count = stack.getCount();
         ItemStack previous = stack.copy();
@@ -94,9 +94,9 @@ public abstract class MinecraftServer_scarpetMixin extends ReentrantBlockableEve
         {
             return;
         }
-        TICK.onTick((MinecraftServer) (Object) this);
-        NETHER_TICK.onTick((MinecraftServer) (Object) this);
-        ENDER_TICK.onTick((MinecraftServer) (Object) this);
+        if (TICK.shouldDispatch()) TICK.onTick((MinecraftServer) (Object) this);
+        if (NETHER_TICK.shouldDispatch()) NETHER_TICK.onTick((MinecraftServer) (Object) this);
+        if (ENDER_TICK.shouldDispatch()) ENDER_TICK.onTick((MinecraftServer) (Object) this);
     }
 
     @Override
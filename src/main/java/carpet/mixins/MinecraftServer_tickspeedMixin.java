@@ -27,7 +27,7 @@ public abstract class MinecraftServer_tickspeedMixin extends ReentrantBlockableE
             target = "Lnet/minecraft/util/profiling/Profiler;get()Lnet/minecraft/util/profiling/ProfilerFiller;"))
     private void modifiedRunLoop(CallbackInfo ci)
     {
-        if (CarpetProfiler.tick_health_requested != 0L)
+        if (CarpetProfiler.isProfiling())
         {
             CarpetProfiler.start_tick_profiling();
         }
@@ -78,7 +78,7 @@ public abstract class MinecraftServer_tickspeedMixin extends ReentrantBlockableE
     ))
     private void stopAsync(CallbackInfo ci)
     {
-        if (CarpetProfiler.tick_health_requested != 0L)
+        if (CarpetProfiler.isProfiling())
         {
             CarpetProfiler.end_current_section(currentSection);
             CarpetProfiler.end_tick_profiling((MinecraftServer) (Object)this);
@@ -23,7 +23,7 @@ public class PersistentEntitySectionManager_scarpetMixin
         CarpetEventServer.Event event = CarpetEventServer.Event.ENTITY_HANDLER.get(entity.getType());
         if (event != null)
         {
-            if (event.isNeeded())
+            if (event.shouldDispatch())
             {
                 event.onEntityAction(entity, !existing);
             }
@@ -36,7 +36,7 @@ public class PersistentEntitySectionManager_scarpetMixin
         event = CarpetEventServer.Event.ENTITY_LOAD.get(entity.getType());
         if (event != null)
         {
-            if (event.isNeeded())
+            if (event.shouldDispatch())
             {
                 event.onEntityAction(entity, true);
             }
@@ -27,7 +27,7 @@ public class PlayerList_scarpetEventsMixin
     @Inject(method = "respawn", at = @At("HEAD"))
     private void onResp(ServerPlayer serverPlayer, boolean olive, Entity.RemovalReason removalReason, CallbackInfoReturnable<ServerPlayer> cir)
     {
-        PLAYER_RESPAWNS.onPlayerEvent(serverPlayer);
+        if (PLAYER_RESPAWNS.shouldDispatch()) PLAYER_RESPAWNS.onPlayerEvent(serverPlayer);
     }
 
     @Inject(method = "broadcastChatMessage(Lnet/minecraft/network/chat/PlayerChatMessage;Lnet/minecraft/server/level/ServerPlayer;Lnet/minecraft/network/chat/ChatType$Bound;)V",
@@ -35,7 +35,7 @@ public class PlayerList_scarpetEventsMixin
             cancellable = true)
     private void cancellableChatMessageEvent(PlayerChatMessage message, ServerPlayer player, ChatType.Bound params, CallbackInfo ci) {
         // having this earlier breaks signatures
-        if (PLAYER_MESSAGE.isNeeded())
+        if (PLAYER_MESSAGE.shouldDispatch())
         {
             if (PLAYER_MESSAGE.onPlayerMessage(player, message.signedContent())) ci.cancel();
         }
@@ -41,14 +41,15 @@ public abstract class Player_scarpetEventsMixin extends LivingEntity
     private void playerTakingDamage(ServerLevel serverLevel, DamageSource source, float amount, CallbackInfo ci)
     {
         // version of LivingEntity_scarpetEventsMixin::entityTakingDamage
-        ((EntityInterface)this).getEventContainer().onEvent(EntityEventsGroup.Event.ON_DAMAGE, amount, source);
-        if (PLAYER_TAKES_DAMAGE.isNeeded())
+        EntityEventsGroup events = ((EntityInterface)this).getEventContainer();
+        if (events.isNeeded(EntityEventsGroup.Event.ON_DAMAGE)) events.onEvent(EntityEventsGroup.Event.ON_DAMAGE, amount, source);
+        if (PLAYER_TAKES_DAMAGE.shouldDispatch())
         {
             if(PLAYER_TAKES_DAMAGE.onDamage(this, amount, source)) {
                 ci.cancel();
             }
         }
-        if (source.getEntity() instanceof ServerPlayer && PLAYER_DEALS_DAMAGE.isNeeded())
+        if (source.getEntity() instanceof ServerPlayer && PLAYER_DEALS_DAMAGE.shouldDispatch())
         {
             if(PLAYER_DEALS_DAMAGE.onDamage(this, amount, source)) {
                 ci.cancel();
@@ -59,7 +60,7 @@ public abstract class Player_scarpetEventsMixin extends LivingEntity
     @Inject(method = "touch", at = @At("HEAD"))
     private void onEntityCollision(Entity entity, CallbackInfo ci)
     {
-        if (PLAYER_COLLIDES_WITH_ENTITY.isNeeded() && !level().isClientSide())
+        if (PLAYER_COLLIDES_WITH_ENTITY.shouldDispatch() && !level().isClientSide())
         {
             PLAYER_COLLIDES_WITH_ENTITY.onEntityHandAction((ServerPlayer)(Object)this, entity, null);
         }
@@ -68,7 +69,7 @@ public abstract class Player_scarpetEventsMixin extends LivingEntity
     @Inject(method = "interactOn", cancellable = true, at = @At("HEAD"))
     private void doInteract(Entity entity, InteractionHand hand, CallbackInfoReturnable<InteractionResult> cir)
     {
-        if (!level().isClientSide() && PLAYER_INTERACTS_WITH_ENTITY.isNeeded())
+        if (!level().isClientSide() && PLAYER_INTERACTS_WITH_ENTITY.shouldDispatch())
         {
             if(PLAYER_INTERACTS_WITH_ENTITY.onEntityHandAction((ServerPlayer) (Object)this, entity, hand)) {
                 cir.setReturnValue(InteractionResult.PASS);
@@ -80,7 +81,7 @@ public abstract class Player_scarpetEventsMixin extends LivingEntity
     @Inject(method = "attack", at = @At("HEAD"), cancellable = true)
     private void onAttack(Entity target, CallbackInfo ci)
     {
-        if (!level().isClientSide() && PLAYER_ATTACKS_ENTITY.isNeeded() && target.isAttackable())
+        if (!level().isClientSide() && PLAYER_ATTACKS_ENTITY.shouldDispatch() && target.isAttackable())
         {
             if(PLAYER_ATTACKS_ENTITY.onEntityHandAction((ServerPlayer) (Object)this, target, null)) {
                 ci.cancel();
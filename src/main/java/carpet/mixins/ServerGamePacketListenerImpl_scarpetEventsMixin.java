@@ -69,16 +69,16 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
         {
             if (isDown)
             {
-                PLAYER_STARTS_SNEAKING.onPlayerEvent(player);
+                if (PLAYER_STARTS_SNEAKING.shouldDispatch()) PLAYER_STARTS_SNEAKING.onPlayerEvent(player);
             }
             else
             {
-                PLAYER_STOPS_SNEAKING.onPlayerEvent(player);
+                if (PLAYER_STOPS_SNEAKING.shouldDispatch()) PLAYER_STOPS_SNEAKING.onPlayerEvent(player);
             }
         }
 
         // ride event, which should check for mount?
-        if (PLAYER_RIDES.isNeeded() && (input.jump() || input.shift() || input.forward() || input.backward() || input.left() || input.right()))
+        if (PLAYER_RIDES.shouldDispatch() && (input.jump() || input.shift() || input.forward() || input.backward() || input.left() || input.right()))
         {
             PLAYER_RIDES.onMountControls(player, input.left() == input.right() ? 0 : (input.left() ? -1 : 1 ), input.forward() == input.backward() ? 0 : (input.forward() ? 1 : -1), input.jump(), input.shift());
         }
@@ -92,7 +92,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onQItem(ServerboundPlayerActionPacket playerActionC2SPacket_1, CallbackInfo ci)
     {
-        if(PLAYER_DROPS_ITEM.onPlayerEvent(player)) {
+        if(PLAYER_DROPS_ITEM.shouldDispatch() && PLAYER_DROPS_ITEM.onPlayerEvent(player)) {
             ci.cancel();
         }
     }
@@ -105,7 +105,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onHandSwap(ServerboundPlayerActionPacket playerActionC2SPacket_1, CallbackInfo ci)
     {
-        if(PLAYER_SWAPS_HANDS.onPlayerEvent(player)) ci.cancel();
+        if(PLAYER_SWAPS_HANDS.shouldDispatch() && PLAYER_SWAPS_HANDS.onPlayerEvent(player)) ci.cancel();
     }
 
     @Inject(method = "handlePlayerAction", cancellable = true, at = @At(
@@ -116,7 +116,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onCtrlQItem(ServerboundPlayerActionPacket playerActionC2SPacket_1, CallbackInfo ci)
     {
-        if(PLAYER_DROPS_STACK.onPlayerEvent(player)) {
+        if(PLAYER_DROPS_STACK.shouldDispatch() && PLAYER_DROPS_STACK.onPlayerEvent(player)) {
             ci.cancel();
         }
     }
@@ -128,7 +128,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onJump(ServerboundMovePlayerPacket playerMoveC2SPacket_1, CallbackInfo ci)
     {
-        PLAYER_JUMPS.onPlayerEvent(player);
+        if (PLAYER_JUMPS.shouldDispatch()) PLAYER_JUMPS.onPlayerEvent(player);
     }
 
     @Inject(method = "handlePlayerAction", cancellable = true, at = @At(
@@ -138,7 +138,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onClicked(ServerboundPlayerActionPacket packet, CallbackInfo ci)
     {
-        if (packet.getAction() == ServerboundPlayerActionPacket.Action.START_DESTROY_BLOCK)
+        if (packet.getAction() == ServerboundPlayerActionPacket.Action.START_DESTROY_BLOCK && PLAYER_CLICKS_BLOCK.shouldDispatch())
             if(PLAYER_CLICKS_BLOCK.onBlockAction(player, packet.getPos(), packet.getDirection())) {
                 ci.cancel();
             }
@@ -150,7 +150,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onStopUsing(ServerPlayer serverPlayerEntity)
     {
-        if (PLAYER_RELEASED_ITEM.isNeeded())
+        if (PLAYER_RELEASED_ITEM.shouldDispatch())
         {
             InteractionHand hand = serverPlayerEntity.getUsedItemHand();
             ItemStack stack = serverPlayerEntity.getUseItem().copy();
@@ -169,7 +169,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onBlockInteracted(ServerboundUseItemOnPacket playerInteractBlockC2SPacket_1, CallbackInfo ci)
     {
-        if (PLAYER_RIGHT_CLICKS_BLOCK.isNeeded())
+        if (PLAYER_RIGHT_CLICKS_BLOCK.shouldDispatch())
         {
             InteractionHand hand = playerInteractBlockC2SPacket_1.getHand();
             BlockHitResult hitRes = playerInteractBlockC2SPacket_1.getHitResult();
@@ -185,7 +185,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onItemClicked(ServerboundUseItemPacket playerInteractItemC2SPacket_1, CallbackInfo ci)
     {
-        if (PLAYER_USES_ITEM.isNeeded())
+        if (PLAYER_USES_ITEM.shouldDispatch())
         {
             InteractionHand hand = playerInteractItemC2SPacket_1.getHand();
             if(PLAYER_USES_ITEM.onItemAction(player, hand, player.getItemInHand(hand).copy())) {
@@ -201,7 +201,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onStartSprinting(ServerboundPlayerCommandPacket clientCommandC2SPacket_1, CallbackInfo ci)
     {
-        PLAYER_STARTS_SPRINTING.onPlayerEvent(player);
+        if (PLAYER_STARTS_SPRINTING.shouldDispatch()) PLAYER_STARTS_SPRINTING.onPlayerEvent(player);
     }
 
     @Inject(method = "handlePlayerCommand", at = @At(
@@ -211,7 +211,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onStopSprinting(ServerboundPlayerCommandPacket clientCommandC2SPacket_1, CallbackInfo ci)
     {
-        PLAYER_STOPS_SPRINTING.onPlayerEvent(player);
+        if (PLAYER_STOPS_SPRINTING.shouldDispatch()) PLAYER_STOPS_SPRINTING.onPlayerEvent(player);
     }
 
     @Inject(method = "handlePlayerCommand", at = @At(
@@ -223,9 +223,13 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     {
         //weird one - doesn't seem to work, maybe MP
         if (player.isSleeping())
-            PLAYER_WAKES_UP.onPlayerEvent(player);
-        else
+        {
+            if (PLAYER_WAKES_UP.shouldDispatch()) PLAYER_WAKES_UP.onPlayerEvent(player);
+        }
+        else if (PLAYER_ESCAPES_SLEEP.shouldDispatch())
+        {
             PLAYER_ESCAPES_SLEEP.onPlayerEvent(player);
+        }
 
     }
 
@@ -236,7 +240,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     ))
     private void onElytraEngage(ServerboundPlayerCommandPacket clientCommandC2SPacket_1, CallbackInfo ci)
     {
-        PLAYER_DEPLOYS_ELYTRA.onPlayerEvent(player);
+        if (PLAYER_DEPLOYS_ELYTRA.shouldDispatch()) PLAYER_DEPLOYS_ELYTRA.onPlayerEvent(player);
     }
 
     @Inject(method = "handleContainerButtonClick", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/level/ServerPlayer;resetLastActionTime()V"))
@@ -248,7 +252,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     @Inject(method = "handlePlaceRecipe", cancellable = true, at = @At(value = "INVOKE", target = "Lnet/minecraft/server/level/ServerPlayer;resetLastActionTime()V"))
     private void onRecipeSelectedInRecipeManager(ServerboundPlaceRecipePacket packet, CallbackInfo ci)
     {
-        if (PLAYER_CHOOSES_RECIPE.isNeeded())
+        if (PLAYER_CHOOSES_RECIPE.shouldDispatch())
         {
             RecipeManager.ServerDisplayInfo displayInfo = player.level().getServer().getRecipeManager().getRecipeFromDisplay(packet.recipe());
             if (displayInfo == null) {
@@ -261,7 +265,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     @Inject(method = "handleSetCarriedItem", at = @At("HEAD"))
     private void onUpdatedSelectedSLot(ServerboundSetCarriedItemPacket packet, CallbackInfo ci)
     {
-        if (PLAYER_SWITCHES_SLOT.isNeeded() && player.level().getServer() != null && player.level().getServer().isSameThread())
+        if (PLAYER_SWITCHES_SLOT.shouldDispatch() && player.level().getServer() != null && player.level().getServer().isSameThread())
         {
             PLAYER_SWITCHES_SLOT.onSlotSwitch(player, player.getInventory().getSelectedSlot(), packet.getSlot());
         }
@@ -274,7 +278,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
     )
     private void onSwing(ServerboundSwingPacket packet, CallbackInfo ci)
     {
-        if (PLAYER_SWINGS_HAND.isNeeded() && !player.swinging)
+        if (PLAYER_SWINGS_HAND.shouldDispatch() && !player.swinging)
         {
             PLAYER_SWINGS_HAND.onHandAction(player, packet.getHand());
         }
@@ -284,7 +288,7 @@ public class ServerGamePacketListenerImpl_scarpetEventsMixin
             at = @At(value = "HEAD")
     )
     private void onChatCommandMessage(ServerboundChatCommandPacket serverboundChatCommandPacket, CallbackInfo ci) {
-        if (PLAYER_COMMAND.isNeeded())
+        if (PLAYER_COMMAND.shouldDispatch())
         {
             PLAYER_COMMAND.onPlayerMessage(player, serverboundChatCommandPacket.command());
         }
@@ -64,7 +64,7 @@ public abstract class ServerLevel_scarpetMixin extends Level implements ServerWo
                                     //ChunkPos chunkPos, boolean bl, int i, int j, Profiler profiler, BlockPos blockPos, boolean bl2)
                                     ChunkPos chunkPos, boolean bl, int i, int j, ProfilerFiller profiler, BlockPos blockPos, DifficultyInstance localDifficulty, boolean bl2, LightningBolt lightningEntity)
     {
-        if (LIGHTNING.isNeeded()) LIGHTNING.onWorldEventFlag((ServerLevel) (Object)this, blockPos, bl2?1:0);
+        if (LIGHTNING.shouldDispatch()) LIGHTNING.onWorldEventFlag((ServerLevel) (Object)this, blockPos, bl2?1:0);
     }
 
     private Explosion.BlockInteraction getCMDestroyType(final GameRule<Boolean> rule) {
@@ -74,7 +74,7 @@ public abstract class ServerLevel_scarpetMixin extends Level implements ServerWo
     @Inject(method = "explode", at = @At("HEAD"), cancellable = true)
     private void handleExplosion(Entity entity, DamageSource damageSource, ExplosionDamageCalculator explosionDamageCalculator, double x, double y, double z, float g, boolean bl, ExplosionInteraction explosionInteraction, ParticleOptions particleOptions, ParticleOptions particleOptions2, WeightedList<ExplosionParticleInfo> weightedList, Holder<SoundEvent> holder, CallbackInfo ci)
     {
-        if (EXPLOSION.isNeeded()) {
+        if (EXPLOSION.shouldDispatch()) {
             Explosion.BlockInteraction var10000 = switch (explosionInteraction) {
                 case NONE -> Explosion.BlockInteraction.KEEP;
                 case BLOCK -> this.getCMDestroyType(GameRules.BLOCK_EXPLOSION_DROP_DECAY);
@@ -91,7 +91,7 @@ public abstract class ServerLevel_scarpetMixin extends Level implements ServerWo
     @Inject(method = "unload", at = @At("HEAD"))
     private void handleChunkUnload(LevelChunk levelChunk, CallbackInfo ci)
     {
-        if (CHUNK_UNLOADED.isNeeded())
+        if (CHUNK_UNLOADED.shouldDispatch())
         {
             ServerLevel level = (ServerLevel)((Object)this);
             CHUNK_UNLOADED.onChunkEvent(level, levelChunk.getPos(), false);
@@ -45,7 +45,7 @@ public class ServerPlayerGameMode_scarpetEventsMixin implements ServerPlayerInte
     ))
     private void onBlockBroken(final BlockPos blockPos, final CallbackInfoReturnable<Boolean> cir, final BlockEntity blockEntity, final Block block, final BlockState blockState)
     {
-        if(PLAYER_BREAK_BLOCK.onBlockBroken(player, blockPos, blockState)) {
+        if(PLAYER_BREAK_BLOCK.shouldDispatch() && PLAYER_BREAK_BLOCK.onBlockBroken(player, blockPos, blockState)) {
             this.level.sendBlockUpdated(blockPos, blockState, blockState, 3);
             cir.setReturnValue(false);
             cir.cancel();
@@ -59,7 +59,7 @@ public class ServerPlayerGameMode_scarpetEventsMixin implements ServerPlayerInte
     ))
     private void onBlockActivated(ServerPlayer serverPlayerEntity, Level world, ItemStack stack, InteractionHand hand, BlockHitResult hitResult, CallbackInfoReturnable<InteractionResult> cir)
     {
-        PLAYER_INTERACTS_WITH_BLOCK.onBlockHit(player, hand, hitResult);
+        if (PLAYER_INTERACTS_WITH_BLOCK.shouldDispatch()) PLAYER_INTERACTS_WITH_BLOCK.onBlockHit(player, hand, hitResult);
     }
 
     @Override
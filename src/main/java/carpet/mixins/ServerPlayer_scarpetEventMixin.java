@@ -52,7 +52,7 @@ public abstract class ServerPlayer_scarpetEventMixin extends Player implements S
     ))
     private void finishedUsingItem(Player playerEntity)
     {
-        if (PLAYER_FINISHED_USING_ITEM.isNeeded())
+        if (PLAYER_FINISHED_USING_ITEM.shouldDispatch())
         {
             InteractionHand hand = getUsedItemHand();
             if(!PLAYER_FINISHED_USING_ITEM.onItemAction((ServerPlayer) (Object)this, hand, getUseItem())) {
@@ -70,14 +70,17 @@ public abstract class ServerPlayer_scarpetEventMixin extends Player implements S
     @Inject(method = "awardStat", at = @At("HEAD"))
     private void grabStat(Stat<?> stat, int amount, CallbackInfo ci)
     {
-        STATISTICS.onPlayerStatistic((ServerPlayer) (Object)this, stat, amount);
+        if (STATISTICS.shouldDispatch())
+        {
+            STATISTICS.onPlayerStatistic((ServerPlayer) (Object)this, stat, amount);
+        }
     }
 
     @Inject(method = "die", at = @At("HEAD"))
     private void onDeathEvent(DamageSource source, CallbackInfo ci)
     {
         ((EntityInterface)this).getEventContainer().onEvent(EntityEventsGroup.Event.ON_DEATH, source.getMsgId());
-        if (PLAYER_DIES.isNeeded())
+        if (PLAYER_DIES.shouldDispatch())
         {
             PLAYER_DIES.onPlayerEvent((ServerPlayer) (Object)this);
         }
@@ -96,7 +99,7 @@ public abstract class ServerPlayer_scarpetEventMixin extends Player implements S
     @Inject(method = "teleport", at = @At("RETURN"))
     private void atChangeDimension(TeleportTransition destinationP, CallbackInfoReturnable<Entity> cir)
     {
-        if (PLAYER_CHANGES_DIMENSION.isNeeded())
+        if (PLAYER_CHANGES_DIMENSION.shouldDispatch())
         {
             ServerPlayer player = (ServerPlayer) (Object)this;
             TeleportTransition destinationTransition = destinationP;
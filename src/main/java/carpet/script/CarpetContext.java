@@ -1,6 +1,5 @@
 package carpet.script;
 
-import carpet.script.value.Value;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Registry;
@@ -40,9 +39,9 @@ public class CarpetContext extends Context
     protected void initialize()
     {
         super.initialize();
-        variables.put("_x", (c, t) -> Value.ZERO);
-        variables.put("_y", (c, t) -> Value.ZERO);
-        variables.put("_z", (c, t) -> Value.ZERO);
+        setVariable("_x", LazyValue.ZERO);
+        setVariable("_y", LazyValue.ZERO);
+        setVariable("_z", LazyValue.ZERO);
     }
 
     public MinecraftServer server()
@@ -5,7 +5,10 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.InvalidCallbackException;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
+import carpet.script.utils.AppCpuStats;
 import carpet.script.utils.GlocalFlag;
+import carpet.script.utils.ScarpetCallEvent;
+import carpet.script.utils.TimingWheel;
 import carpet.script.value.BlockValue;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.EntityValue;
@@ -23,13 +26,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -74,7 +78,10 @@ import org.jspecify.annotations.Nullable;
 
 public class CarpetEventServer
 {
-    public final List<ScheduledCall> scheduledCalls = new LinkedList<>();
+    /**
+     * Pending scheduled calls, grouped by the name of the app that scheduled them
+     */
+    private final TimingWheel<String, ScheduledCall> scheduledCalls = new TimingWheel<>();
     public final CarpetScriptServer scriptServer;
     private static final List<Value> NOARGS = Collections.emptyList();
     public final Map<String, Event> customEvents = new HashMap<>();
@@ -186,21 +193,74 @@ public class CarpetEventServer
 
     public static class CallbackList
     {
+        /**
+         * Immutable view of the registered callbacks, replaced as a whole on each change,
+         * so calls and signals always iterate a consistent list, regardless of changes made from within the callbacks.
+         * Callbacks are indexed by their target player, and the hosts that have any callbacks are known upfront.
+         */
+        private record Snapshot(List<Callback> all, List<Callback> untargeted, Map<String, List<Callback>> forTarget,
+                                Map<String, List<Callback>> ofTarget, Set<String> hosts)
+        {
+            static final Snapshot EMPTY = of(List.of());
+
+            static Snapshot of(List<Callback> calls)
+            {
+                List<Callback> untargeted = new ArrayList<>();
+                Map<String, List<Callback>> ofTarget = new HashMap<>();
+                Map<String, List<Callback>> forTarget = new HashMap<>();
+                Set<String> hosts = new HashSet<>();
+                // single pass keeping the overall order of calls: untargeted calls go to all targets seen so far,
+                // and a new target starts with the untargeted calls before it
+                for (Callback call : calls)
+                {
+                    hosts.add(call.host);
+                    if (call.optionalTarget == null)
+                    {
+                        untargeted.add(call);
+                        forTarget.values().forEach(l -> l.add(call));
+                    }
+                    else
+                    {
+                        ofTarget.computeIfAbsent(call.optionalTarget, t -> new ArrayList<>()).add(call);
+                        forTarget.computeIfAbsent(call.optionalTarget, t -> new ArrayList<>(untargeted)).add(call);
+                    }
+                }
+                return new Snapshot(List.copyOf(calls), untargeted, forTarget, ofTarget, hosts);
+            }
 
-        private List<Callback> callList;
-        private final List<Callback> removedCalls;
-        private boolean inCall;
-        private boolean inSignal;
+            /**
+             * @return callbacks that may handle an event fired for a target, all of them if there is no target
+             */
+            List<Callback> dispatchFor(@Nullable String target)
+            {
+                return target == null ? all : forTarget.getOrDefault(target, untargeted);
+            }
+        }
+
+        private volatile Snapshot calls = Snapshot.EMPTY;
+        /**
+         * Whether there is anything to call, checked by the game hooks before they build any event arguments
+         */
+        private volatile boolean hasSubscribers = false;
+        /**
+         * Number of times the event fired with callbacks to run, number of times a game hook checked it and skipped it
+         * with nothing listening, and number of times it got called with nothing listening by a hook that doesn't check,
+         * so its arguments were allocated for nothing
+         */
+        private final LongAdder dispatched = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder wasted = new LongAdder();
+        /**
+         * Name of the event, used when accounting the time apps spend handling it
+         */
+        public final String name;
         public final int reqArgs;
         final boolean isSystem;
         final boolean perPlayerDistribution;
 
-        public CallbackList(int reqArgs, boolean isSystem, boolean isGlobalOnly)
+        public CallbackList(String name, int reqArgs, boolean isSystem, boolean isGlobalOnly)
         {
-            this.callList = new ArrayList<>();
-            this.removedCalls = new ArrayList<>();
-            this.inCall = false;
-            this.inSignal = false;
+            this.name = name;
             this.reqArgs = reqArgs;
             this.isSystem = isSystem;
             perPlayerDistribution = isSystem && !isGlobalOnly;
@@ -208,24 +268,62 @@ public class CarpetEventServer
 
         public List<Callback> inspectCurrentCalls()
         {
-            return new ArrayList<>(callList);
+            return new ArrayList<>(calls.all());
+        }
+
+        public boolean hasSubscribers()
+        {
+            return hasSubscribers;
         }
 
-        private void removeCallsIf(Predicate<Callback> when)
+        /**
+         * Counts a call a game hook skipped, as nothing was listening
+         */
+        public void skipped()
+        {
+            skipped.increment();
+        }
+
+        public long dispatchedCalls()
+        {
+            return dispatched.sum();
+        }
+
+        /**
+         * @return number of times the event fired with nothing listening
+         */
+        public long idleCalls()
         {
-            if (!inCall && !inSignal)
+            return skipped.sum() + wasted.sum();
+        }
+
+        /**
+         * @return number of idle calls that allocated event arguments before finding out nothing listens
+         */
+        public long wastedCalls()
+        {
+            return wasted.sum();
+        }
+
+        private void publish(Snapshot snapshot)
+        {
+            calls = snapshot;
+            hasSubscribers = !snapshot.all().isEmpty();
+        }
+
+        private synchronized void addCall(Callback call)
+        {
+            List<Callback> updated = new ArrayList<>(calls.all());
+            updated.add(call);
+            publish(Snapshot.of(updated));
+        }
+
+        private synchronized void removeCallsIf(Predicate<Callback> when)
+        {
+            List<Callback> updated = new ArrayList<>(calls.all());
+            if (updated.removeIf(when))
             {
-                callList.removeIf(when);
-                return;
-            }
-            // we are ok with list growing in the meantime and parallel access, we are only scanning.
-            for (int i = 0; i < callList.size(); i++)
-            {
-                Callback call = callList.get(i);
-                if (when.test(call))
-                {
-                    removedCalls.add(call);
-                }
+                publish(Snapshot.of(updated));
             }
         }
 
@@ -238,10 +336,12 @@ public class CarpetEventServer
          */
         public boolean call(Supplier<List<Value>> argumentSupplier, Supplier<CommandSourceStack> cmdSourceSupplier)
         {
-            if (callList.isEmpty())
+            if (!hasSubscribers)
             {
+                wasted.increment();
                 return false;
             }
+            dispatched.increment();
             CommandSourceStack source;
             try
             {
@@ -262,41 +362,37 @@ public class CarpetEventServer
                 String nameCheck = perPlayerDistribution ? source.getTextName() : null;
                 assert argv.size() == reqArgs;
                 boolean cancelled = false;
-                try
+                List<Callback> failedCalls = null;
+                // calls added or removed in the meantime only apply to next events
+                // supressing calls where target player hosts simply don't match
+                // handling global hosts with player targets is left to when the host is resolved (few calls deeper).
+                for (Callback call : calls.dispatchFor(nameCheck))
                 {
-                    // we are ok with list growing in the meantime
-                    // which might happen during inCall or inSignal
-                    inCall = true;
-                    for (int i = 0; i < callList.size(); i++)
+                    ScarpetCallEvent event = ScarpetCallEvent.start();
+                    long start = System.nanoTime();
+                    CallbackResult result = call.execute(source, argv);
+                    scriptServer.cpuStats.record(call.host, name, System.nanoTime() - start);
+                    ScarpetCallEvent.finish(event, call.host, name, call.function.getString());
+                    if (result == CallbackResult.CANCEL)
                     {
-                        Callback call = callList.get(i);
-                        // supressing calls where target player hosts simply don't match
-                        // handling global hosts with player targets is left to when the host is resolved (few calls deeper).
-                        if (nameCheck != null && call.optionalTarget != null && !nameCheck.equals(call.optionalTarget))
-                        {
-                            continue;
-                        }
-                        CallbackResult result = call.execute(source, argv);
-                        if (result == CallbackResult.CANCEL)
-                        {
-                            cancelled = true;
-                            break;
-                        }
-                        if (result == CallbackResult.FAIL)
+                        cancelled = true;
+                        break;
+                    }
+                    if (result == CallbackResult.FAIL)
+                    {
+                        if (failedCalls == null)
                         {
-                            removedCalls.add(call);
+                            failedCalls = new ArrayList<>();
                         }
+                        failedCalls.add(call);
                     }
                 }
-                finally
-                {
-                    inCall = false;
-                }
-                for (Callback call : removedCalls)
+                if (failedCalls != null)
                 {
-                    callList.remove(call);
+                    Set<Callback> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+                    failed.addAll(failedCalls);
+                    removeCallsIf(failed::contains);
                 }
-                removedCalls.clear();
                 profilerToken.run();
                 return cancelled;
             });
@@ -305,27 +401,23 @@ public class CarpetEventServer
 
         public int signal(CommandSourceStack sender, @Nullable ServerPlayer recipient, List<Value> callArg)
         {
-            if (callList.isEmpty())
-            {
-                return 0;
-            }
+            Snapshot current = calls;
+            // signals to a player only reach callbacks targeting that player
+            List<Callback> receivers = recipient == null ? current.all() : current.ofTarget().getOrDefault(recipient.getScoreboardName(), List.of());
             int successes = 0;
-            try
-            {
-                inSignal = true;
-                for (int i = 0; i < callList.size(); i++)
+            for (Callback call : receivers)
+            {
+                // skipping tracking of fails, its explicit call
+                ScarpetCallEvent event = ScarpetCallEvent.start();
+                long start = System.nanoTime();
+                CallbackResult result = call.signal(sender, recipient, callArg);
+                call.scriptServer.cpuStats.record(call.host, name, System.nanoTime() - start);
+                ScarpetCallEvent.finish(event, call.host, name, call.function.getString());
+                if (result == CallbackResult.SUCCESS)
                 {
-                    // skipping tracking of fails, its explicit call
-                    if (callList.get(i).signal(sender, recipient, callArg) == CallbackResult.SUCCESS)
-                    {
-                        successes++;
-                    }
+                    successes++;
                 }
             }
-            finally
-            {
-                inSignal = false;
-            }
             return successes;
         }
 
@@ -361,9 +453,11 @@ public class CarpetEventServer
             }
             //all clear
             //remove duplicates
-
-            removeEventCall(hostName, target, udf.getString());
-            callList.add(new Callback(hostName, target, udf, null, scriptServer));
+            synchronized (this)
+            {
+                removeEventCall(hostName, target, udf.getString());
+                addCall(new Callback(hostName, target, udf, null, scriptServer));
+            }
             return true;
         }
 
@@ -374,13 +468,20 @@ public class CarpetEventServer
                 return false;
             }
             //removing duplicates
-            removeEventCall(host.getName(), host.user, function.getString());
-            callList.add(new Callback(host.getName(), host.user, function, args, (CarpetScriptServer) host.scriptServer()));
+            synchronized (this)
+            {
+                removeEventCall(host.getName(), host.user, function.getString());
+                addCall(new Callback(host.getName(), host.user, function, args, (CarpetScriptServer) host.scriptServer()));
+            }
             return true;
         }
 
         public void removeEventCall(String hostName, String target, String funName)
         {
+            if (!calls.hosts().contains(hostName))
+            {
+                return;
+            }
             removeCallsIf((c) -> c.function.getString().equals(funName)
                     && (Objects.equals(c.host, hostName))
                     && (Objects.equals(c.optionalTarget, target))
@@ -389,37 +490,42 @@ public class CarpetEventServer
 
         public void removeAllCalls(CarpetScriptHost host)
         {
+            if (!calls.hosts().contains(host.getName()))
+            {
+                return;
+            }
             removeCallsIf((c) -> (Objects.equals(c.host, host.getName()))
                     && (Objects.equals(c.optionalTarget, host.user)));
         }
 
-        public void createChildEvents(CarpetScriptHost host)
+        public synchronized void createChildEvents(CarpetScriptHost host)
         {
-            List<Callback> copyCalls = new ArrayList<>();
-            callList.forEach((c) ->
+            if (!calls.hosts().contains(host.getName()))
             {
-                if ((Objects.equals(c.host, host.getName())) // TODO fix me
-                        && c.optionalTarget == null)
+                return;
+            }
+            List<Callback> updated = new ArrayList<>(calls.all());
+            calls.untargeted().forEach((c) ->
+            {
+                if (Objects.equals(c.host, host.getName())) // TODO fix me
                 {
-                    copyCalls.add(new Callback(c.host, host.user, c.function, c.parametrizedArgs, host.scriptServer()));
+                    updated.add(new Callback(c.host, host.user, c.function, c.parametrizedArgs, host.scriptServer()));
                 }
             });
-            callList.addAll(copyCalls);
+            publish(Snapshot.of(updated));
         }
 
-        public void clearEverything()
+        public synchronized void clearEverything()
         {
-            // when some moron puts /reload in an event call.
-            if (inSignal || inCall)
-            {
-                callList = new ArrayList<>();
-            }
-            callList.clear();
+            // running calls keep their own snapshot, even when some moron puts /reload in an event call.
+            publish(Snapshot.EMPTY);
         }
 
-        public void sortByPriority(CarpetScriptServer scriptServer)
+        public synchronized void sortByPriority(CarpetScriptServer scriptServer)
         {
-            callList.sort(Comparator.comparingDouble(c -> -scriptServer.getAppHostByName(c.host).eventPriority));
+            List<Callback> updated = new ArrayList<>(calls.all());
+            updated.sort(Comparator.comparingDouble(c -> -scriptServer.getAppHostByName(c.host).eventPriority));
+            publish(Snapshot.of(updated));
         }
     }
 
@@ -1148,7 +1254,7 @@ public class CarpetEventServer
         public Event(String name, int reqArgs, boolean isGlobalOnly, boolean isPublic)
         {
             this.name = name;
-            this.handler = new CallbackList(reqArgs, true, isGlobalOnly);
+            this.handler = new CallbackList(name, reqArgs, true, isGlobalOnly);
             this.isPublic = isPublic;
             byName.put(name, this);
         }
@@ -1204,7 +1310,7 @@ public class CarpetEventServer
         private Event(String name, CarpetScriptServer server)
         {
             this.name = name;
-            this.handler = new CallbackList(1, false, false);
+            this.handler = new CallbackList(name, 1, false, false);
             this.isPublic = true;
             server.events.customEvents.put(name, this);
         }
@@ -1214,7 +1320,21 @@ public class CarpetEventServer
 
         public boolean isNeeded()
         {
-            return handler.callList.size() > 0;
+            return handler.hasSubscribers();
+        }
+
+        /**
+         * Same as {@link #isNeeded()}, for game hooks that skip the event when it returns false,
+         * counting the skipped call in the idle statistics of the event
+         */
+        public boolean shouldDispatch()
+        {
+            if (handler.hasSubscribers())
+            {
+                return true;
+            }
+            handler.skipped();
+            return false;
         }
 
         public boolean deprecated()
@@ -1377,19 +1497,7 @@ public class CarpetEventServer
         {
             return;
         }
-        Iterator<ScheduledCall> eventIterator = scheduledCalls.iterator();
-        List<ScheduledCall> currentCalls = new ArrayList<>();
-        while (eventIterator.hasNext())
-        {
-            ScheduledCall call = eventIterator.next();
-            call.dueTime--;
-            if (call.dueTime <= 0)
-            {
-                currentCalls.add(call);
-                eventIterator.remove();
-            }
-        }
-        for (ScheduledCall call : currentCalls)
+        for (ScheduledCall call : scheduledCalls.advance())
         {
             call.execute();
         }
@@ -1398,7 +1506,16 @@ public class CarpetEventServer
 
     public void scheduleCall(CarpetContext context, FunctionValue function, List<Value> args, long due)
     {
-        scheduledCalls.add(new ScheduledCall(context, function, args, due));
+        ScheduledCall call = new ScheduledCall(context, function, args, due);
+        scheduledCalls.schedule(call.host, call, call.dueTime);
+    }
+
+    /**
+     * @return number of pending scheduled calls of each app
+     */
+    public Map<String, Integer> pendingCalls()
+    {
+        return scheduledCalls.pendingByOwner();
     }
 
     public void runScheduledCall(BlockPos origin, CommandSourceStack source, String hostname, CarpetScriptHost host, FunctionValue udf, List<Value> argv)
@@ -1407,6 +1524,8 @@ public class CarpetEventServer
         {
             return;
         }
+        ScarpetCallEvent event = ScarpetCallEvent.start();
+        long start = System.nanoTime();
         try
         {
             host.callUDF(origin, source, udf, argv);
@@ -1414,6 +1533,8 @@ public class CarpetEventServer
         catch (NullPointerException | InvalidCallbackException | IntegrityException ignored)
         {
         }
+        scriptServer.cpuStats.record(hostname, AppCpuStats.SCHEDULED, System.nanoTime() - start);
+        ScarpetCallEvent.finish(event, hostname, AppCpuStats.SCHEDULED, udf.getString());
     }
 
     public CallbackResult runEventCall(CommandSourceStack sender, String hostname, String optionalTarget, FunctionValue udf, List<Value> argv)
@@ -1552,6 +1673,9 @@ public class CarpetEventServer
             }
         }
         // remove scheduled calls
-        scheduledCalls.removeIf(sc -> sc.host != null && sc.host.equals(host.getName()));
+        if (host.getName() != null)
+        {
+            scheduledCalls.cancelAll(host.getName());
+        }
     }
 }
\ No newline at end of file
@@ -68,47 +68,78 @@ public class CarpetExpression
 
     public boolean fillAndScanCommand(ScriptHost host, int x, int y, int z)
     {
-        CarpetScriptServer scriptServer = (CarpetScriptServer) host.scriptServer();
-        if (scriptServer.stopAll)
+        return new BlockEvaluator(host).test(x, y, z);
+    }
+
+    /**
+     * Evaluates the expression for many blocks of an area, like in {@code /script scan} and {@code /script fill}.
+     * A single context is reused between blocks, cleared of any variables the previous block left,
+     * so each block still sees the same variables as if it was evaluated on its own.
+     */
+    public final class BlockEvaluator
+    {
+        private final ScriptHost host;
+        private final CarpetScriptServer scriptServer;
+        private final Context context;
+        private final Value player;
+        private Value x = Value.NULL;
+        private Value y = Value.NULL;
+        private Value z = Value.NULL;
+        private BlockPos pos = BlockPos.ZERO;
+        private final LazyValue xVar = (c, t) -> x;
+        private final LazyValue yVar = (c, t) -> y;
+        private final LazyValue zVar = (c, t) -> z;
+        // block state is read on each access, as the expression might have changed it
+        private final LazyValue blockVar = (c, t) -> new BlockValue(null, source.getLevel(), pos).bindTo("_");
+        private final LazyValue playerVar;
+
+        public BlockEvaluator(ScriptHost host)
         {
-            return false;
+            this.host = host;
+            this.scriptServer = (CarpetScriptServer) host.scriptServer();
+            this.context = new CarpetContext(host, source, origin);
+            Entity e = source.getEntity();
+            player = e == null ? Value.NULL.reboundedTo("p") : new EntityValue(e).bindTo("p");
+            playerVar = (c, t) -> player;
         }
-        try
+
+        /**
+         * @return whether the expression was true for the block at the given world position
+         */
+        public boolean test(int posX, int posY, int posZ)
         {
-            Context context = new CarpetContext(host, source, origin).
-                    with("x", (c, t) -> new NumericValue(x - origin.getX()).bindTo("x")).
-                    with("y", (c, t) -> new NumericValue(y - origin.getY()).bindTo("y")).
-                    with("z", (c, t) -> new NumericValue(z - origin.getZ()).bindTo("z")).
-                    with("_", (c, t) -> new BlockValue(null, source.getLevel(), new BlockPos(x, y, z)).bindTo("_"));
-            Entity e = source.getEntity();
-            if (e == null)
+            if (scriptServer.stopAll)
             {
-                Value nullPlayer = Value.NULL.reboundedTo("p");
-                context.with("p", (cc, tt) -> nullPlayer);
+                return false;
             }
-            else
+            x = new NumericValue(posX - origin.getX()).bindTo("x");
+            y = new NumericValue(posY - origin.getY()).bindTo("y");
+            z = new NumericValue(posZ - origin.getZ()).bindTo("z");
+            pos = new BlockPos(posX, posY, posZ);
+            context.removeVariablesMatching("");
+            context.with("x", xVar).with("y", yVar).with("z", zVar).with("_", blockVar).with("p", playerVar);
+            try
             {
-                Value playerValue = new EntityValue(e).bindTo("p");
-                context.with("p", (cc, tt) -> playerValue);
+                return scriptServer.events.handleEvents.getWhileDisabled(() -> expr.executeAndEvaluate(
+                        context,
+                        Vanilla.ScriptServer_scriptOptimizations(scriptServer.server),
+                        Vanilla.ScriptServer_scriptCompilation(scriptServer.server),
+                        host.loadOverrides,
+                        Vanilla.ScriptServer_scriptDebugging(scriptServer.server) ? CarpetScriptServer.LOG::info : null
+                ).getLeft().getBoolean());
+            }
+            catch (ExpressionException e)
+            {
+                throw new CarpetExpressionException(e.getMessage(), e.stack);
+            }
+            catch (ArithmeticException ae)
+            {
+                throw new CarpetExpressionException("Math doesn't compute... " + ae.getMessage(), null);
+            }
+            catch (StackOverflowError soe)
+            {
+                throw new CarpetExpressionException("Your thoughts are too deep", null);
             }
-            return scriptServer.events.handleEvents.getWhileDisabled(() -> this.expr.executeAndEvaluate(
-                    context,
-                    Vanilla.ScriptServer_scriptOptimizations(scriptServer.server),
-                    host.loadOverrides,
-                    Vanilla.ScriptServer_scriptDebugging(scriptServer.server) ? CarpetScriptServer.LOG::info : null
-            ).getLeft().getBoolean());
-        }
-        catch (ExpressionException e)
-        {
-            throw new CarpetExpressionException(e.getMessage(), e.stack);
-        }
-        catch (ArithmeticException ae)
-        {
-            throw new CarpetExpressionException("Math doesn't compute... " + ae.getMessage(), null);
-        }
-        catch (StackOverflowError soe)
-        {
-            throw new CarpetExpressionException("Your thoughts are too deep", null);
         }
     }
 
@@ -139,6 +170,7 @@ public class CarpetExpression
             return scriptServer.events.handleEvents.getWhileDisabled(() -> this.expr.executeAndEvaluate(
                     context,
                     Vanilla.ScriptServer_scriptOptimizations(scriptServer.server),
+                    Vanilla.ScriptServer_scriptCompilation(scriptServer.server),
                     host.loadOverrides,
                     Vanilla.ScriptServer_scriptDebugging(scriptServer.server) ? CarpetScriptServer.LOG::info : null
             ));
@@ -13,6 +13,7 @@ import carpet.script.exception.InvalidCallbackException;
 import carpet.script.exception.LoadException;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
+import carpet.script.utils.AppDataStore;
 import carpet.script.utils.AppStoreManager;
 import carpet.script.value.EntityValue;
 import carpet.script.value.FunctionValue;
@@ -67,6 +68,8 @@ public class CarpetScriptHost extends ScriptHost
     public CommandSourceStack responsibleSource;
 
     private Tag globalState;
+    @Nullable
+    private AppDataStore dataStore;
     private int saveTimeout;
     public boolean persistenceRequired;
     public double eventPriority;
@@ -86,7 +89,8 @@ public class CarpetScriptHost extends ScriptHost
         persistenceRequired = true;
         if (parent == null && code != null) // app, not a global host
         {
-            globalState = loadState();
+            dataStore = new AppDataStore(code, server);
+            globalState = dataStore.load();
         }
         else if (parent != null)
         {
@@ -975,12 +979,19 @@ public class CarpetScriptHost extends ScriptHost
 
     private void dumpState()
     {
-        Module.saveData(main, globalState, this.scriptServer());
+        if (dataStore != null)
+        {
+            dataStore.save(globalState);
+        }
     }
 
-    private Tag loadState()
+    /**
+     * @return load time and size of the app data, or null for hosts without their own data
+     */
+    public AppDataStore.@Nullable Stats appDataStats()
     {
-        return Module.getData(main, this.scriptServer());
+        CarpetScriptHost responsibleHost = (parent != null) ? (CarpetScriptHost) parent : this;
+        return responsibleHost.dataStore == null ? null : responsibleHost.dataStore.stats();
     }
 
     public Tag readFileTag(FileArgument fdesc)
@@ -1125,7 +1136,7 @@ public class CarpetScriptHost extends ScriptHost
         format += " ";
         List<String> stringsToFormat = new ArrayList<>();
         TreeMap<Integer, String> posToLocal = new TreeMap<>(); //Holds whether a local variable name is found at a specific index
-        for (String local : context.variables.keySet())
+        for (String local : context.getAllVariableNames())
         {
             int pos = line.indexOf(local);
             while (pos != -1)
@@ -1147,7 +1158,7 @@ public class CarpetScriptHost extends ScriptHost
             }
             stringsToFormat.add(format + line.substring(lastPos, foundLocal.getKey()));
             stringsToFormat.add(format + foundLocal.getValue());
-            Value val = context.variables.get(foundLocal.getValue()).evalValue(context);
+            Value val = context.getVariable(foundLocal.getValue()).evalValue(context);
             String type = val.getTypeString();
             String value;
             try
@@ -18,7 +18,11 @@ import carpet.script.language.Functions;
 import carpet.script.language.Loops;
 import carpet.script.language.Sys;
 import carpet.script.language.Threading;
+import carpet.script.utils.AppCpuStats;
+import carpet.script.utils.BlockWriteQueue;
 import carpet.script.utils.AppStoreManager;
+import carpet.script.utils.FunctionProfile;
+import carpet.script.utils.ScriptFileIO;
 import carpet.script.value.FunctionValue;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.tree.CommandNode;
@@ -66,6 +70,8 @@ public class CarpetScriptServer extends ScriptServer
     public int tickDepth;
     private Set<String> holyMoly;
     public CarpetEventServer events;
+    public final AppCpuStats cpuStats = new AppCpuStats();
+    public final BlockWriteQueue blockWrites = new BlockWriteQueue();
 
     private static final List<Module> bundledModuleData = new ArrayList<>();
     private static final List<Module> ruleModuleData = new ArrayList<>();
@@ -354,6 +360,7 @@ public class CarpetScriptServer extends ScriptServer
         // stop all events associated with name
         CarpetScriptHost host = modules.remove(name);
         events.removeAllHostEvents(host);
+        cpuStats.forget(name);
         host.onClose();
         if (host.hasCommand)
         {
@@ -407,12 +414,21 @@ public class CarpetScriptServer extends ScriptServer
             return null;
         });
         token.run();
+        token = Carpet.startProfilerSection("Scarpet block batches");
+        blockWrites.tick();
+        token.run();
         token = Carpet.startProfilerSection("Scarpet app data");
         for (CarpetScriptHost host : modules.values())
         {
             host.tick();
         }
         token.run();
+        FunctionProfile profile = functionProfile;
+        if (profile != null && profile.tick())
+        {
+            functionProfile = null;
+            profile.complete();
+        }
     }
 
     public void onClose()
@@ -423,6 +439,8 @@ public class CarpetScriptServer extends ScriptServer
             host.onClose();
             events.removeAllHostEvents(host);
         }
+        blockWrites.cancelAll();
+        ScriptFileIO.flushAll();
         stopAll = true;
     }
 
@@ -452,7 +470,7 @@ public class CarpetScriptServer extends ScriptServer
 
     public void onPlayerLoggedOut(ServerPlayer player, Component reason)
     {
-        if (PLAYER_DISCONNECTS.isNeeded())
+        if (PLAYER_DISCONNECTS.shouldDispatch())
         {
             PLAYER_DISCONNECTS.onPlayerMessage(player, reason.getContents().toString());
         }
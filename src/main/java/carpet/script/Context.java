@@ -4,7 +4,13 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
+import org.jspecify.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,7 +33,29 @@ public class Context
     public static final Type LVALUE = Type.LVALUE;
     public static final Type MAPDEF = Type.MAPDEF;
 
-    public Map<String, LazyValue> variables = new HashMap<>();
+    private static final LazyValue[] NO_SLOTS = new LazyValue[0];
+
+    /**
+     * variables that have no slot in the current frame, created on first use
+     */
+    @Nullable
+    private Map<String, LazyValue> namedVariables = null;
+
+    private final VariableView view = new VariableView();
+
+    /**
+     * Live view of all variables of this frame, in slots or stored by name, kept for extensions that used to access the variable map directly.
+     * When set to another map, like the variables of another context, that map is used for all variables of this context instead.
+     *
+     * @deprecated use {@link #getVariable(String)}, {@link #setVariable(String, LazyValue)}, {@link #delVariable(String)},
+     * {@link #getAllVariableNames()} and {@link #shareVariablesWith(Context)}
+     */
+    @Deprecated
+    public Map<String, LazyValue> variables = view;
+
+    private LocalScope scope = LocalScope.NONE;
+
+    private LazyValue[] slots = NO_SLOTS;
 
     public final ScriptHost host;
 
@@ -40,39 +68,158 @@ public class Context
 
     public LazyValue getVariable(String name)
     {
-        return variables.get(name);
+        if (variables != view)
+        {
+            return variables.get(name);
+        }
+        int slot = scope.slotOf(name);
+        if (slot >= 0)
+        {
+            return slots[slot];
+        }
+        return namedVariables == null ? null : namedVariables.get(name);
+    }
+
+    /**
+     * Fast access to a variable resolved at compile time. Falls back to the lookup by name
+     * if this frame is not the one of the function the variable was resolved for.
+     */
+    public LazyValue getVariable(LocalScope expectedScope, int slot, String name)
+    {
+        if (scope == expectedScope && variables == view)
+        {
+            return slots[slot];
+        }
+        return getVariable(name);
     }
 
     public void setVariable(String name, LazyValue lv)
     {
-        variables.put(name, lv);
+        if (variables != view)
+        {
+            variables.put(name, lv);
+            return;
+        }
+        int slot = scope.slotOf(name);
+        if (slot >= 0)
+        {
+            slots[slot] = lv;
+            return;
+        }
+        if (namedVariables == null)
+        {
+            namedVariables = new HashMap<>();
+        }
+        namedVariables.put(name, lv);
+    }
+
+    /**
+     * Fast assignment of a variable resolved at compile time, see {@link #getVariable(LocalScope, int, String)}
+     */
+    public void setVariable(LocalScope expectedScope, int slot, String name, LazyValue lv)
+    {
+        if (slot >= 0 && scope == expectedScope && variables == view)
+        {
+            slots[slot] = lv;
+            return;
+        }
+        setVariable(name, lv);
     }
 
     public void delVariable(String variable)
     {
-        variables.remove(variable);
+        if (variables != view)
+        {
+            variables.remove(variable);
+            return;
+        }
+        int slot = scope.slotOf(variable);
+        if (slot >= 0)
+        {
+            slots[slot] = null;
+        }
+        else if (namedVariables != null)
+        {
+            namedVariables.remove(variable);
+        }
     }
 
     public void removeVariablesMatching(String varname)
     {
-        variables.entrySet().removeIf(e -> e.getKey().startsWith(varname));
+        if (variables != view)
+        {
+            variables.keySet().removeIf(name -> name.startsWith(varname));
+            return;
+        }
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (scope.nameOf(i).startsWith(varname))
+            {
+                slots[i] = null;
+            }
+        }
+        if (namedVariables != null)
+        {
+            namedVariables.entrySet().removeIf(e -> e.getKey().startsWith(varname));
+        }
     }
 
     public Context with(String variable, LazyValue lv)
     {
-        variables.put(variable, lv);
+        setVariable(variable, lv);
         return this;
     }
 
     public Set<String> getAllVariableNames()
     {
-        return variables.keySet();
+        if (variables != view)
+        {
+            return new LinkedHashSet<>(variables.keySet());
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+            {
+                names.add(scope.nameOf(i));
+            }
+        }
+        if (namedVariables != null)
+        {
+            names.addAll(namedVariables.keySet());
+        }
+        return names;
+    }
+
+    /**
+     * Makes this context use the same variable storage as the other one, so changes in one are visible in the other
+     */
+    public void shareVariablesWith(Context other)
+    {
+        if (other.namedVariables == null)
+        {
+            other.namedVariables = new HashMap<>();
+        }
+        namedVariables = other.namedVariables;
+        variables = other.variables == other.view ? view : other.variables;
+        scope = other.scope;
+        slots = other.slots;
     }
 
     public Context recreate()
+    {
+        return recreate(LocalScope.NONE);
+    }
+
+    /**
+     * Creates a fresh frame for the execution of a function body with a given layout of local variables
+     */
+    public Context recreate(LocalScope localScope)
     {
         Context ctx = duplicate();
         ctx.threadContext = threadContext;
+        ctx.scope = localScope;
+        ctx.slots = localScope.size() == 0 ? NO_SLOTS : new LazyValue[localScope.size()];
         ctx.initialize();
         return ctx;
     }
@@ -90,9 +237,9 @@ public class Context
     protected void initialize()
     {
         //special variables for second order functions so we don't need to check them all the time
-        variables.put("_", (c, t) -> Value.ZERO);
-        variables.put("_i", (c, t) -> Value.ZERO);
-        variables.put("_a", (c, t) -> Value.ZERO);
+        setVariable("_", LazyValue.ZERO);
+        setVariable("_i", LazyValue.ZERO);
+        setVariable("_a", LazyValue.ZERO);
     }
 
     public Context duplicate()
@@ -110,6 +257,105 @@ public class Context
         return host.scriptServer();
     }
 
+    private final class VariableView extends AbstractMap<String, LazyValue>
+    {
+        @Override
+        public LazyValue get(Object key)
+        {
+            return key instanceof final String name ? getVariable(name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public LazyValue put(String key, LazyValue value)
+        {
+            LazyValue previous = getVariable(key);
+            setVariable(key, value);
+            return previous;
+        }
+
+        @Override
+        public LazyValue remove(Object key)
+        {
+            if (!(key instanceof final String name))
+            {
+                return null;
+            }
+            LazyValue previous = getVariable(name);
+            delVariable(name);
+            return previous;
+        }
+
+        @Override
+        public void clear()
+        {
+            removeVariablesMatching("");
+        }
+
+        @Override
+        public Set<Entry<String, LazyValue>> entrySet()
+        {
+            return new AbstractSet<>()
+            {
+                @Override
+                public int size()
+                {
+                    return getAllVariableNames().size();
+                }
+
+                @Override
+                public Iterator<Entry<String, LazyValue>> iterator()
+                {
+                    // names are taken upfront, entries and removal write through to the frame
+                    Iterator<String> names = getAllVariableNames().iterator();
+                    return new Iterator<>()
+                    {
+                        @Nullable
+                        private String current;
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return names.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, LazyValue> next()
+                        {
+                            String name = names.next();
+                            current = name;
+                            return new AbstractMap.SimpleEntry<>(name, getVariable(name))
+                            {
+                                @Override
+                                public LazyValue setValue(LazyValue value)
+                                {
+                                    super.setValue(value);
+                                    return put(name, value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            if (current == null)
+                            {
+                                throw new IllegalStateException();
+                            }
+                            delVariable(current);
+                            current = null;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
     /**
      * immutable context only for reason on reporting access violations in evaluating expressions in optimizization
      * mode detecting any potential violations that may happen on the way
@@ -151,6 +397,12 @@ public class Context
             badProgrammer();
         }
 
+        @Override
+        public void setVariable(LocalScope expectedScope, int slot, String name, LazyValue lv)
+        {
+            badProgrammer();
+        }
+
         @Override
         public void delVariable(String variable)
         {
@@ -177,6 +429,19 @@ public class Context
             return null;
         }
 
+        @Override
+        public LazyValue getVariable(LocalScope expectedScope, int slot, String name)
+        {
+            badProgrammer();
+            return null;
+        }
+
+        @Override
+        public void shareVariablesWith(Context other)
+        {
+            badProgrammer();
+        }
+
         @Override
         public Context recreate()
         {
@@ -184,6 +449,13 @@ public class Context
             return null;
         }
 
+        @Override
+        public Context recreate(LocalScope localScope)
+        {
+            badProgrammer();
+            return null;
+        }
+
         @Override
         protected void initialize()
         {
@@ -2,6 +2,7 @@ package carpet.script;
 
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.external.Vanilla;
+import carpet.script.utils.ScarpetCallEvent;
 import carpet.script.value.EntityValue;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.NumericValue;
@@ -38,6 +39,14 @@ public class EntityEventsGroup
         entity = e;
     }
 
+    /**
+     * @return whether any app listens to that event on this entity, so callers can skip preparing its arguments
+     */
+    public boolean isNeeded(Event type)
+    {
+        return !actions.isEmpty() && actions.containsKey(type);
+    }
+
     public void onEvent(Event type, Object... args)
     {
         if (actions.isEmpty())
@@ -69,7 +78,12 @@ public class EntityEventsGroup
                 iterator.remove();
                 continue;
             }
-            if (type.call(action.getValue(), entity, args) == CarpetEventServer.CallbackResult.FAIL)
+            ScarpetCallEvent event = ScarpetCallEvent.start();
+            long start = System.nanoTime();
+            CarpetEventServer.CallbackResult result = type.call(action.getValue(), entity, args);
+            scriptServer.cpuStats.record(key.host(), type.id, System.nanoTime() - start);
+            ScarpetCallEvent.finish(event, key.host(), type.id, action.getValue().function.getString());
+            if (result == CarpetEventServer.CallbackResult.FAIL)
             {
                 iterator.remove();
             }
@@ -99,6 +99,11 @@ public class Expression
     @Nullable
     private ExpressionNode root = null;
 
+    /**
+     * Whether hot user defined functions get compiled to bytecode
+     */
+    private boolean compileFunctions = false;
+
     /**
      * script specific operatos and built-in functions
      */
@@ -980,7 +985,8 @@ public class Expression
             contextValues = null;
         }
 
-        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues);
+        LocalScope scope = token.node == null || token.node.scope == null ? LocalScope.NONE : token.node.scope;
+        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues, scope);
         // do not store lambda definitions
         if (!name.equals("_"))
         {
@@ -1067,6 +1073,46 @@ public class Expression
         return variable;
     }
 
+    public boolean compilesFunctions()
+    {
+        return compileFunctions;
+    }
+
+    /**
+     * Compiles the body of a function defined at a given '->' token, caching the result with the definition,
+     * so all variants of the same function share it
+     *
+     * @return compiled body, or the interpreted one if the body cannot be compiled
+     */
+    public LazyValue compileFunctionBody(Context c, Token definition, LazyValue interpreted)
+    {
+        ExpressionNode node = definition.node;
+        if (node == null || node.args.size() != 2)
+        {
+            return interpreted;
+        }
+        synchronized (node)
+        {
+            if (node.compiled == null)
+            {
+                Context optimizeOnlyContext = new Context.ContextForErrorReporting(c);
+                LazyValue compiled = FunctionCompiler.compile(this, node.args.get(1), n -> extractOp(optimizeOnlyContext, n, Context.Type.NONE));
+                node.compiled = compiled == null ? interpreted : compiled;
+            }
+            return node.compiled;
+        }
+    }
+
+    Fluff.@Nullable EvalNode operationOf(ExpressionNode node)
+    {
+        return switch (node.token.type)
+        {
+            case FUNCTION -> functions.get(node.token.surface);
+            case OPERATOR, UNARY_OPERATOR -> operators.get(node.token.surface);
+            default -> null;
+        };
+    }
+
     public static final Expression none = new Expression("null");
 
     /**
@@ -1248,7 +1294,7 @@ public class Expression
     }
 
     public enum LoadOverride {
-        DEFAULT("clean"), CANONICAL("canonical"), OPTIMIZED("optimized"), FUNCTIONAL("functional"), FUNCTIONAL_OPTIMIZED("functional_optimized");
+        DEFAULT("clean"), CANONICAL("canonical"), OPTIMIZED("optimized"), FUNCTIONAL("functional"), FUNCTIONAL_OPTIMIZED("functional_optimized"), COMPILED("compiled");
         public String equivalent;
         LoadOverride(String equivalent) {
             this.equivalent = equivalent;
@@ -1256,14 +1302,21 @@ public class Expression
     }
 
     public Pair<Value, ExpressionNode> executeAndEvaluate(Context c, boolean optimize, LoadOverride override, @Nullable Consumer<String> logger)
+    {
+        return executeAndEvaluate(c, optimize, false, override, logger);
+    }
+
+    public Pair<Value, ExpressionNode> executeAndEvaluate(Context c, boolean optimize, boolean compile, LoadOverride override, @Nullable Consumer<String> logger)
     {
         if (ast == null)
         {
             boolean functions = false;
             if (override != LoadOverride.DEFAULT) {
-                optimize = override == LoadOverride.OPTIMIZED || override == LoadOverride.FUNCTIONAL_OPTIMIZED;
+                optimize = override == LoadOverride.OPTIMIZED || override == LoadOverride.FUNCTIONAL_OPTIMIZED || override == LoadOverride.COMPILED;
                 functions = override == LoadOverride.FUNCTIONAL || override == LoadOverride.FUNCTIONAL_OPTIMIZED;
+                compile = override == LoadOverride.COMPILED;
             }
+            compileFunctions = compile;
 
             Pair<ExpressionNode, LazyValue> ret = getAST(c, optimize, functions, logger);
             ast = ret.getRight();
@@ -1306,6 +1359,16 @@ public class Expression
         public List<ExpressionNode> args;
         public Token token;
         public List<Token> range;
+        /**
+         * Layout of local variables if this node defines a function
+         */
+        @Nullable
+        public LocalScope scope = null;
+        /**
+         * Compiled body if this node defines a function that got hot enough
+         */
+        @Nullable
+        LazyValue compiled = null;
         /**
          * The Value representation of the left parenthesis, used for parsing
          * varying numbers of function parameters.
@@ -1405,6 +1468,107 @@ public class Expression
     }
 
 
+    /**
+     * Variable access in the code. Once resolved to a slot of a function frame it reads the variable directly from the frame,
+     * otherwise, or when executed in a different frame, it looks it up by name.
+     */
+    final class LocalVariable implements LazyValue
+    {
+        private final Token token;
+        @Nullable
+        private LocalScope scope = null;
+        private int slot = -1;
+
+        private LocalVariable(Token token)
+        {
+            this.token = token;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            if (scope != null)
+            {
+                LazyValue variable = c.getVariable(scope, slot, token.surface);
+                if (variable != null)
+                {
+                    return variable.evalValue(c, type);
+                }
+            }
+            return getOrSetAnyVariable(c, token.surface).evalValue(c, type);
+        }
+
+        /**
+         * Same as assigning to the variable with {@code =}
+         *
+         * @return assigned value, bound to the variable
+         */
+        Value assign(Context c, Value value)
+        {
+            Value copy = value.reboundedTo(token.surface);
+            LazyValue bound = (cc, tt) -> copy;
+            if (scope != null)
+            {
+                c.setVariable(scope, slot, token.surface, bound);
+            }
+            else
+            {
+                setAnyVariable(c, token.surface, bound);
+            }
+            return copy;
+        }
+    }
+
+    private static boolean isFunctionDefinition(ExpressionNode node)
+    {
+        String symbol = node.token.surface;
+        return (symbol.equals("->") || symbol.equals("define")) && node.token.type.isFunctional()
+                && node.args.size() == 2 && node.args.get(0).token.type == Token.TokenType.FUNCTION;
+    }
+
+    /**
+     * Assigns frame slots to all local variables used in function bodies. Arguments and outer variables
+     * of the signature are local to the function, while the signature itself is evaluated in the outer scope
+     */
+    private void resolveLocalScopes(ExpressionNode node, @Nullable LocalScope scope)
+    {
+        if (node.op instanceof LocalVariable variable)
+        {
+            if (scope != null && !node.token.surface.startsWith("global_"))
+            {
+                variable.scope = scope;
+                variable.slot = scope.slotFor(node.token.surface);
+            }
+            return;
+        }
+        if (isFunctionDefinition(node))
+        {
+            LocalScope inner = new LocalScope();
+            node.scope = inner;
+            ExpressionNode signature = node.args.get(0);
+            resolveLocalScopes(signature, scope);
+            collectSignatureVariables(signature, inner);
+            resolveLocalScopes(node.args.get(1), inner);
+            return;
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            resolveLocalScopes(arg, scope);
+        }
+    }
+
+    private static void collectSignatureVariables(ExpressionNode node, LocalScope inner)
+    {
+        if (node.op instanceof LocalVariable && !node.token.surface.startsWith("global_"))
+        {
+            inner.slotFor(node.token.surface);
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            collectSignatureVariables(arg, inner);
+        }
+    }
+
     private ExpressionNode RPNToParseTree(List<Token> tokens, Context context)
     {
         Stack<ExpressionNode> nodeStack = new ObjectArrayList<>();
@@ -1437,7 +1601,7 @@ public class Expression
                     }
                     else
                     {
-                        ExpressionNode newNode = new ExpressionNode(((c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t)), Collections.emptyList(), token);
+                        ExpressionNode newNode = new ExpressionNode(new LocalVariable(token), Collections.emptyList(), token);
                         token.node = newNode;
                         nodeStack.push(newNode);
                     }
@@ -1474,8 +1638,12 @@ public class Expression
                         nodeStack.pop();
                     }
                     List<LazyValue> params = p.stream().map(n -> n.op).collect(Collectors.toList());
+                    NodeSpecializer.markBlockPredicate(token, p, params);
                     ExpressionNode newNode = new ExpressionNode(
-                            (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t),
+                            (c, t) -> {
+                                ScriptSampler.at(this, token);
+                                return f.lazyEval(c, t, this, token, params).evalValue(c, t);
+                            },
                             p, token
                     );
                     token.node = newNode;
@@ -1538,6 +1706,7 @@ public class Expression
         ExpressionNode root = RPNToParseTree(rpn, context);
         if (!optimize && !functional)
         {
+            resolveLocalScopes(root, null);
             return Pair.of(root, root.op);
         }
 
@@ -1545,6 +1714,7 @@ public class Expression
         // flipping to full functional representation makes it little underperforming, might be related
         // to the fact that operators are running from a bigger pool or function execution is slower
         optimizeTree(root, optimizeOnlyContext, logger, optimize, functional);
+        resolveLocalScopes(root, null);
         if (!optimize) {
             return Pair.of(root, root.op);
         }
@@ -1672,8 +1842,14 @@ public class Expression
         }
 
         Context optimizeOnlyContext = new Context.ContextForErrorReporting(context);
+        boolean specialized = style.contains("specialized");
         // pure functional
-        optimizeTree(root, optimizeOnlyContext, null, style.contains("optimized"), style.contains("functional"));
+        optimizeTree(root, optimizeOnlyContext, null, specialized || style.contains("optimized"), style.contains("functional"));
+        if (specialized)
+        {
+            // specialized nodes are only created with the closures, marking their tokens
+            extractOp(optimizeOnlyContext, root, Context.Type.NONE);
+        }
         List<Token> compileTimeOptimized = root.tokensRecursive(this, cleanedTokens, tokenPointers);
 
         return compileTimeOptimized;
@@ -1905,6 +2081,14 @@ public class Expression
     }
 
     private LazyValue extractOp(Context ctx, ExpressionNode node, Context.Type expectedType)
+    {
+        return extractOp(ctx, node, expectedType, null);
+    }
+
+    /**
+     * @param loopVariables variables assigned in the innermost loop around the node, if any, see {@link NodeSpecializer#loopVariables}
+     */
+    private LazyValue extractOp(Context ctx, ExpressionNode node, Context.Type expectedType, @Nullable Set<String> loopVariables)
     {
         if (node.op instanceof LazyValue.Constant)
         {
@@ -1928,25 +2112,45 @@ public class Expression
             {
                 ILazyOperator op = operators.get(token.surface);
                 Context.Type requestedType = op.staticType(expectedType);
-                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType);
+                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType, loopVariables);
+                LazyValue specialized = NodeSpecializer.specialize(this, node, op, List.of(arg), loopVariables);
+                if (specialized != null)
+                {
+                    return specialized;
+                }
                 return (c, t) -> op.lazyEval(c, t, this, token, arg, null).evalValue(c, t);
             }
             case OPERATOR:
             {
                 ILazyOperator op = operators.get(token.surface);
                 Context.Type requestedType = op.staticType(expectedType);
-                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType);
-                LazyValue arh = extractOp(ctx, node.args.get(1), requestedType);
+                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType, loopVariables);
+                LazyValue arh = extractOp(ctx, node.args.get(1), requestedType, loopVariables);
+                LazyValue specialized = NodeSpecializer.specialize(this, node, op, List.of(arg, arh), loopVariables);
+                if (specialized != null)
+                {
+                    return specialized;
+                }
                 return (c, t) -> op.lazyEval(c, t, this, token, arg, arh).evalValue(c, t);
             }
             case VARIABLE:
-                return (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
+                return node.op instanceof LocalVariable ? node.op : (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
             case FUNCTION:
             {
                 ILazyFunction f = functions.get(token.surface);
                 Context.Type requestedType = f.staticType(expectedType);
-                List<LazyValue> params = node.args.stream().map(n -> extractOp(ctx, n, requestedType)).collect(Collectors.toList());
-                return (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t);
+                Set<String> innerLoopVariables = NodeSpecializer.isLoop(node) ? NodeSpecializer.loopVariables(node) : loopVariables;
+                List<LazyValue> params = node.args.stream().map(n -> extractOp(ctx, n, requestedType, innerLoopVariables)).collect(Collectors.toList());
+                NodeSpecializer.markBlockPredicate(token, node.args, params);
+                LazyValue specialized = NodeSpecializer.specialize(this, node, f, params, loopVariables);
+                if (specialized != null)
+                {
+                    return specialized;
+                }
+                return (c, t) -> {
+                    ScriptSampler.at(this, token);
+                    return f.lazyEval(c, t, this, token, params).evalValue(c, t);
+                };
             }
             case CONSTANT:
                 return node.op;
@@ -0,0 +1,482 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.FunctionUnpackedArgumentsValue;
+import carpet.script.value.ListValue;
+import carpet.script.value.NullValue;
+import carpet.script.value.Value;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import org.jspecify.annotations.Nullable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Second execution tier for user defined functions. Translates the body of a hot function into a hidden JVM class,
+ * where eager functions and operators are called directly on their already evaluated arguments, with all
+ * functions, tokens and constants bound as JVM constants. Sequences, assignments to variables, variable reads
+ * from frame slots and {@code if} are compiled to plain JVM code as well. Loops, other lazy functions and anything else
+ * the compiler does not understand is still executed by the regular closure tree of that subexpression.
+ */
+final class FunctionCompiler
+{
+    /**
+     * Larger bodies are left to the interpreter, not to hit the limits of the JVM method size
+     */
+    private static final int MAX_NODES = 2000;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private static final String VALUE = Type.getInternalName(Value.class);
+    private static final String CONTEXT = Type.getInternalName(Context.class);
+    private static final String CONTEXT_TYPE = Type.getInternalName(Context.Type.class);
+    private static final String LAZY_VALUE = Type.getInternalName(LazyValue.class);
+    private static final String LOCAL_VARIABLE = Type.getInternalName(Expression.LocalVariable.class);
+    private static final String EVAL_VALUE = "(L" + CONTEXT + ";L" + CONTEXT_TYPE + ";)L" + VALUE + ";";
+    private static final Handle CLASS_DATA_AT = new Handle(Opcodes.H_INVOKESTATIC, Type.getInternalName(MethodHandles.class), "classDataAt",
+            MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class, int.class).toMethodDescriptorString(), false);
+
+    private final Expression expression;
+    private final Function<ExpressionNode, LazyValue> interpreter;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+    private MethodVisitor mv;
+
+    private FunctionCompiler(Expression expression, Function<ExpressionNode, LazyValue> interpreter)
+    {
+        this.expression = expression;
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * @param interpreter provides the closure tree for subexpressions that cannot be compiled
+     * @return compiled body of the function, or null if it cannot be compiled
+     */
+    @Nullable
+    static LazyValue compile(Expression expression, ExpressionNode body, Function<ExpressionNode, LazyValue> interpreter)
+    {
+        if (treeSize(body) > MAX_NODES)
+        {
+            return null;
+        }
+        try
+        {
+            return new FunctionCompiler(expression, interpreter).build(body);
+        }
+        catch (Throwable exc)
+        {
+            CarpetScriptServer.LOG.warn("Failed to compile scarpet function body in " + expression.getModuleName() + " at line " + (body.token.lineno + 1) + ", keeping it interpreted", exc);
+            return null;
+        }
+    }
+
+    private static int treeSize(ExpressionNode node)
+    {
+        int size = 1;
+        for (ExpressionNode arg : node.args)
+        {
+            size += treeSize(arg);
+        }
+        return size;
+    }
+
+    private LazyValue build(ExpressionNode body) throws Throwable
+    {
+        String className = Type.getInternalName(FunctionCompiler.class).replace("FunctionCompiler", "CompiledFunction$" + classCounter.incrementAndGet());
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES)
+        {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2)
+            {
+                // frames only ever join values of the same type, avoids loading classes in the middle of the tick
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object", new String[]{LAZY_VALUE});
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "evalValue", EVAL_VALUE, null, null);
+        mv.visitCode();
+        emit(body, null);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        byte[] bytes = cw.toByteArray();
+        checkLinkage(bytes);
+        MethodHandles.Lookup compiled = LOOKUP.defineHiddenClassWithClassData(bytes, List.copyOf(constants), true);
+        return (LazyValue) compiled.findConstructor(compiled.lookupClass(), MethodType.methodType(void.class)).invoke();
+    }
+
+    /**
+     * Resolves every field and method the compiled class refers to, as the JVM only does it when the instruction first runs,
+     * and a wrong reference would then throw a linkage error in the middle of the tick instead of keeping the body interpreted
+     */
+    private static void checkLinkage(byte[] bytes)
+    {
+        ClassLoader loader = FunctionCompiler.class.getClassLoader();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9)
+        {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
+            {
+                return new MethodVisitor(Opcodes.ASM9)
+                {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor)
+                    {
+                        boolean isStatic = opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC;
+                        if (!hasField(load(owner, loader), name, descriptor, isStatic))
+                        {
+                            throw new IllegalStateException("No field " + owner + "." + name + " " + descriptor);
+                        }
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface)
+                    {
+                        if (!hasMethod(load(owner, loader), name, descriptor))
+                        {
+                            throw new IllegalStateException("No method " + owner + "." + name + descriptor);
+                        }
+                    }
+                };
+            }
+        }, 0);
+    }
+
+    private static Class<?> load(String internalName, ClassLoader loader)
+    {
+        try
+        {
+            return Class.forName(internalName.replace('/', '.'), false, loader);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalStateException("No class " + internalName, e);
+        }
+    }
+
+    private static boolean hasField(@Nullable Class<?> owner, String name, String descriptor, boolean isStatic)
+    {
+        if (owner == null)
+        {
+            return false;
+        }
+        for (Field field : owner.getDeclaredFields())
+        {
+            if (field.getName().equals(name) && Type.getDescriptor(field.getType()).equals(descriptor) && Modifier.isStatic(field.getModifiers()) == isStatic)
+            {
+                return true;
+            }
+        }
+        for (Class<?> parent : owner.getInterfaces())
+        {
+            if (hasField(parent, name, descriptor, isStatic))
+            {
+                return true;
+            }
+        }
+        return hasField(owner.getSuperclass(), name, descriptor, isStatic);
+    }
+
+    private static boolean hasMethod(@Nullable Class<?> owner, String name, String descriptor)
+    {
+        if (owner == null)
+        {
+            return false;
+        }
+        if (name.equals("<init>"))
+        {
+            for (Constructor<?> constructor : owner.getDeclaredConstructors())
+            {
+                if (Type.getConstructorDescriptor(constructor).equals(descriptor))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Method method : owner.getDeclaredMethods())
+        {
+            if (method.getName().equals(name) && Type.getMethodDescriptor(method).equals(descriptor))
+            {
+                return true;
+            }
+        }
+        for (Class<?> parent : owner.getInterfaces())
+        {
+            if (hasMethod(parent, name, descriptor))
+            {
+                return true;
+            }
+        }
+        return hasMethod(owner.getSuperclass(), name, descriptor);
+    }
+
+    /**
+     * Emits code leaving the value of the node on the stack
+     *
+     * @param type type the node is evaluated with, or null for the type requested by the caller of the function
+     */
+    private void emit(ExpressionNode node, Context.@Nullable Type type)
+    {
+        if (node.op instanceof LazyValue.Constant constant)
+        {
+            loadConstant(constant.get(), Value.class);
+            if (!node.token.type.isConstant())
+            {
+                // results of the optimizer may be mutable, same as in the interpreter
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VALUE, "fromConstant", "()L" + VALUE + ";", false);
+            }
+            return;
+        }
+        if (node.op instanceof Expression.LocalVariable variable)
+        {
+            // reads the frame slot the variable was resolved to
+            loadConstant(variable, Expression.LocalVariable.class);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            loadType(type);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, LOCAL_VARIABLE, "evalValue", EVAL_VALUE, false);
+            return;
+        }
+        Fluff.EvalNode operation = node.op instanceof LazyValue.ContextFreeLazyValue ? null : expression.operationOf(node);
+        if (operation != null && isSequence(node))
+        {
+            for (int i = 0; i < node.args.size() - 1; i++)
+            {
+                emit(node.args.get(i), Context.Type.VOID);
+                mv.visitInsn(Opcodes.POP);
+            }
+            emit(node.args.get(node.args.size() - 1), type);
+        }
+        else if (operation != null && isAssignment(node))
+        {
+            loadConstant(node.args.get(0).op, Expression.LocalVariable.class);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            emit(node.args.get(1), Context.Type.NONE);
+            Label start = tryStart();
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, LOCAL_VARIABLE, "assign", "(L" + CONTEXT + ";L" + VALUE + ";)L" + VALUE + ";", false);
+            tryEnd(start, node.token);
+        }
+        else if (operation != null && node.token.type == Token.TokenType.FUNCTION && node.token.surface.equals("if") && node.args.size() >= 2)
+        {
+            sampleAt(node.token);
+            Label end = new Label();
+            int i = 0;
+            for (; i < node.args.size() - 1; i += 2)
+            {
+                Label next = new Label();
+                emit(node.args.get(i), Context.Type.BOOLEAN);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VALUE, "getBoolean", "()Z", false);
+                mv.visitJumpInsn(Opcodes.IFEQ, next);
+                emit(node.args.get(i + 1), type);
+                mv.visitJumpInsn(Opcodes.GOTO, end);
+                mv.visitLabel(next);
+            }
+            if (i < node.args.size())
+            {
+                emit(node.args.get(i), type);
+            }
+            else
+            {
+                mv.visitFieldInsn(Opcodes.GETSTATIC, VALUE, "NULL", Type.getDescriptor(NullValue.class));
+                // so branches join as values, frames of other types are merged into plain objects
+                mv.visitTypeInsn(Opcodes.CHECKCAST, VALUE);
+            }
+            mv.visitLabel(end);
+        }
+        else if (operation instanceof Fluff.AbstractUnaryOperator op && node.token.type == Token.TokenType.UNARY_OPERATOR && node.args.size() == 1)
+        {
+            Label start = tryStart();
+            loadConstant(op, Fluff.AbstractUnaryOperator.class);
+            emit(node.args.get(0), Context.Type.NONE);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Fluff.AbstractUnaryOperator.class), "evalUnary", "(L" + VALUE + ";)L" + VALUE + ";", false);
+            tryEnd(start, node.token);
+        }
+        else if (operation instanceof Fluff.IOperator op && !(op instanceof Fluff.AbstractUnaryOperator)
+                && op instanceof Fluff.AbstractOperator && node.token.type == Token.TokenType.OPERATOR && node.args.size() == 2)
+        {
+            Label start = tryStart();
+            loadConstant(op, Fluff.IOperator.class);
+            emit(node.args.get(0), Context.Type.NONE);
+            emit(node.args.get(1), Context.Type.NONE);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(Fluff.IOperator.class), "eval", "(L" + VALUE + ";L" + VALUE + ";)L" + VALUE + ";", true);
+            tryEnd(start, node.token);
+        }
+        else if (operation instanceof Fluff.AbstractFunction function && node.token.type == Token.TokenType.FUNCTION)
+        {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Fluff.ILazyFunction.class), "checkInterrupts", "()V", true);
+            sampleAt(node.token);
+            Label start = tryStart();
+            loadConstant(function, Fluff.AbstractFunction.class);
+            pushInt(node.args.size());
+            mv.visitTypeInsn(Opcodes.ANEWARRAY, VALUE);
+            for (int i = 0; i < node.args.size(); i++)
+            {
+                mv.visitInsn(Opcodes.DUP);
+                pushInt(i);
+                emit(node.args.get(i), Context.Type.NONE);
+                mv.visitInsn(Opcodes.AASTORE);
+            }
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(FunctionCompiler.class), "call",
+                    "(L" + Type.getInternalName(Fluff.AbstractFunction.class) + ";[L" + VALUE + ";)L" + VALUE + ";", false);
+            tryEnd(start, node.token);
+        }
+        else
+        {
+            // everything else stays with the interpreter
+            loadConstant(interpreter.apply(node), LazyValue.class);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            loadType(type);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, LAZY_VALUE, "evalValue", EVAL_VALUE, true);
+        }
+    }
+
+    /**
+     * @return whether the node is {@code a ; b}, or its functional form {@code then(a, b, ...)}
+     */
+    private static boolean isSequence(ExpressionNode node)
+    {
+        return (node.token.type == Token.TokenType.OPERATOR && node.token.surface.equals(";") && node.args.size() == 2)
+                || (node.token.type == Token.TokenType.FUNCTION && node.token.surface.equals("then") && !node.args.isEmpty());
+    }
+
+    /**
+     * @return whether the node is a plain assignment to a variable, in operator or functional form.
+     * Unpacking into lists and assignments to container elements stay with the interpreter.
+     */
+    private static boolean isAssignment(ExpressionNode node)
+    {
+        boolean assignment = (node.token.type == Token.TokenType.OPERATOR && node.token.surface.equals("="))
+                || (node.token.type == Token.TokenType.FUNCTION && node.token.surface.equals("assign"));
+        return assignment && node.args.size() == 2 && node.args.get(0).op instanceof Expression.LocalVariable;
+    }
+
+    private void loadType(Context.@Nullable Type type)
+    {
+        if (type == null)
+        {
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+        }
+        else
+        {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, CONTEXT_TYPE, type.name(), "L" + CONTEXT_TYPE + ";");
+        }
+    }
+
+    private void sampleAt(Token token)
+    {
+        loadConstant(expression, Expression.class);
+        loadConstant(token, Token.class);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ScriptSampler.class), "at",
+                "(L" + Type.getInternalName(Expression.class) + ";L" + Type.getInternalName(Token.class) + ";)V", false);
+    }
+
+    private Label tryStart()
+    {
+        Label start = new Label();
+        mv.visitLabel(start);
+        return start;
+    }
+
+    /**
+     * Closes the protected region of an eager call, translating exceptions the same way
+     * {@link Expression#handleCodeException} does it for interpreted calls
+     */
+    private void tryEnd(Label start, Token token)
+    {
+        Label end = new Label();
+        Label handler = new Label();
+        Label after = new Label();
+        mv.visitLabel(end);
+        mv.visitJumpInsn(Opcodes.GOTO, after);
+        mv.visitLabel(handler);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.SWAP);
+        loadConstant(expression, Expression.class);
+        loadConstant(token, Token.class);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Expression.class), "handleCodeException",
+                "(L" + CONTEXT + ";Ljava/lang/RuntimeException;L" + Type.getInternalName(Expression.class) + ";L" + Type.getInternalName(Token.class) + ";)Ljava/lang/RuntimeException;", false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(after);
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+    }
+
+    private void loadConstant(Object constant, Class<?> type)
+    {
+        int index = constantIndices.computeIfAbsent(constant, c -> {
+            constants.add(c);
+            return constants.size() - 1;
+        });
+        mv.visitLdcInsn(new ConstantDynamic("_", Type.getDescriptor(type), CLASS_DATA_AT, index));
+    }
+
+    private void pushInt(int value)
+    {
+        if (value <= 5)
+        {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        }
+        else if (value <= Byte.MAX_VALUE)
+        {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        }
+        else
+        {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        }
+    }
+
+    /**
+     * Runtime support for compiled calls of eager functions, matches {@link Fluff.AbstractFunction#lazyEval}
+     */
+    public static Value call(Fluff.AbstractFunction function, Value[] args)
+    {
+        List<Value> params = new ArrayList<>(args.length);
+        for (Value arg : args)
+        {
+            if (arg instanceof FunctionUnpackedArgumentsValue)
+            {
+                params.addAll(((ListValue) arg).getItems());
+            }
+            else
+            {
+                params.add(arg);
+            }
+        }
+        if (!function.numParamsVaries() && function.getNumParams() != params.size())
+        {
+            throw new InternalExpressionException("Function " + function.getName() + " expected " + function.getNumParams() + " parameters, got " + params.size());
+        }
+        return function.eval(params);
+    }
+}
@@ -25,6 +25,19 @@ public interface LazyValue
         return evalValue(c, Context.Type.NONE);
     }
 
+    /**
+     * Block predicate known to be false on air blocks, without evaluating anything else for them,
+     * so block iterators can skip sections that contain nothing but air
+     */
+    record FalseForAir(LazyValue expression) implements LazyValue
+    {
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            return expression.evalValue(c, type);
+        }
+    }
+
     @FunctionalInterface
     interface ContextFreeLazyValue extends LazyValue
     {
@@ -0,0 +1,80 @@
+package carpet.script;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compile time layout of local variables of a single function body.
+ * Each local variable or argument referenced in the body gets a fixed slot index,
+ * so function frames can keep their locals in a plain array instead of a map.
+ * Variables not known at compile time (accessed via var(), etc.) are still stored by name in the context.
+ */
+public class LocalScope
+{
+    /**
+     * Scope of code that is not executed in a function frame, like the main body of the app or command snippets.
+     * It has no slots, so all variables go to the named storage of the context.
+     */
+    public static final LocalScope NONE = new LocalScope(true);
+
+    private final Object2IntMap<String> slots = new Object2IntOpenHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final boolean frozen;
+
+    private LocalScope(boolean frozen)
+    {
+        this.frozen = frozen;
+        slots.defaultReturnValue(-1);
+    }
+
+    public LocalScope()
+    {
+        this(false);
+        // special variables for second order functions, and block coordinates of carpet contexts, always seeded in a new frame
+        slotFor("_");
+        slotFor("_i");
+        slotFor("_a");
+        slotFor("_x");
+        slotFor("_y");
+        slotFor("_z");
+    }
+
+    /**
+     * @return slot index of a variable, or -1 if the variable is not local to this scope
+     */
+    public int slotOf(String name)
+    {
+        return slots.getInt(name);
+    }
+
+    int slotFor(String name)
+    {
+        int slot = slots.getInt(name);
+        if (slot < 0 && !frozen)
+        {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    public String nameOf(int slot)
+    {
+        return names.get(slot);
+    }
+
+    public int size()
+    {
+        return names.size();
+    }
+
+    public List<String> names()
+    {
+        return Collections.unmodifiableList(names);
+    }
+}
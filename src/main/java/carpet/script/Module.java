@@ -6,10 +6,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.io.IOUtils;
 
 import carpet.script.argument.FileArgument;
+import carpet.script.utils.ScriptFileIO;
 import net.minecraft.nbt.Tag;
 
 public record Module(String name, String code, boolean library)
@@ -94,10 +96,17 @@ public record Module(String name, String code, boolean library)
         {
             return null;
         }
-        synchronized (FileArgument.writeIOSync)
+        ScriptFileIO.flush(dataFile);
+        Lock lock = ScriptFileIO.lockFor(dataFile).readLock();
+        lock.lock();
+        try
         {
             return FileArgument.readTag(dataFile);
         }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public static void saveData(Module module, Tag globalState, ScriptServer scriptServer)
@@ -118,10 +127,16 @@ public record Module(String name, String code, boolean library)
                 throw new IllegalStateException(e);
             }
         }
-        synchronized (FileArgument.writeIOSync)
+        Lock lock = ScriptFileIO.lockFor(dataFile).writeLock();
+        lock.lock();
+        try
         {
             FileArgument.writeTagDisk(globalState, dataFile, false);
         }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     private static Path resolveResource(Module module, ScriptServer scriptServer)
@@ -0,0 +1,445 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.value.BooleanValue;
+import carpet.script.value.FunctionUnpackedArgumentsValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import org.jspecify.annotations.Nullable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Replaces generic closures of the optimized tree with specialized ones, where static types of the operands
+ * or the shape of the code allow it. Specialized nodes evaluate their arguments directly, without creating
+ * intermediate lazy values on each execution. Each specialized node is marked on its token, so it shows in /script explain.
+ */
+final class NodeSpecializer
+{
+    /**
+     * Operators, and functional forms of arithmetic, that have a direct implementation for two numbers
+     */
+    private static final Map<String, BiFunction<NumericValue, NumericValue, Value>> NUMERIC_OPERATIONS = Map.ofEntries(
+            Map.entry("+", NumericValue::add),
+            Map.entry("sum", NumericValue::add),
+            Map.entry("-", NumericValue::subtract),
+            Map.entry("difference", NumericValue::subtract),
+            Map.entry("*", NumericValue::multiply),
+            Map.entry("product", NumericValue::multiply),
+            Map.entry("/", NumericValue::divide),
+            Map.entry("quotient", NumericValue::divide),
+            Map.entry("%", NumericValue::mod),
+            Map.entry(">", (a, b) -> BooleanValue.of(a.compareTo(b) > 0)),
+            Map.entry(">=", (a, b) -> BooleanValue.of(a.compareTo(b) >= 0)),
+            Map.entry("<", (a, b) -> BooleanValue.of(a.compareTo(b) < 0)),
+            Map.entry("<=", (a, b) -> BooleanValue.of(a.compareTo(b) <= 0)),
+            Map.entry("==", (a, b) -> a.equals(b) ? Value.TRUE : Value.FALSE),
+            Map.entry("!=", (a, b) -> a.equals(b) ? Value.FALSE : Value.TRUE)
+    );
+    private static final Set<String> ARITHMETIC_FUNCTIONS = Set.of("sum", "difference", "product", "quotient");
+    /**
+     * Operators which result is a number regardless of their operands
+     */
+    private static final Set<String> NUMERIC_RESULTS = Set.of(">", ">=", "<", "<=", "==", "!=", "%", "^", "!u");
+    private static final Set<String> LOOPS = Set.of("while", "loop", "c_for");
+    private static final Set<String> ASSIGNMENTS = Set.of("=", "+=", "<>");
+    /**
+     * Functions that access variables by name, so it is not known which variables a loop using them changes
+     */
+    private static final Set<String> DYNAMIC_ACCESS = Set.of("var", "undef", "import");
+    /**
+     * Functions iterating over blocks, which take the expression evaluated for each block as their last argument
+     */
+    private static final Set<String> BLOCK_ITERATORS = Set.of("scan", "volume");
+
+    private NodeSpecializer()
+    {
+    }
+
+    static boolean isLoop(ExpressionNode node)
+    {
+        return node.token.type == Token.TokenType.FUNCTION && LOOPS.contains(node.token.surface);
+    }
+
+    /**
+     * Marks the expression argument of block iterators with {@link LazyValue.FalseForAir} if it starts with
+     * checking that the block is not air, like {@code !air(_) && ...}
+     *
+     * @param args   argument nodes of the function
+     * @param params evaluated arguments, the last one is replaced if it can be marked
+     */
+    static void markBlockPredicate(Token token, List<ExpressionNode> args, List<LazyValue> params)
+    {
+        if (token.type == Token.TokenType.FUNCTION && BLOCK_ITERATORS.contains(token.surface)
+                && !args.isEmpty() && isFalseForAir(args.get(args.size() - 1)))
+        {
+            int last = params.size() - 1;
+            params.set(last, new LazyValue.FalseForAir(params.get(last)));
+        }
+    }
+
+    private static boolean isFalseForAir(ExpressionNode node)
+    {
+        Token token = node.token;
+        if (node.args.isEmpty())
+        {
+            return false;
+        }
+        if ((token.type == Token.TokenType.UNARY_OPERATOR && token.surface.equals("!u"))
+                || (token.type == Token.TokenType.FUNCTION && token.surface.equals("not") && node.args.size() == 1))
+        {
+            ExpressionNode tested = node.args.get(0);
+            return tested.token.type == Token.TokenType.FUNCTION && tested.token.surface.equals("air") && tested.args.size() == 1
+                    && tested.args.get(0).token.type == Token.TokenType.VARIABLE && tested.args.get(0).token.surface.equals("_");
+        }
+        // the rest of the conjunction is not evaluated if the first operand is false
+        if ((token.type == Token.TokenType.OPERATOR && token.surface.equals("&&"))
+                || (token.type == Token.TokenType.FUNCTION && token.surface.equals("and")))
+        {
+            return isFalseForAir(node.args.get(0));
+        }
+        return false;
+    }
+
+    /**
+     * @return names of variables assigned anywhere in the loop, or null if they cannot be determined
+     */
+    @Nullable
+    static Set<String> loopVariables(ExpressionNode loop)
+    {
+        Set<String> variables = new HashSet<>();
+        return collectAssignments(loop, variables) ? variables : null;
+    }
+
+    private static boolean collectAssignments(ExpressionNode node, Set<String> variables)
+    {
+        if (node.token.type == Token.TokenType.FUNCTION && DYNAMIC_ACCESS.contains(node.token.surface))
+        {
+            return false;
+        }
+        if (node.token.type == Token.TokenType.OPERATOR && ASSIGNMENTS.contains(node.token.surface))
+        {
+            collectVariables(node.args.get(0), variables);
+            if (node.token.surface.equals("<>"))
+            {
+                collectVariables(node.args.get(1), variables);
+            }
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            if (!collectAssignments(arg, variables))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectVariables(ExpressionNode node, Set<String> variables)
+    {
+        if (node.token.type == Token.TokenType.VARIABLE)
+        {
+            variables.add(node.token.surface);
+        }
+        node.args.forEach(arg -> collectVariables(arg, variables));
+    }
+
+    /**
+     * @param operation  operator or function of the node
+     * @param args       already extracted arguments of the node
+     * @param loopVariables variables assigned in the innermost enclosing loop, or null if not in a loop that can be analysed
+     * @return specialized closure for the node, or null if the generic one should be used
+     */
+    @Nullable
+    static LazyValue specialize(Expression expression, ExpressionNode node, Fluff.EvalNode operation, List<LazyValue> args, @Nullable Set<String> loopVariables)
+    {
+        Token token = node.token;
+        String symbol = token.surface;
+        switch (token.type)
+        {
+            case OPERATOR:
+                if (symbol.equals("&&") || symbol.equals("||"))
+                {
+                    mark(token, "short-circuit " + symbol);
+                    return shortCircuit(expression, token, symbol.equals("&&"), false, args);
+                }
+                if (NUMERIC_OPERATIONS.containsKey(symbol) && operation instanceof Fluff.IOperator eager)
+                {
+                    return numeric(expression, node, eager, args.get(0), args.get(1));
+                }
+                return null;
+            case UNARY_OPERATOR:
+                if (symbol.equals("!u"))
+                {
+                    mark(token, "boolean !");
+                    LazyValue arg = args.get(0);
+                    return (c, t) -> {
+                        Value value;
+                        try
+                        {
+                            value = arg.evalValue(c, Context.BOOLEAN);
+                        }
+                        catch (RuntimeException exc)
+                        {
+                            throw Expression.handleCodeException(c, exc, expression, token);
+                        }
+                        return value.getBoolean() ? Value.FALSE : Value.TRUE;
+                    };
+                }
+                return null;
+            case FUNCTION:
+                if ((symbol.equals("and") || symbol.equals("or")) && !args.isEmpty())
+                {
+                    mark(token, "short-circuit " + symbol);
+                    return shortCircuit(expression, token, symbol.equals("and"), true, args);
+                }
+                if (ARITHMETIC_FUNCTIONS.contains(symbol) && !args.isEmpty() && node.args.stream().allMatch(NodeSpecializer::isNumeric))
+                {
+                    mark(token, "numeric " + symbol);
+                    BiFunction<NumericValue, NumericValue, Value> operator = NUMERIC_OPERATIONS.get(symbol);
+                    LazyValue[] params = args.toArray(new LazyValue[0]);
+                    return (c, t) -> {
+                        Fluff.ILazyFunction.checkInterrupts();
+                        try
+                        {
+                            Value accumulator = params[0].evalValue(c, Context.NONE);
+                            for (int i = 1; i < params.length; i++)
+                            {
+                                accumulator = operator.apply((NumericValue) accumulator, (NumericValue) params[i].evalValue(c, Context.NONE));
+                            }
+                            return accumulator;
+                        }
+                        catch (RuntimeException exc)
+                        {
+                            throw Expression.handleCodeException(c, exc, expression, token);
+                        }
+                    };
+                }
+                if (loopVariables != null && operation instanceof Fluff.AbstractFunction function && function.pure() && isInvariantCall(expression, node, loopVariables))
+                {
+                    mark(token, "loop invariant");
+                    return new InvariantCall(expression, token, function, args.toArray(new LazyValue[0]));
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static void mark(Token token, String specialization)
+    {
+        token.disguiseAs(null, "specialized: " + specialization);
+    }
+
+    /**
+     * Whether the node always evaluates to a number other than null
+     */
+    private static boolean isNumeric(ExpressionNode node)
+    {
+        if (node.op instanceof LazyValue.Constant constant)
+        {
+            return constant.get() instanceof NumericValue && !constant.get().isNull();
+        }
+        String symbol = node.token.surface;
+        return switch (node.token.type)
+        {
+            case OPERATOR -> NUMERIC_RESULTS.contains(symbol) || (NUMERIC_OPERATIONS.containsKey(symbol) && node.args.stream().allMatch(NodeSpecializer::isNumeric));
+            case UNARY_OPERATOR -> NUMERIC_RESULTS.contains(symbol) || ((symbol.equals("-u") || symbol.equals("+u")) && isNumeric(node.args.get(0)));
+            case FUNCTION -> ARITHMETIC_FUNCTIONS.contains(symbol) && !node.args.isEmpty() && node.args.stream().allMatch(NodeSpecializer::isNumeric);
+            default -> false;
+        };
+    }
+
+    private static boolean isNumber(Value value)
+    {
+        return value instanceof NumericValue && !value.isNull();
+    }
+
+    @Nullable
+    private static LazyValue numeric(Expression expression, ExpressionNode node, Fluff.IOperator eager, LazyValue left, LazyValue right)
+    {
+        Token token = node.token;
+        BiFunction<NumericValue, NumericValue, Value> operator = NUMERIC_OPERATIONS.get(token.surface);
+        boolean leftNumeric = isNumeric(node.args.get(0));
+        boolean rightNumeric = isNumeric(node.args.get(1));
+        if (leftNumeric && rightNumeric)
+        {
+            mark(token, "numeric " + token.surface);
+            return (c, t) -> {
+                try
+                {
+                    return operator.apply((NumericValue) left.evalValue(c, Context.NONE), (NumericValue) right.evalValue(c, Context.NONE));
+                }
+                catch (RuntimeException exc)
+                {
+                    throw Expression.handleCodeException(c, exc, expression, token);
+                }
+            };
+        }
+        if (leftNumeric || rightNumeric)
+        {
+            // the other side is checked at runtime, with the generic operator for anything that is not a number
+            mark(token, "numeric " + token.surface + " with a type guard");
+            return (c, t) -> {
+                try
+                {
+                    Value v1 = left.evalValue(c, Context.NONE);
+                    Value v2 = right.evalValue(c, Context.NONE);
+                    return isNumber(v1) && isNumber(v2) ? operator.apply((NumericValue) v1, (NumericValue) v2) : eager.eval(v1, v2);
+                }
+                catch (RuntimeException exc)
+                {
+                    throw Expression.handleCodeException(c, exc, expression, token);
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Same as the lazy implementations of '&&' and '||' and their functional forms, returning the first deciding value,
+     * or the value of the last argument in the type requested by the caller
+     *
+     * @param unpack whether unpacked arguments are checked one by one, like the functional forms do
+     */
+    private static LazyValue shortCircuit(Expression expression, Token token, boolean and, boolean unpack, List<LazyValue> args)
+    {
+        LazyValue[] conditions = args.subList(0, args.size() - 1).toArray(new LazyValue[0]);
+        LazyValue last = args.get(args.size() - 1);
+        return (c, t) -> {
+            Fluff.ILazyFunction.checkInterrupts();
+            try
+            {
+                for (LazyValue condition : conditions)
+                {
+                    Value value = condition.evalValue(c, Context.BOOLEAN);
+                    if (unpack && value instanceof FunctionUnpackedArgumentsValue unpacked)
+                    {
+                        for (Value item : unpacked)
+                        {
+                            if (item.getBoolean() != and)
+                            {
+                                return item;
+                            }
+                        }
+                    }
+                    else if (value.getBoolean() != and)
+                    {
+                        return value;
+                    }
+                }
+            }
+            catch (RuntimeException exc)
+            {
+                throw Expression.handleCodeException(c, exc, expression, token);
+            }
+            return last.evalValue(c, t);
+        };
+    }
+
+    private static boolean isInvariantCall(Expression expression, ExpressionNode node, Set<String> loopVariables)
+    {
+        return !node.args.isEmpty() && node.args.stream().allMatch(arg -> isInvariant(expression, arg, loopVariables));
+    }
+
+    private static boolean isInvariant(Expression expression, ExpressionNode node, Set<String> loopVariables)
+    {
+        if (node.op instanceof LazyValue.Constant)
+        {
+            return true;
+        }
+        return switch (node.token.type)
+        {
+            // loop and function variables, and globals that any call in the loop may change
+            case VARIABLE -> !node.token.surface.startsWith("_") && !node.token.surface.startsWith("global_") && !loopVariables.contains(node.token.surface);
+            case FUNCTION -> expression.operationOf(node) instanceof Fluff.AbstractFunction function && function.pure() && isInvariantCall(expression, node, loopVariables);
+            default -> false;
+        };
+    }
+
+    private static boolean isImmutable(Value value)
+    {
+        return value instanceof NumericValue || value.getClass() == StringValue.class;
+    }
+
+    /**
+     * Call of a pure function with arguments that don't change in the loop. The result is reused for as long
+     * as the arguments evaluate to the same immutable values, so it is only computed once per loop
+     * without the need to move it out of the loop, which would change the order of evaluation.
+     */
+    private static final class InvariantCall implements LazyValue
+    {
+        private record Memo(Value[] args, Value result)
+        {
+        }
+
+        private final Expression expression;
+        private final Token token;
+        private final Fluff.AbstractFunction function;
+        private final LazyValue[] params;
+        private volatile @Nullable Memo memo = null;
+
+        private InvariantCall(Expression expression, Token token, Fluff.AbstractFunction function, LazyValue[] params)
+        {
+            this.expression = expression;
+            this.token = token;
+            this.function = function;
+            this.params = params;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            Memo previous = memo;
+            Value[] values = null;
+            for (int i = 0; i < params.length; i++)
+            {
+                Value value = params[i].evalValue(c, Context.NONE);
+                if (values == null)
+                {
+                    if (previous != null && previous.args[i] == value)
+                    {
+                        continue;
+                    }
+                    values = new Value[params.length];
+                    if (i > 0)
+                    {
+                        System.arraycopy(previous.args, 0, values, 0, i);
+                    }
+                }
+                values[i] = value;
+            }
+            if (values == null)
+            {
+                return previous.result;
+            }
+            Fluff.ILazyFunction.checkInterrupts();
+            Value result;
+            try
+            {
+                result = FunctionCompiler.call(function, values);
+            }
+            catch (RuntimeException exc)
+            {
+                throw Expression.handleCodeException(c, exc, expression, token);
+            }
+            for (Value value : values)
+            {
+                if (!isImmutable(value))
+                {
+                    return result;
+                }
+            }
+            if (isImmutable(result))
+            {
+                memo = new Memo(values, result);
+            }
+            return result;
+        }
+    }
+}
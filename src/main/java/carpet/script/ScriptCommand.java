@@ -2,12 +2,16 @@ package carpet.script;
 
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
+import carpet.script.argument.FileArgument;
 import carpet.script.utils.AppStoreManager;
+import carpet.script.utils.BlockVolume;
+import carpet.script.utils.FunctionProfile;
 import carpet.script.exception.CarpetExpressionException;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
@@ -25,6 +29,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +48,7 @@ import net.minecraft.commands.arguments.blocks.BlockPredicateArgument;
 import net.minecraft.commands.arguments.blocks.BlockStateArgument;
 import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.pattern.BlockInWorld;
@@ -301,8 +307,10 @@ public class ScriptCommand
                         //then(literal("optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.OPTIMIZED))).
                         //then(literal("functional").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.FUNCTIONAL))).
                         //then(literal("functional_optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.FUNCTIONAL_OPTIMIZED))).
+                        then(literal("compiled").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.COMPILED))).
                         then(literal("global").
-                                executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.DEFAULT))
+                                executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.DEFAULT)).
+                                then(literal("compiled").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.COMPILED)))
                                         //.
                                 //then(literal("canonical").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.CANONICAL))).
                                 //then(literal("optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.OPTIMIZED))).
@@ -367,10 +375,23 @@ public class ScriptCommand
                             return success ? 1 : 0;
                         }));
 
+        LiteralArgumentBuilder<CommandSourceStack> p = literal("profile").requires(Vanilla::ServerPlayer_canScriptACE).
+                then(argument("app", StringArgumentType.word()).
+                        suggests((cc, bb) -> suggest(ss(cc).modules.keySet(), bb)).
+                        then(argument("ticks", IntegerArgumentType.integer(1, 72000)).
+                                executes((cc) -> profileApp(cc, StringArgumentType.getString(cc, "app"), IntegerArgumentType.getInteger(cc, "ticks")))));
+
+        LiteralArgumentBuilder<CommandSourceStack> w = literal("sample").requires(Vanilla::ServerPlayer_canScriptACE).
+                then(literal("start").
+                        executes((cc) -> startSampling(cc, 5)).
+                        then(argument("interval", IntegerArgumentType.integer(1, 1000)).
+                                executes((cc) -> startSampling(cc, IntegerArgumentType.getInteger(cc, "interval"))))).
+                then(literal("stop").executes(ScriptCommand::stopSampling));
+
         LiteralArgumentBuilder<CommandSourceStack> x = literal("explain").requires(Vanilla::ServerPlayer_canScriptACE).
                         executes((cc) -> explain(cc, null, null, null)).
                         then(literal("expression").
-                                then(argument("style", StringArgumentType.word()).suggests((cc, bb) -> suggest(List.of("raw", "clean", "functional", "canonical", "optimized", "functional_optimized"), bb)).
+                                then(argument("style", StringArgumentType.word()).suggests((cc, bb) -> suggest(List.of("raw", "clean", "functional", "canonical", "optimized", "functional_optimized", "specialized"), bb)).
                                         then(argument("expr", StringArgumentType.greedyString()).suggests(ScriptCommand::suggestCode).
                                                 executes((cc) -> explain(cc, StringArgumentType.getString(cc, "expr"), null, StringArgumentType.getString(cc, "style")))
                                         )
@@ -382,14 +403,14 @@ public class ScriptCommand
                                 )
                         ).
                         then(literal("source").
-                                then(argument("style", StringArgumentType.word()).suggests((cc, bb) -> suggest(List.of("raw", "clean", "functional", "canonical", "optimized", "functional_optimized"), bb)).
+                                then(argument("style", StringArgumentType.word()).suggests((cc, bb) -> suggest(List.of("raw", "clean", "functional", "canonical", "optimized", "functional_optimized", "specialized"), bb)).
                                         executes((cc) -> explain(cc, null, null, StringArgumentType.getString(cc, "style")))
                                 )
                         );
 
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
-                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r));
+                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r).then(p).then(w));
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
                 then(literal("in").
@@ -434,12 +455,105 @@ public class ScriptCommand
             {
                 if (!shownEvent)
                 {
-                    Carpet.Messenger_message(source, "w Handlers for " + event.name + ": ");
+                    Carpet.Messenger_message(source, "w Handlers for " + event.name + " (dispatched " + event.handler.dispatchedCalls() + " times): ");
                     shownEvent = true;
                 }
                 Carpet.Messenger_message(source, "w  - " + c.function.getString() + (c.host == null ? "" : " (from " + c.host + ")"));
             }
         }
+        List<CarpetEventServer.Event> idleEvents = CarpetEventServer.Event.getAllEvents(scriptServer, null).stream()
+                .filter(e -> e.handler.idleCalls() > 0)
+                .sorted(Comparator.comparingLong((CarpetEventServer.Event e) -> e.handler.idleCalls()).reversed())
+                .toList();
+        if (!idleEvents.isEmpty())
+        {
+            Carpet.Messenger_message(source, "w Events triggered without handlers:");
+            for (CarpetEventServer.Event event : idleEvents)
+            {
+                long wasted = event.handler.wastedCalls();
+                Carpet.Messenger_message(source, "g  - " + event.name + ": " + event.handler.idleCalls() + (wasted == 0 ? "" : ", " + wasted + " with arguments built for nothing"));
+            }
+        }
+        return 1;
+    }
+
+    private static int profileApp(CommandContext<CommandSourceStack> context, String app, int ticks)
+    {
+        CarpetScriptServer scriptServer = ss(context);
+        CommandSourceStack source = context.getSource();
+        if (!scriptServer.modules.containsKey(app))
+        {
+            Carpet.Messenger_message(source, "r No such app found: ", "wb  " + app);
+            return 0;
+        }
+        if (scriptServer.functionProfile != null)
+        {
+            Carpet.Messenger_message(source, "r App " + scriptServer.functionProfile.app() + " is already being profiled");
+            return 0;
+        }
+        scriptServer.functionProfile = new FunctionProfile(app, ticks, profile -> {
+            List<FunctionProfile.Entry> results = profile.results();
+            double divider = 1.0D / profile.ticks() / 1000000;
+            Carpet.Messenger_message(source, "w Functions of " + app + " over " + profile.ticks() + " ticks, by self time per tick:");
+            if (results.isEmpty())
+            {
+                Carpet.Messenger_message(source, "gi  no functions were called");
+            }
+            int shown = 0;
+            for (FunctionProfile.Entry entry : results)
+            {
+                if (++shown > 20)
+                {
+                    break;
+                }
+                Carpet.Messenger_message(source,
+                        "w  - " + entry.function() + ": ",
+                        "y %.3fms".formatted(divider * entry.selfNanos()),
+                        "g  self, ",
+                        "y %.3fms".formatted(divider * entry.totalNanos()),
+                        "g  total, " + entry.calls() + " calls"
+                );
+            }
+        });
+        Carpet.Messenger_message(source, "gi Profiling " + app + " for " + ticks + " ticks...");
+        return 1;
+    }
+
+    private static int startSampling(CommandContext<CommandSourceStack> context, int interval)
+    {
+        if (!ScriptSampler.start(interval))
+        {
+            Carpet.Messenger_message(context.getSource(), "r Scarpet code is already being sampled");
+            return 0;
+        }
+        Carpet.Messenger_message(context.getSource(), "gi Sampling scarpet code every " + interval + "ms, use /script sample stop to save the results");
+        return 1;
+    }
+
+    private static int stopSampling(CommandContext<CommandSourceStack> context)
+    {
+        CarpetScriptServer scriptServer = ss(context);
+        CommandSourceStack source = context.getSource();
+        long count = ScriptSampler.sampleCount();
+        Map<String, List<String>> stacks = ScriptSampler.stop();
+        if (stacks == null)
+        {
+            Carpet.Messenger_message(source, "r Scarpet code is not being sampled");
+            return 0;
+        }
+        Carpet.Messenger_message(source, "w Collected " + count + " samples");
+        stacks.forEach((app, lines) -> {
+            CarpetScriptHost host = scriptServer.modules.get(app);
+            if (host == null || host.main == null)
+            {
+                Carpet.Messenger_message(source, "gi  - " + app + ": " + lines.size() + " distinct stacks, not saved");
+                return;
+            }
+            FileArgument file = new FileArgument("samples", FileArgument.Type.TEXT, null, false, false, FileArgument.Reason.CREATE, host);
+            file.dropExistingFile(host.main);
+            file.appendToTextFile(host.main, lines);
+            Carpet.Messenger_message(source, "w  - " + app + ": ", "y " + lines.size(), "w  distinct stacks saved to " + app + ".data/" + file.getDisplayPath());
+        });
         return 1;
     }
 
@@ -666,16 +780,18 @@ public class ScriptCommand
         CarpetScriptHost host = getHost(context);
         BoundingBox area = BoundingBox.fromCorners(a, b);
         CarpetExpression cexpr = new CarpetExpression(host.main, expr, source, origin);
-        int int_1 = area.getXSpan() * area.getYSpan() * area.getZSpan(); // X Y Z
+        long int_1 = (long) area.getXSpan() * area.getYSpan() * area.getZSpan(); // X Y Z
         if (int_1 > source.getLevel().getGameRules().get(GameRules.MAX_BLOCK_MODIFICATIONS))
         {
             Carpet.Messenger_message(source, "r too many blocks to evaluate: " + int_1);
             return 1;
         }
         int successCount = 0;
+        long start = System.nanoTime();
         Carpet.getImpendingFillSkipUpdates().set(!Carpet.getFillUpdates());
         try
         {
+            CarpetExpression.BlockEvaluator evaluator = cexpr.new BlockEvaluator(host);
             for (int x = area.minX(); x <= area.maxX(); x++)
             {
                 for (int y = area.minY(); y <= area.maxY(); y++)
@@ -684,7 +800,7 @@ public class ScriptCommand
                     {
                         try
                         {
-                            if (cexpr.fillAndScanCommand(host, x, y, z))
+                            if (evaluator.test(x, y, z))
                             {
                                 successCount++;
                             }
@@ -705,7 +821,9 @@ public class ScriptCommand
         {
             Carpet.getImpendingFillSkipUpdates().set(false);
         }
-        Carpet.Messenger_message(source, "w Expression successful in " + successCount + " out of " + int_1 + " blocks");
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        Carpet.Messenger_message(source, String.format(Locale.ROOT, "w Expression successful in %d out of %d blocks (%.0f blocks/s)",
+                successCount, int_1, int_1 * 1.0e9 / elapsed));
         return successCount;
 
     }
@@ -718,17 +836,27 @@ public class ScriptCommand
         CarpetScriptHost host = getHost(context);
         BoundingBox area = BoundingBox.fromCorners(a, b);
         CarpetExpression cexpr = new CarpetExpression(host.main, expr, source, origin);
-        int int_1 = area.getXSpan() * area.getYSpan() * area.getZSpan();
+        long int_1 = (long) area.getXSpan() * area.getYSpan() * area.getZSpan();
         if (int_1 > source.getLevel().getGameRules().get(GameRules.MAX_BLOCK_MODIFICATIONS))
         {
             Carpet.Messenger_message(source, "r too many blocks to evaluate: " + int_1);
             return 1;
         }
 
-        boolean[][][] volume = new boolean[area.getXSpan()][area.getYSpan()][area.getZSpan()]; //X then Y then Z got messedup
+        BlockVolume volume;
+        try
+        {
+            volume = new BlockVolume(area.getXSpan(), area.getYSpan(), area.getZSpan());
+        }
+        catch (IllegalArgumentException e)
+        {
+            Carpet.Messenger_message(source, "r " + e.getMessage());
+            return 1;
+        }
 
         BlockPos.MutableBlockPos mbpos = origin.mutable();
         ServerLevel world = source.getLevel();
+        CarpetExpression.BlockEvaluator evaluator = cexpr.new BlockEvaluator(host);
 
         for (int x = area.minX(); x <= area.maxX(); x++)
         {
@@ -738,9 +866,9 @@ public class ScriptCommand
                 {
                     try
                     {
-                        if (cexpr.fillAndScanCommand(host, x, y, z))
+                        if (evaluator.test(x, y, z))
                         {
-                            volume[x - area.minX()][y - area.minY()][z - area.minZ()] = true;
+                            volume.set(x - area.minX(), y - area.minY(), z - area.minZ());
                         }
                     }
                     catch (CarpetExpressionException e)
@@ -754,82 +882,81 @@ public class ScriptCommand
                 }
             }
         }
-        int maxx = area.getXSpan() - 1;
-        int maxy = area.getYSpan() - 1;
-        int maxz = area.getZSpan() - 1;
         if ("outline".equalsIgnoreCase(mode))
         {
-            boolean[][][] newVolume = new boolean[area.getXSpan()][area.getYSpan()][area.getZSpan()];
-            for (int x = 0; x <= maxx; x++)
-            {
-                for (int y = 0; y <= maxy; y++)
-                {
-                    for (int z = 0; z <= maxz; z++)
-                    {
-                        if (volume[x][y][z])
-                        {
-                            if (((x != 0 && !volume[x - 1][y][z]) ||
-                                    (x != maxx && !volume[x + 1][y][z]) ||
-                                    (y != 0 && !volume[x][y - 1][z]) ||
-                                    (y != maxy && !volume[x][y + 1][z]) ||
-                                    (z != 0 && !volume[x][y][z - 1]) ||
-                                    (z != maxz && !volume[x][y][z + 1])
-                            ))
-                            {
-                                newVolume[x][y][z] = true;
-                            }
-                        }
-                    }
-                }
-            }
-            volume = newVolume;
+            volume = volume.outline();
         }
-        int affected = 0;
+        BlockVolume placed = volume;
+        int[] affected = new int[]{0};
 
         Carpet.getImpendingFillSkipUpdates().set(!Carpet.getFillUpdates());
-        for (int x = 0; x <= maxx; x++)
-        {
-            for (int y = 0; y <= maxy; y++)
+        forEachBySection(area, placed, (x, y, z) -> {
+            mbpos.set(x, y, z);
+            if (replacement == null || replacement.test(new BlockInWorld(world, mbpos, true)))
             {
-                for (int z = 0; z <= maxz; z++)
+                if (block.place(world, mbpos, 2 & Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS))
                 {
-                    if (volume[x][y][z])
-                    {
-                        mbpos.set(x + area.minX(), y + area.minY(), z + area.minZ());
-                        if (replacement == null || replacement.test(
-                                new BlockInWorld(world, mbpos, true)))
-                        {
-                            if (block.place(world, mbpos, 2 & Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS))
-                            {
-                                ++affected;
-                            }
-                        }
-                    }
+                    ++affected[0];
                 }
             }
-        }
+        });
         Carpet.getImpendingFillSkipUpdates().set(false);
 
         if (Carpet.getFillUpdates() && block != null)
         {
-            for (int x = 0; x <= maxx; x++)
+            // updates go out only after all blocks are placed, so no block reacts to a half filled area
+            forEachBySection(area, placed, (x, y, z) -> {
+                mbpos.set(x, y, z);
+                world.updateNeighborsAt(mbpos, world.getBlockState(mbpos).getBlock());
+            });
+        }
+        Carpet.Messenger_message(source, "gi Affected " + affected[0] + " blocks in " + int_1 + " block volume");
+        return 1;
+    }
+
+    @FunctionalInterface
+    private interface BlockConsumer
+    {
+        void accept(int x, int y, int z);
+    }
+
+    /**
+     * Visits world positions of all blocks in the volume, one chunk section at a time
+     */
+    private static void forEachBySection(BoundingBox area, BlockVolume volume, BlockConsumer action)
+    {
+        for (int sx = SectionPos.blockToSectionCoord(area.minX()); sx <= SectionPos.blockToSectionCoord(area.maxX()); sx++)
+        {
+            int fromX = Math.max(area.minX(), SectionPos.sectionToBlockCoord(sx));
+            int toX = Math.min(area.maxX(), SectionPos.sectionToBlockCoord(sx, 15));
+            for (int sz = SectionPos.blockToSectionCoord(area.minZ()); sz <= SectionPos.blockToSectionCoord(area.maxZ()); sz++)
             {
-                for (int y = 0; y <= maxy; y++)
+                int fromZ = Math.max(area.minZ(), SectionPos.sectionToBlockCoord(sz));
+                int toZ = Math.min(area.maxZ(), SectionPos.sectionToBlockCoord(sz, 15));
+                for (int sy = SectionPos.blockToSectionCoord(area.minY()); sy <= SectionPos.blockToSectionCoord(area.maxY()); sy++)
                 {
-                    for (int z = 0; z <= maxz; z++)
+                    int fromY = Math.max(area.minY(), SectionPos.sectionToBlockCoord(sy));
+                    int toY = Math.min(area.maxY(), SectionPos.sectionToBlockCoord(sy, 15));
+                    for (int x = fromX; x <= toX; x++)
                     {
-                        if (volume[x][y][z])
+                        for (int y = fromY; y <= toY; y++)
                         {
-                            mbpos.set(x + area.minX(), y + area.minY(), z + area.minZ());
-                            Block blokc = world.getBlockState(mbpos).getBlock();
-                            world.updateNeighborsAt(mbpos, blokc);
+                            if (volume.isRowEmpty(x - area.minX(), y - area.minY()))
+                            {
+                                continue;
+                            }
+                            for (int z = fromZ; z <= toZ; z++)
+                            {
+                                if (volume.get(x - area.minX(), y - area.minY(), z - area.minZ()))
+                                {
+                                    action.accept(x, y, z);
+                                }
+                            }
                         }
                     }
                 }
             }
         }
-        Carpet.Messenger_message(source, "gi Affected " + affected + " blocks in " + area.getXSpan() * area.getYSpan() * area.getZSpan() + " block volume");
-        return 1;
     }
 }
 
@@ -0,0 +1,238 @@
+package carpet.script;
+
+import carpet.script.value.FunctionValue;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import org.jspecify.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sampling profiler of scarpet code. While running, every thread executing scarpet keeps track of the
+ * user defined functions it is in and the last function call it made, and a background thread periodically
+ * records where each of them is. Samples are grouped by app, call stack and line, and can be written
+ * as collapsed stacks, one per line, which is the input format of most flame graph tools.
+ * Only code executed within user defined functions is sampled.
+ */
+public final class ScriptSampler
+{
+    private ScriptSampler()
+    {
+    }
+
+    /**
+     * @param session          sampling session the frame was recorded in
+     * @param callerExpression expression of the call site, restored when the function returns
+     * @param callerToken      token of the call site, restored when the function returns
+     */
+    private record Frame(int session, @Nullable Frame parent, @Nullable String app, String function, @Nullable Expression callerExpression, @Nullable Token callerToken)
+    {
+    }
+
+    private static final class Position
+    {
+        private final Thread thread = Thread.currentThread();
+        private volatile @Nullable Frame frame;
+        // written without synchronization, the sampler may see a slightly outdated position which is fine for sampling
+        private @Nullable Expression expression;
+        private @Nullable Token token;
+    }
+
+    static volatile boolean active = false;
+    // incremented on each start, so frames recorded in an earlier session are never closed by calls of a later one
+    private static volatile int session = 0;
+    private static final Set<Position> positions = ConcurrentHashMap.newKeySet();
+    private static final ThreadLocal<Position> POSITION = ThreadLocal.withInitial(() -> {
+        Position position = new Position();
+        positions.add(position);
+        return position;
+    });
+    // only written by the sampler thread
+    private static final Map<String, Object2LongOpenHashMap<String>> samples = new HashMap<>();
+    private static @Nullable Thread sampler;
+    private static volatile long sampleCount;
+
+    /**
+     * Marks the function call that the current thread is executing
+     */
+    static void at(Expression expression, Token token)
+    {
+        if (active)
+        {
+            Position position = POSITION.get();
+            position.expression = expression;
+            position.token = token;
+        }
+    }
+
+    /**
+     * @return sampling session the function frame has been recorded in, to be passed to {@link #exit},
+     * or 0 if sampling is not running and the frame has not been recorded
+     */
+    public static int enter(Context context, FunctionValue function)
+    {
+        if (!active)
+        {
+            return 0;
+        }
+        // session is set before sampling is activated, so it is current here
+        int current = session;
+        Position position = POSITION.get();
+        Frame parent = position.frame;
+        if (parent != null && parent.session() != current)
+        {
+            parent = null;
+        }
+        String name = function.getString();
+        position.frame = new Frame(current, parent, context.host.getName(), name.equals("_") ? "<lambda>" : name, position.expression, position.token);
+        position.expression = function.getExpression();
+        position.token = function.getToken();
+        return current;
+    }
+
+    /**
+     * Closes the innermost function frame, if it was recorded in the given session.
+     * Frames of a session that has been stopped in the meantime are already gone, so their calls don't close anything.
+     */
+    public static void exit(int frameSession)
+    {
+        Position position = POSITION.get();
+        Frame frame = position.frame;
+        if (frame != null && frame.session() == frameSession)
+        {
+            position.expression = frame.callerExpression();
+            position.token = frame.callerToken();
+            position.frame = frame.parent();
+        }
+    }
+
+    public static synchronized boolean isRunning()
+    {
+        return sampler != null;
+    }
+
+    /**
+     * @return whether sampling has started, false if it was already running
+     */
+    public static synchronized boolean start(int intervalMillis)
+    {
+        if (sampler != null)
+        {
+            return false;
+        }
+        samples.clear();
+        sampleCount = 0;
+        // skipping 0, which marks frames that weren't recorded
+        session = session == Integer.MAX_VALUE ? 1 : session + 1;
+        active = true;
+        sampler = new Thread(() -> {
+            while (active)
+            {
+                sample();
+                try
+                {
+                    Thread.sleep(intervalMillis);
+                }
+                catch (InterruptedException ignored)
+                {
+                    break;
+                }
+            }
+        }, "Scarpet sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+        return true;
+    }
+
+    /**
+     * Stops sampling
+     *
+     * @return collapsed stacks of each app, with the number of samples at the end of each line, or null if sampling was not running
+     */
+    @Nullable
+    public static synchronized Map<String, List<String>> stop()
+    {
+        if (sampler == null)
+        {
+            return null;
+        }
+        active = false;
+        sampler.interrupt();
+        try
+        {
+            sampler.join();
+        }
+        catch (InterruptedException ignored)
+        {
+            Thread.currentThread().interrupt();
+        }
+        sampler = null;
+        for (Position position : positions)
+        {
+            position.frame = null;
+        }
+        Map<String, List<String>> result = new HashMap<>();
+        samples.forEach((app, stacks) -> {
+            List<String> lines = new ArrayList<>(stacks.size());
+            stacks.object2LongEntrySet().stream()
+                    .sorted(Comparator.comparingLong(Object2LongMap.Entry<String>::getLongValue).reversed())
+                    .forEach(e -> lines.add(e.getKey() + " " + e.getLongValue()));
+            result.put(app, lines);
+        });
+        samples.clear();
+        return result;
+    }
+
+    public static long sampleCount()
+    {
+        return sampleCount;
+    }
+
+    private static void sample()
+    {
+        for (Position position : positions)
+        {
+            if (!position.thread.isAlive())
+            {
+                positions.remove(position);
+                continue;
+            }
+            Frame frame = position.frame;
+            if (frame == null || frame.session() != session)
+            {
+                continue;
+            }
+            Expression expression = position.expression;
+            Token token = position.token;
+            List<String> functions = new ArrayList<>();
+            Frame root = frame;
+            for (Frame f = frame; f != null; f = f.parent())
+            {
+                functions.add(f.function());
+                root = f;
+            }
+            StringBuilder stack = new StringBuilder();
+            for (int i = functions.size() - 1; i >= 0; i--)
+            {
+                stack.append(functions.get(i)).append(';');
+            }
+            if (token == null)
+            {
+                stack.setLength(stack.length() - 1);
+            }
+            else
+            {
+                stack.append(expression == null ? "?" : expression.getModuleName()).append(':').append(token.lineno + 1);
+            }
+            String app = root.app() == null ? "default" : root.app();
+            samples.computeIfAbsent(app, a -> new Object2LongOpenHashMap<>()).addTo(stack.toString(), 1);
+            sampleCount++;
+        }
+    }
+}
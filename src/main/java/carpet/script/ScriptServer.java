@@ -4,12 +4,19 @@ import java.nio.file.Path;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import carpet.script.utils.FunctionProfile;
 import carpet.script.value.Value;
+import org.jspecify.annotations.Nullable;
 
 // WIP
 public abstract class ScriptServer
 {
     public final Map<Value, Value> systemGlobals = new ConcurrentHashMap<>();
+    /**
+     * Function timing of the app being currently profiled, if any
+     */
+    @Nullable
+    public volatile FunctionProfile functionProfile;
 
     public abstract Path resolveResource(String suffix);
 }
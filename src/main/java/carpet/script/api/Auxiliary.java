@@ -844,7 +844,7 @@ public class Auxiliary
             CommandSourceStack innerSource = outerSource.withLevel((ServerLevel) world);
             Context newCtx = c.recreate();
             ((CarpetContext) newCtx).swapSource(innerSource);
-            newCtx.variables = c.variables;
+            newCtx.shareVariablesWith(c);
             Value retval = lv.get(1).evalValue(newCtx);
             return (cc, tt) -> retval;
         });
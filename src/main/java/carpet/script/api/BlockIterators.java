@@ -6,10 +6,13 @@ import carpet.script.Expression;
 import carpet.script.Fluff;
 import carpet.script.LazyValue;
 import carpet.script.argument.BlockArgument;
+import carpet.script.argument.FunctionArgument;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
+import carpet.script.utils.RegionSnapshot;
+import carpet.script.utils.SectionReader;
 import carpet.script.value.BlockValue;
 import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
@@ -17,13 +20,23 @@ import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.Vec3i;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.gamerules.GameRules;
+
+import org.jspecify.annotations.Nullable;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
@@ -31,6 +44,270 @@ import static java.lang.Math.min;
 
 public class BlockIterators
 {
+    /**
+     * Current values of the variables bound by block iterators, so they can be bound once, instead of with a new lambda per block.
+     * Coordinates are only turned into values when the expression reads them, and then reused until they change.
+     */
+    private static final class Cursor
+    {
+        private int x;
+        private int y;
+        private int z;
+        @Nullable
+        private Value xValue;
+        @Nullable
+        private Value yValue;
+        @Nullable
+        private Value zValue;
+        private Value block = Value.NULL;
+        private final LazyValue xVar = (c, t) -> xValue != null ? xValue : (xValue = NumericValue.of(x).bindTo("_x"));
+        private final LazyValue yVar = (c, t) -> yValue != null ? yValue : (yValue = NumericValue.of(y).bindTo("_y"));
+        private final LazyValue zVar = (c, t) -> zValue != null ? zValue : (zValue = NumericValue.of(z).bindTo("_z"));
+        private final LazyValue blockVar = (c, t) -> block;
+
+        private void setX(int x)
+        {
+            this.x = x;
+            xValue = null;
+        }
+
+        private void setY(int y)
+        {
+            this.y = y;
+            yValue = null;
+        }
+
+        private void setZ(int z)
+        {
+            this.z = z;
+            zValue = null;
+        }
+    }
+
+    /**
+     * Evaluates the expression for each block in the box, going through y, then x, then z coordinates, with the block
+     * and its coordinates, relative to the context origin, bound to '_', '_x', '_y' and '_z'.
+     * Block states are read straight from chunk sections, and sections with only air are skipped if the expression
+     * is known to be false for air blocks.
+     *
+     * @return number of blocks the expression was true for
+     */
+    private static int forEachBlock(CarpetContext c, Context.Type t, LazyValue expr, int minx, int miny, int minz, int maxx, int maxy, int maxz)
+    {
+        BlockPos origin = c.origin();
+        int ox = origin.getX();
+        int oy = origin.getY();
+        int oz = origin.getZ();
+        ServerLevel level = c.level();
+        SectionReader reader = new SectionReader(level);
+        boolean skipAir = expr instanceof LazyValue.FalseForAir;
+        Cursor cursor = new Cursor();
+
+        //saving outer scope
+        LazyValue xVal = c.getVariable("_x");
+        LazyValue yVal = c.getVariable("_y");
+        LazyValue zVal = c.getVariable("_z");
+        LazyValue defaultVal = c.getVariable("_");
+        int sCount = 0;
+        outer:
+        for (int y = miny; y <= maxy; y++)
+        {
+            cursor.setY(y);
+            c.setVariable("_y", cursor.yVar);
+            int wy = oy + y;
+            for (int x = minx; x <= maxx; x++)
+            {
+                cursor.setX(x);
+                c.setVariable("_x", cursor.xVar);
+                int wx = ox + x;
+                for (int z = minz; z <= maxz; z++)
+                {
+                    int wz = oz + z;
+                    if (skipAir && reader.isOnlyAir(wx, wy, wz))
+                    {
+                        // expression would be false for the rest of the row within this section
+                        z += 15 - (wz & 15);
+                        continue;
+                    }
+                    cursor.setZ(z);
+                    c.setVariable("_z", cursor.zVar);
+                    cursor.block = new BlockValue(reader.getBlockState(wx, wy, wz), level, new BlockPos(wx, wy, wz)).bindTo("_");
+                    c.setVariable("_", cursor.blockVar);
+                    Value result;
+                    try
+                    {
+                        result = expr.evalValue(c, t);
+                    }
+                    catch (ContinueStatement notIgnored)
+                    {
+                        result = notIgnored.retval;
+                    }
+                    catch (BreakStatement notIgnored)
+                    {
+                        break outer;
+                    }
+                    if (t != Context.VOID && result.getBoolean())
+                    {
+                        sCount += 1;
+                    }
+                }
+            }
+        }
+        //restoring outer scope
+        c.setVariable("_x", xVal);
+        c.setVariable("_y", yVal);
+        c.setVariable("_z", zVal);
+        c.setVariable("_", defaultVal);
+        return sCount;
+    }
+
+    /**
+     * Order in which {@code volume} visits blocks
+     */
+    private static final Comparator<BlockValue> VOLUME_ORDER = Comparator.<BlockValue>comparingInt(b -> b.getPos().getY())
+            .thenComparingInt(b -> b.getPos().getX())
+            .thenComparingInt(b -> b.getPos().getZ());
+
+    /**
+     * Calls the function with each block of a chunk column from the snapshot, on the current thread
+     *
+     * @param column x and z bounds of the column, within the scanned box
+     * @return blocks the function returned true for
+     */
+    private static List<BlockValue> scanColumn(Context c, FunctionArgument functionArgument, RegionSnapshot snapshot, ServerLevel level,
+                                               int[] column, int miny, int maxy)
+    {
+        List<BlockValue> matches = new ArrayList<>();
+        List<Value> params = new ArrayList<>(functionArgument.args.size() + 1);
+        for (int y = miny; y <= maxy; y++)
+        {
+            for (int x = column[0]; x <= column[2]; x++)
+            {
+                for (int z = column[1]; z <= column[3]; z++)
+                {
+                    BlockValue block = new BlockValue(snapshot.getBlockState(x, y, z), level, new BlockPos(x, y, z));
+                    params.clear();
+                    params.add(block);
+                    params.addAll(functionArgument.args);
+                    if (functionArgument.function.callInContext(c, Context.BOOLEAN, params).evalValue(c, Context.BOOLEAN).getBoolean())
+                    {
+                        matches.add(block);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Threads running functions of {@code scan_parallel}, kept apart from the common pool, so they can be told apart
+     * when they try to get the server thread to do something for them, which would deadlock while it waits for the scan
+     */
+    private static final class ScanWorker extends ForkJoinWorkerThread
+    {
+        private ScanWorker(ForkJoinPool pool)
+        {
+            super(pool);
+            setName("Scarpet scan worker " + getPoolIndex());
+        }
+    }
+
+    private static final ForkJoinPool SCAN_POOL = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), ScanWorker::new, null, false
+    );
+
+    /**
+     * Fails when called from a function run by {@code scan_parallel}, before it hands anything over to the server thread
+     */
+    public static void checkNotScanWorker()
+    {
+        if (Thread.currentThread() instanceof ScanWorker)
+        {
+            throw new InternalExpressionException("Functions called by 'scan_parallel' can't change or load the world, or run anything on the server thread");
+        }
+    }
+
+    /**
+     * Calls the function with each block in the box, from a snapshot of the box, on {@link #SCAN_POOL} threads,
+     * one chunk column per task
+     *
+     * @return blocks the function returned true for, per column
+     */
+    private static List<List<BlockValue>> scanParallel(Expression expression, Context c, List<Value> lv, String name)
+    {
+        CarpetContext cc = (CarpetContext) c;
+        if (lv.size() < 3)
+        {
+            throw new InternalExpressionException("'" + name + "' requires two positions and a function to call");
+        }
+        BlockArgument pos1Locator = BlockArgument.findIn(cc, lv, 0);
+        BlockArgument pos2Locator = BlockArgument.findIn(cc, lv, pos1Locator.offset);
+        FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, pos2Locator.offset, false, false);
+        // the block goes first
+        functionArgument.function.checkArgs(functionArgument.args.size() + 1);
+        BlockPos origin = cc.origin();
+        BlockPos pos1 = pos1Locator.block.getPos();
+        BlockPos pos2 = pos2Locator.block.getPos();
+        int minx = origin.getX() + min(pos1.getX(), pos2.getX());
+        int miny = origin.getY() + min(pos1.getY(), pos2.getY());
+        int minz = origin.getZ() + min(pos1.getZ(), pos2.getZ());
+        int maxx = origin.getX() + max(pos1.getX(), pos2.getX());
+        int maxy = origin.getY() + max(pos1.getY(), pos2.getY());
+        int maxz = origin.getZ() + max(pos1.getZ(), pos2.getZ());
+
+        ServerLevel level = cc.level();
+        // same limit as /script scan, the snapshot of the whole box is taken on the server thread
+        long blocks = (long) (maxx - minx + 1) * (maxy - miny + 1) * (maxz - minz + 1);
+        int limit = level.getGameRules().get(GameRules.MAX_BLOCK_MODIFICATIONS);
+        if (blocks > limit)
+        {
+            throw new InternalExpressionException("'" + name + "' area is too large: " + blocks + " blocks, maximum is " + limit);
+        }
+        MinecraftServer server = cc.server();
+        RegionSnapshot snapshot;
+        if (server.isSameThread())
+        {
+            snapshot = new RegionSnapshot(level, minx, miny, minz, maxx, maxy, maxz);
+        }
+        else
+        {
+            RegionSnapshot[] taken = new RegionSnapshot[1];
+            server.executeBlocking(() -> taken[0] = new RegionSnapshot(level, minx, miny, minz, maxx, maxy, maxz));
+            snapshot = taken[0];
+        }
+
+        List<CompletableFuture<List<BlockValue>>> columns = new ArrayList<>();
+        for (int cx = SectionPos.blockToSectionCoord(minx); cx <= SectionPos.blockToSectionCoord(maxx); cx++)
+        {
+            for (int cz = SectionPos.blockToSectionCoord(minz); cz <= SectionPos.blockToSectionCoord(maxz); cz++)
+            {
+                int[] column = {
+                        max(minx, SectionPos.sectionToBlockCoord(cx)), max(minz, SectionPos.sectionToBlockCoord(cz)),
+                        min(maxx, SectionPos.sectionToBlockCoord(cx, 15)), min(maxz, SectionPos.sectionToBlockCoord(cz, 15))
+                };
+                columns.add(CompletableFuture.supplyAsync(() -> scanColumn(c.duplicate(), functionArgument, snapshot, level, column, miny, maxy), SCAN_POOL));
+            }
+        }
+        List<List<BlockValue>> results = new ArrayList<>(columns.size());
+        try
+        {
+            for (CompletableFuture<List<BlockValue>> column : columns)
+            {
+                results.add(column.join());
+            }
+        }
+        catch (CompletionException e)
+        {
+            columns.forEach(column -> column.cancel(false));
+            if (e.getCause() instanceof final RuntimeException cause)
+            {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
     public static void apply(Expression expression)
     {
         // lazy cause of lazy expression
@@ -92,62 +369,10 @@ public class BlockIterators
             int cx = center.getX();
             int cy = center.getY();
             int cz = center.getZ();
-            int xrange = range.getX();
-            int yrange = range.getY();
-            int zrange = range.getZ();
-            int xprange = upperRange.getX();
-            int yprange = upperRange.getY();
-            int zprange = upperRange.getZ();
-
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = cy - yrange; y <= cy + yprange; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = cx - xrange; x <= cx + xprange; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = cz - zrange; z <= cz + zprange; z++)
-                    {
-                        int zFinal = z;
-
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+            int sCount = forEachBlock(cc, t, expr,
+                    cx - range.getX(), cy - range.getY(), cz - range.getZ(),
+                    cx + upperRange.getX(), cy + upperRange.getY(), cz + upperRange.getZ());
+            return (ct, tt) -> new NumericValue(sCount);
         });
 
         // must be lazy
@@ -171,64 +396,23 @@ public class BlockIterators
             int x2 = pos2.getX();
             int y2 = pos2.getY();
             int z2 = pos2.getZ();
-            int minx = min(x1, x2);
-            int miny = min(y1, y2);
-            int minz = min(z1, z2);
-            int maxx = max(x1, x2);
-            int maxy = max(y1, y2);
-            int maxz = max(z1, z2);
             LazyValue expr = llv.get(pos2Locator.offset);
+            int sCount = forEachBlock(cc, t, expr, min(x1, x2), min(y1, y2), min(z1, z2), max(x1, x2), max(y1, y2), max(z1, z2));
+            return (ct, tt) -> new NumericValue(sCount);
+        });
 
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = miny; y <= maxy; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = minx; x <= maxx; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = minz; z <= maxz; z++)
-                    {
-                        int zFinal = z;
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+        expression.addContextFunction("scan_parallel", -1, (c, t, lv) ->
+        {
+            List<BlockValue> matches = scanParallel(expression, c, lv, "scan_parallel").stream()
+                    .flatMap(List::stream)
+                    .sorted(VOLUME_ORDER)
+                    .toList();
+            return ListValue.wrap(new ArrayList<>(matches));
         });
 
+        expression.addContextFunction("scan_parallel_count", -1, (c, t, lv) ->
+                new NumericValue(scanParallel(expression, c, lv, "scan_parallel_count").stream().mapToLong(List::size).sum()));
+
         expression.addContextFunction("neighbours", -1, (c, t, lv) ->
         {
             BlockPos center = BlockArgument.findIn((CarpetContext) c, lv, 0).block.getPos();
@@ -15,8 +15,11 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
 import carpet.script.utils.BiomeInfo;
+import carpet.script.utils.DensityFunctionCache;
 import carpet.script.utils.InputValidator;
 import carpet.script.utils.WorldTools;
+import carpet.script.utils.BlockWriteQueue;
+import carpet.script.value.BlockBatchValue;
 import carpet.script.value.BlockValue;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.EntityValue;
@@ -25,12 +28,12 @@ import carpet.script.value.MapValue;
 import carpet.script.value.NBTSerializableValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
+import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 import carpet.script.value.ValueConversions;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongSet;
-import net.minecraft.util.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.core.Holder;
@@ -56,19 +59,14 @@ import net.minecraft.tags.TagKey;
 import net.minecraft.util.ProblemReporter;
 import net.minecraft.util.random.WeightedList;
 import net.minecraft.world.level.ServerExplosion;
-import net.minecraft.world.level.chunk.ChunkGenerator;
 import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
 import net.minecraft.world.level.levelgen.DensityFunction;
-import net.minecraft.world.level.levelgen.DensityFunctions;
-import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
 import net.minecraft.world.level.levelgen.NoiseRouter;
-import net.minecraft.world.level.levelgen.RandomState;
 import net.minecraft.world.level.levelgen.structure.Structure;
 import net.minecraft.world.level.levelgen.structure.StructureType;
 import net.minecraft.world.level.storage.TagValueInput;
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -78,6 +76,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
@@ -259,6 +258,136 @@ public class WorldAccess
         }
     }
 
+    /**
+     * Reads the block to place and its data from {@code set}-style arguments, following the target position
+     */
+    private static BlockBatchValue.Write blockChange(CarpetContext cc, BlockArgument targetLocator, List<Value> lv)
+    {
+        BlockArgument sourceLocator = BlockArgument.findIn(cc, lv, targetLocator.offset, true);
+        BlockState sourceBlockState = sourceLocator.block.getBlockState();
+        CompoundTag data = null;
+        if (lv.size() > sourceLocator.offset)
+        {
+            List<Value> args = new ArrayList<>();
+            for (int i = sourceLocator.offset, m = lv.size(); i < m; i++)
+            {
+                args.add(lv.get(i));
+            }
+            if (args.get(0) instanceof final ListValue list)
+            {
+                if (args.size() == 2 && NBTSerializableValue.fromValue(args.get(1)) instanceof final NBTSerializableValue nbtsv)
+                {
+                    data = nbtsv.getCompoundTag();
+                }
+                args = list.getItems();
+            }
+            else if (args.get(0) instanceof final MapValue map)
+            {
+                if (args.size() == 2 && NBTSerializableValue.fromValue(args.get(1)) instanceof final NBTSerializableValue nbtsv)
+                {
+                    data = nbtsv.getCompoundTag();
+                }
+                Map<Value, Value> state = map.getMap();
+                List<Value> mapargs = new ArrayList<>();
+                state.forEach((k, v) -> {
+                    mapargs.add(k);
+                    mapargs.add(v);
+                });
+                args = mapargs;
+            }
+            else
+            {
+                if ((args.size() & 1) == 1 && NBTSerializableValue.fromValue(args.get(args.size() - 1)) instanceof final NBTSerializableValue nbtsv)
+                {
+                    data = nbtsv.getCompoundTag();
+                }
+            }
+            StateDefinition<Block, BlockState> states = sourceBlockState.getBlock().getStateDefinition();
+            for (int i = 0; i < args.size() - 1; i += 2)
+            {
+                String paramString = args.get(i).getString();
+                Property<?> property = states.getProperty(paramString);
+                if (property == null)
+                {
+                    throw new InternalExpressionException("Property " + paramString + " doesn't apply to " + sourceLocator.block.getString());
+                }
+                String paramValue = args.get(i + 1).getString();
+                sourceBlockState = setProperty(property, paramString, paramValue, sourceBlockState);
+            }
+        }
+
+        if (data == null)
+        {
+            data = sourceLocator.block.getData();
+        }
+        return new BlockBatchValue.Write(targetLocator.block.getPos(), sourceBlockState, data);
+    }
+
+    /**
+     * Breaks the block without a tool, like {@code destroy} with a numeric or no second argument,
+     * needs to be called on the main thread
+     *
+     * @param how negative to drop the block itself, or the level of fortune to drop its loot with
+     * @return whether the block was removed
+     */
+    public static boolean destroyBlock(ServerLevel world, BlockPos where, long how)
+    {
+        BlockState state = world.getBlockState(where);
+        if (state.isAir())
+        {
+            return false;
+        }
+        BlockEntity be = world.getBlockEntity(where);
+        if (!world.removeBlock(where, false))
+        {
+            return false;
+        }
+        world.levelEvent(null, 2001, where, Block.getId(state));
+        if (how < 0)
+        {
+            Block.popResource(world, where, new ItemStack(state.getBlock()));
+            return true;
+        }
+        ItemStack tool = new ItemStack(Items.DIAMOND_PICKAXE, 1);
+        if (how > 0)
+        {
+            tool.enchant(world.registryAccess().lookupOrThrow(Registries.ENCHANTMENT).getOrThrow(Enchantments.FORTUNE), (int) how);
+        }
+        if (DUMMY_ENTITY == null)
+        {
+            DUMMY_ENTITY = new FallingBlockEntity(EntityType.FALLING_BLOCK, null);
+        }
+        Block.dropResources(state, world, where, be, DUMMY_ENTITY, tool);
+        return true;
+    }
+
+    /**
+     * Places the block with its data, needs to be called on the main thread
+     *
+     * @return whether anything changed
+     */
+    public static boolean placeBlock(ServerLevel world, BlockPos targetPos, BlockState state, @Nullable CompoundTag data)
+    {
+        boolean success = world.setBlock(targetPos, state, Block.UPDATE_CLIENTS  | Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS );
+        if (data != null)
+        {
+            BlockEntity be = world.getBlockEntity(targetPos);
+            if (be != null)
+            {
+                CompoundTag destTag = data.copy();
+                destTag.putInt("x", targetPos.getX());
+                destTag.putInt("y", targetPos.getY());
+                destTag.putInt("z", targetPos.getZ());
+                try (final ProblemReporter.ScopedCollector reporter = new ProblemReporter.ScopedCollector(be.problemPath(), CarpetScriptServer.LOG)) {
+                    be.loadWithComponents(TagValueInput.create(reporter, world.registryAccess(), destTag));
+                }
+                be.setChanged();
+                success = true;
+            }
+        }
+        return success;
+    }
+
     public static void apply(Expression expression)
     {
         expression.addContextFunction("block", -1, (c, t, lv) ->
@@ -748,95 +877,78 @@ public class WorldAccess
             CarpetContext cc = (CarpetContext) c;
             ServerLevel world = cc.level();
             BlockArgument targetLocator = BlockArgument.findIn(cc, lv, 0);
-            BlockArgument sourceLocator = BlockArgument.findIn(cc, lv, targetLocator.offset, true);
-            BlockState sourceBlockState = sourceLocator.block.getBlockState();
+            BlockBatchValue.Write write = blockChange(cc, targetLocator, lv);
             BlockState targetBlockState = world.getBlockState(targetLocator.block.getPos());
-            CompoundTag data = null;
-            if (lv.size() > sourceLocator.offset)
+            if (write.state() == targetBlockState && write.data() == null)
             {
-                List<Value> args = new ArrayList<>();
-                for (int i = sourceLocator.offset, m = lv.size(); i < m; i++)
-                {
-                    args.add(lv.get(i));
-                }
-                if (args.get(0) instanceof final ListValue list)
-                {
-                    if (args.size() == 2 && NBTSerializableValue.fromValue(args.get(1)) instanceof final NBTSerializableValue nbtsv)
-                    {
-                        data = nbtsv.getCompoundTag();
-                    }
-                    args = list.getItems();
-                }
-                else if (args.get(0) instanceof final MapValue map)
-                {
-                    if (args.size() == 2 && NBTSerializableValue.fromValue(args.get(1)) instanceof final NBTSerializableValue nbtsv)
-                    {
-                        data = nbtsv.getCompoundTag();
-                    }
-                    Map<Value, Value> state = map.getMap();
-                    List<Value> mapargs = new ArrayList<>();
-                    state.forEach((k, v) -> {
-                        mapargs.add(k);
-                        mapargs.add(v);
-                    });
-                    args = mapargs;
-                }
-                else
-                {
-                    if ((args.size() & 1) == 1 && NBTSerializableValue.fromValue(args.get(args.size() - 1)) instanceof final NBTSerializableValue nbtsv)
-                    {
-                        data = nbtsv.getCompoundTag();
-                    }
-                }
-                StateDefinition<Block, BlockState> states = sourceBlockState.getBlock().getStateDefinition();
-                for (int i = 0; i < args.size() - 1; i += 2)
-                {
-                    String paramString = args.get(i).getString();
-                    Property<?> property = states.getProperty(paramString);
-                    if (property == null)
-                    {
-                        throw new InternalExpressionException("Property " + paramString + " doesn't apply to " + sourceLocator.block.getString());
-                    }
-                    String paramValue = args.get(i + 1).getString();
-                    sourceBlockState = setProperty(property, paramString, paramValue, sourceBlockState);
-                }
+                return Value.FALSE;
+            }
+            Boolean[] result = new Boolean[]{true};
+            cc.server().executeBlocking(() -> result[0] = placeBlock(world, write.pos(), write.state(), write.data()));
+            return !result[0] ? Value.FALSE : new BlockValue(write.state(), world, targetLocator.block.getPos());
+        });
+
+        expression.addContextFunction("block_batch", 0, (c, t, lv) -> new BlockBatchValue(((CarpetContext) c).level()));
+
+        expression.addContextFunction("batch_set", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            if (lv.isEmpty() || !(lv.get(0) instanceof final BlockBatchValue batch))
+            {
+                throw new InternalExpressionException("'batch_set' requires a block batch as the first argument");
             }
+            List<Value> args = lv.subList(1, lv.size());
+            BlockArgument targetLocator = BlockArgument.findIn(cc, args, 0);
+            return new NumericValue(batch.add(cc.level(), blockChange(cc, targetLocator, args)));
+        });
 
-            if (data == null)
+        expression.addContextFunction("batch_commit", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            if (lv.isEmpty() || !(lv.get(0) instanceof final BlockBatchValue batch))
+            {
+                throw new InternalExpressionException("'batch_commit' requires a block batch as the first argument");
+            }
+            int perTick = lv.size() > 1 ? NumericValue.asNumber(lv.get(1)).getInt() : BlockWriteQueue.DEFAULT_BLOCKS_PER_TICK;
+            if (perTick < 1)
             {
-                data = sourceLocator.block.getData();
+                throw new InternalExpressionException("'batch_commit' needs to place at least one block per tick");
             }
-            CompoundTag finalData = data;
+            BlockWriteQueue queue = ((CarpetScriptServer) c.host.scriptServer()).blockWrites;
+            CompletableFuture<Value> done = queue.commit(batch.level(), batch.drain(), perTick);
+            return new ThreadValue(done, () -> queue.completeOnMainThread(done));
+        });
 
-            if (sourceBlockState == targetBlockState && data == null)
+        expression.addContextFunction("batch_destroy", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            if (lv.isEmpty() || !(lv.get(0) instanceof final BlockBatchValue batch))
             {
-                return Value.FALSE;
+                throw new InternalExpressionException("'batch_destroy' requires a block batch as the first argument");
             }
-            BlockState finalSourceBlockState = sourceBlockState;
-            BlockPos targetPos = targetLocator.block.getPos();
-            Boolean[] result = new Boolean[]{true};
-            cc.server().executeBlocking(() ->
+            List<Value> args = lv.subList(1, lv.size());
+            BlockArgument locator = BlockArgument.findIn(cc, args, 0);
+            long how = 0;
+            if (args.size() > locator.offset)
             {
-                boolean success = world.setBlock(targetPos, finalSourceBlockState, Block.UPDATE_CLIENTS  | Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS );
-                if (finalData != null)
+                if (!(args.get(locator.offset) instanceof final NumericValue number))
                 {
-                    BlockEntity be = world.getBlockEntity(targetPos);
-                    if (be != null)
-                    {
-                        CompoundTag destTag = finalData.copy();
-                        destTag.putInt("x", targetPos.getX());
-                        destTag.putInt("y", targetPos.getY());
-                        destTag.putInt("z", targetPos.getZ());
-                        try (final ProblemReporter.ScopedCollector reporter = new ProblemReporter.ScopedCollector(be.problemPath(), CarpetScriptServer.LOG)) {
-                            be.loadWithComponents(TagValueInput.create(reporter, world.registryAccess(), destTag));
-                        }
-                        be.setChanged();
-                        success = true;
-                    }
+                    throw new InternalExpressionException("'batch_destroy' can't break blocks with tools, only with a numeric drop option");
                 }
-                result[0] = success;
-            });
-            return !result[0] ? Value.FALSE : new BlockValue(finalSourceBlockState, world, targetLocator.block.getPos());
+                how = number.getLong();
+            }
+            return new NumericValue(batch.add(cc.level(), BlockBatchValue.Write.destroy(locator.block.getPos(), how)));
+        });
+
+        expression.addContextFunction("batch_update", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            if (lv.isEmpty() || !(lv.get(0) instanceof final BlockBatchValue batch))
+            {
+                throw new InternalExpressionException("'batch_update' requires a block batch as the first argument");
+            }
+            BlockArgument locator = BlockArgument.findIn(cc, lv.subList(1, lv.size()), 0);
+            return new NumericValue(batch.add(cc.level(), BlockBatchValue.Write.update(locator.block.getPos())));
         });
 
         expression.addContextFunction("destroy", -1, (c, t, lv) ->
@@ -894,7 +1006,11 @@ public class WorldAccess
             {
                 tool = new ItemStack(item, 1);
             }
-            if (playerBreak && state.getDestroySpeed(world, where) < 0.0)
+            if (!playerBreak)
+            {
+                return destroyBlock(world, where, how) ? Value.TRUE : Value.FALSE;
+            }
+            if (state.getDestroySpeed(world, where) < 0.0)
             {
                 return Value.FALSE;
             }
@@ -948,10 +1064,6 @@ public class WorldAccess
                     Block.dropResources(state, world, where, be, DUMMY_ENTITY, tool);
                 }
             }
-            if (!playerBreak) // no tool info - block brokwn
-            {
-                return Value.TRUE;
-            }
             if (toolBroke.booleanValue())
             {
                 return Value.NULL;
@@ -1731,11 +1843,53 @@ public class WorldAccess
                     ? NumericValue.of(sampleNoise(router, level, densityFunctionQueries[0], pos))
                     : ListValue.wrap(Arrays.stream(densityFunctionQueries).map(s -> NumericValue.of(sampleNoise(router, level, s, pos))));
         });
+
+        expression.addContextFunction("sample_noise_region", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            ServerLevel level = cc.level();
+            BlockArgument fromLocator = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument toLocator = BlockArgument.findIn(cc, lv, fromLocator.offset);
+            if (lv.size() <= toLocator.offset)
+            {
+                throw new InternalExpressionException("'sample_noise_region' requires a density function to sample");
+            }
+            String densityFunctionQuery = lv.get(toLocator.offset).getString();
+            int stride = 1;
+            if (lv.size() > toLocator.offset + 1)
+            {
+                stride = NumericValue.asNumber(lv.get(toLocator.offset + 1), "stride").getInt();
+                if (stride < 1)
+                {
+                    throw new InternalExpressionException("Stride for 'sample_noise_region' needs to be positive");
+                }
+            }
+            BlockPos from = fromLocator.block.getPos();
+            BlockPos to = toLocator.block.getPos();
+            BlockPos min = new BlockPos(Math.min(from.getX(), to.getX()), Math.min(from.getY(), to.getY()), Math.min(from.getZ(), to.getZ()));
+            BlockPos max = new BlockPos(Math.max(from.getX(), to.getX()), Math.max(from.getY(), to.getY()), Math.max(from.getZ(), to.getZ()));
+            int xSize = (max.getX() - min.getX()) / stride + 1;
+            int ySize = (max.getY() - min.getY()) / stride + 1;
+            int zSize = (max.getZ() - min.getZ()) / stride + 1;
+            NoiseRouter router = level.getChunkSource().randomState().router();
+            double[] values = sampleNoiseRegion(densityFunction(router, level, densityFunctionQuery), min, xSize, ySize, zSize, stride);
+            List<Value> result = new ArrayList<>(values.length);
+            for (double value : values)
+            {
+                result.add(new NumericValue(value));
+            }
+            return ListValue.wrap(result);
+        });
     }
 
     public static double sampleNoise(NoiseRouter router, ServerLevel level, String what, BlockPos pos)
     {
-        DensityFunction densityFunction = switch (what)
+        return densityFunction(router, level, what).compute(new DensityFunction.SinglePointContext(pos.getX(), pos.getY(), pos.getZ()));
+    }
+
+    private static DensityFunction densityFunction(NoiseRouter router, ServerLevel level, String what)
+    {
+        return switch (what)
         {
             case "barrier_noise" -> router.barrierNoise();
             case "fluid_level_floodedness_noise" -> router.fluidLevelFloodednessNoise();
@@ -1752,56 +1906,46 @@ public class WorldAccess
             case "vein_toggle" -> router.veinToggle();
             case "vein_ridged" -> router.veinRidged();
             case "vein_gap" -> router.veinGap();
-            default -> stupidWorldgenNoiseCacheGetter.apply(Pair.of(level, what));
+            default -> DensityFunctionCache.get(level, what);
         };
-        return densityFunction.compute(new DensityFunction.SinglePointContext(pos.getX(), pos.getY(), pos.getZ()));
     }
 
-    // to be used with future seedable noise
-    public static final Function<Pair<ServerLevel, String>, DensityFunction> stupidWorldgenNoiseCacheGetter = Util.memoize(pair -> {
-        ServerLevel level = pair.getKey();
-        String densityFunctionQuery = pair.getValue();
-        ChunkGenerator generator = level.getChunkSource().getGenerator();
+    // results become a list of boxed values, about 40 bytes each
+    private static final long MAX_NOISE_SAMPLES = 1 << 20;
 
-        if (generator instanceof final NoiseBasedChunkGenerator noiseBasedChunkGenerator)
+    /**
+     * Samples the density function over a grid of positions in one go, letting the function fill all values at once
+     *
+     * @return values ordered by y, then x, then z, with z changing the fastest
+     */
+    public static double[] sampleNoiseRegion(DensityFunction densityFunction, BlockPos from, int xSize, int ySize, int zSize, int stride)
+    {
+        long samples = (long) xSize * ySize * zSize;
+        if (samples > MAX_NOISE_SAMPLES)
         {
-            Registry<DensityFunction> densityFunctionRegistry = level.registryAccess().lookupOrThrow(Registries.DENSITY_FUNCTION);
-            NoiseRouter router = noiseBasedChunkGenerator.generatorSettings().value().noiseRouter();
-            DensityFunction densityFunction = switch (densityFunctionQuery)
-                    {
-                        case "barrier_noise" -> router.barrierNoise();
-                        case "fluid_level_floodedness_noise" -> router.fluidLevelFloodednessNoise();
-                        case "fluid_level_spread_noise" -> router.fluidLevelSpreadNoise();
-                        case "lava_noise" -> router.lavaNoise();
-                        case "temperature" -> router.temperature();
-                        case "vegetation" -> router.vegetation();
-                        case "continents" -> router.continents();
-                        case "erosion" -> router.erosion();
-                        case "depth" -> router.depth();
-                        case "ridges" -> router.ridges();
-                        case "preliminary_surface_level" -> router.preliminarySurfaceLevel();
-                        case "final_density" -> router.finalDensity();
-                        case "vein_toggle" -> router.veinToggle();
-                        case "vein_ridged" -> router.veinRidged();
-                        case "vein_gap" -> router.veinGap();
-                        default -> {
-                            DensityFunction result = densityFunctionRegistry.getValue(InputValidator.identifierOf(densityFunctionQuery));
-                            if (result == null)
-                            {
-                                throw new InternalExpressionException("Density function '" + densityFunctionQuery + "' is not defined in the registies.");
-                            }
-                            yield result;
-                        }
-                    };
-
-            RandomState randomState = RandomState.create(
-                    noiseBasedChunkGenerator.generatorSettings().value(),
-                    level.registryAccess().lookupOrThrow(Registries.NOISE), level.getSeed()
-            );
-            DensityFunction.Visitor visitor = Vanilla.RandomState_getVisitor(randomState);
-
-            return densityFunction.mapAll(visitor);
+            throw new InternalExpressionException("Too many noise samples requested: " + samples + ", maximum is " + MAX_NOISE_SAMPLES);
         }
-        return DensityFunctions.zero();
-    });
+        double[] values = new double[(int) samples];
+        densityFunction.fillArray(values, new DensityFunction.ContextProvider()
+        {
+            @Override
+            public DensityFunction.FunctionContext forIndex(int index)
+            {
+                int z = index % zSize;
+                int x = (index / zSize) % xSize;
+                int y = index / zSize / xSize;
+                return new DensityFunction.SinglePointContext(from.getX() + x * stride, from.getY() + y * stride, from.getZ() + z * stride);
+            }
+
+            @Override
+            public void fillAllDirectly(double[] array, DensityFunction function)
+            {
+                for (int i = 0; i < array.length; i++)
+                {
+                    array[i] = function.compute(forIndex(i));
+                }
+            }
+        });
+        return values;
+    }
 }
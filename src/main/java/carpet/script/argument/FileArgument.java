@@ -7,6 +7,7 @@ import carpet.script.ScriptHost;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.utils.ScriptFileIO;
 import carpet.script.value.MapValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
@@ -45,6 +46,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -61,8 +64,6 @@ public class FileArgument
     private Path zipPath;
     private final ScriptHost host;
 
-    public static final Object writeIOSync = new Object();
-
     public void close()
     {
         if (zfs != null && zfs.isOpen())
@@ -245,6 +246,44 @@ public class FileArgument
         }
     }
 
+    /**
+     * @return path used to lock the file, which is the zip container for files in zip containers
+     */
+    @Nullable
+    private Path lockPath(@Nullable Module module)
+    {
+        if (!isShared && module == null)
+        {
+            return null;
+        }
+        return zipContainer == null
+                ? resolve(getDescriptor(module, resource) + (isFolder ? "" : type.extension))
+                : resolve(getDescriptor(module, zipContainer));
+    }
+
+    /**
+     * Locks the file, writing out anything still queued for it first if the file is going to be read
+     *
+     * @return held lock, or null if the file can't be accessed
+     */
+    @Nullable
+    private Lock lock(@Nullable Module module, boolean write, boolean flush)
+    {
+        Path lockPath = lockPath(module);
+        if (lockPath == null)
+        {
+            return null;
+        }
+        if (flush)
+        {
+            ScriptFileIO.flush(lockPath);
+        }
+        ReadWriteLock lock = ScriptFileIO.lockFor(lockPath);
+        Lock held = write ? lock.writeLock() : lock.readLock();
+        held.lock();
+        return held;
+    }
+
     @Nullable
     private Path moduleRootPath(@Nullable Module module)
     {
@@ -274,22 +313,25 @@ public class FileArgument
 
     public boolean findPathAndApply(Module module, Consumer<Path> action)
     {
+        Lock lock = lock(module, true, true);
+        if (lock == null)
+        {
+            return false;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);//, resourceName, supportedTypes.get(type), isShared);
+            if (dataFile == null)
             {
-                Path dataFile = toPath(module);//, resourceName, supportedTypes.get(type), isShared);
-                if (dataFile == null)
-                {
-                    return false;
-                }
-                createPaths(dataFile);
-                action.accept(dataFile);
+                return false;
             }
+            createPaths(dataFile);
+            action.accept(dataFile);
         }
         finally
         {
             close();
+            lock.unlock();
         }
         return true;
     }
@@ -319,30 +361,39 @@ public class FileArgument
     @Nullable
     public Stream<String> listFolder(Module module)
     {
+        Path lockPath = lockPath(module);
+        if (lockPath == null)
+        {
+            return null;
+        }
+        if (zipContainer == null)
+        {
+            ScriptFileIO.flushFolder(lockPath);
+        }
+        Lock lock = ScriptFileIO.lockFor(lockPath).readLock();
+        lock.lock();
         Stream<String> strings;
         try (Stream<Path> result = listFiles(module))
         {
-            synchronized (writeIOSync)
+            if (result == null)
             {
-                if (result == null)
-                {
-                    return null;
-                }
-                Path rootPath = moduleRootPath(module);
-                if (rootPath == null)
-                {
-                    return null;
-                }
-                String zipComponent = (zipContainer != null) ? rootPath.relativize(zipPath).toString() : null;
-                // need to evaluate the stream before exiting try-with-resources else there'll be no data to stream
-                strings = (zipContainer == null)
-                        ? result.map(p -> rootPath.relativize(p).toString().replaceAll("[\\\\/]+", "/")).toList().stream()
-                        : result.map(p -> (zipComponent + '/' + p.toString()).replaceAll("[\\\\/]+", "/")).toList().stream();
+                return null;
             }
+            Path rootPath = moduleRootPath(module);
+            if (rootPath == null)
+            {
+                return null;
+            }
+            String zipComponent = (zipContainer != null) ? rootPath.relativize(zipPath).toString() : null;
+            // need to evaluate the stream before exiting try-with-resources else there'll be no data to stream
+            strings = (zipContainer == null)
+                    ? result.map(p -> rootPath.relativize(p).toString().replaceAll("[\\\\/]+", "/")).toList().stream()
+                    : result.map(p -> (zipComponent + '/' + p.toString()).replaceAll("[\\\\/]+", "/")).toList().stream();
         }
         finally
         {
             close();
+            lock.unlock();
         }
         // java 8 paths are inconsistent. in java 16 they all should not have trailing slashes
         return type == Type.FOLDER
@@ -371,26 +422,33 @@ public class FileArgument
 
     public boolean appendToTextFile(Module module, List<String> message)
     {
+        Lock lock = lock(module, true, false);
+        if (lock == null)
+        {
+            return false;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null)
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null)
-                {
-                    return false;
-                }
-                createPaths(dataFile);
-                OutputStream out = Files.newOutputStream(dataFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
+                return false;
+            }
+            createPaths(dataFile);
+            if (zipContainer == null)
+            {
+                ScriptFileIO.append(dataFile, message, type == Type.TEXT);
+                return true;
+            }
+            OutputStream out = Files.newOutputStream(dataFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
+            {
+                for (String line : message)
                 {
-                    for (String line : message)
+                    writer.append(line);
+                    if (type == Type.TEXT)
                     {
-                        writer.append(line);
-                        if (type == Type.TEXT)
-                        {
-                            writer.newLine();
-                        }
+                        writer.newLine();
                     }
                 }
             }
@@ -403,6 +461,7 @@ public class FileArgument
         finally
         {
             close();
+            lock.unlock();
         }
         return true;
     }
@@ -410,21 +469,24 @@ public class FileArgument
     @Nullable
     public Tag getNbtData(Module module) // aka getData
     {
+        Lock lock = lock(module, false, true);
+        if (lock == null)
+        {
+            return null;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null || !Files.exists(dataFile))
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null || !Files.exists(dataFile))
-                {
-                    return null;
-                }
-                return readTag(dataFile);
+                return null;
             }
+            return readTag(dataFile);
         }
         finally
         {
             close();
+            lock.unlock();
         }
     }
 
@@ -479,24 +541,36 @@ public class FileArgument
         }
     }
 
+    /**
+     * Files outside of zip containers are written in the background, see {@link ScriptFileIO}
+     */
     public boolean saveNbtData(Module module, Tag tag) // aka saveData
     {
+        Lock lock = lock(module, true, false);
+        if (lock == null)
+        {
+            return false;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null)
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null)
-                {
-                    return false;
-                }
-                createPaths(dataFile);
-                return writeTagDisk(tag, dataFile, zipContainer != null);
+                return false;
             }
+            createPaths(dataFile);
+            if (zipContainer == null)
+            {
+                // tags of nbt values can be modified in place by the app after it is queued
+                ScriptFileIO.queueWrite(dataFile, tag.copy());
+                return true;
+            }
+            return writeTagDisk(tag, dataFile, true);
         }
         finally
         {
             close();
+            lock.unlock();
         }
     }
 
@@ -544,17 +618,21 @@ public class FileArgument
 
     public boolean dropExistingFile(Module module)
     {
+        Lock lock = lock(module, true, false);
+        if (lock == null)
+        {
+            return false;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null)
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null)
-                {
-                    return false;
-                }
-                return Files.deleteIfExists(dataFile);
+                return false;
             }
+            // a file only queued to be written counts as existing
+            boolean discarded = zipContainer == null && ScriptFileIO.discard(dataFile);
+            return Files.deleteIfExists(dataFile) || discarded;
         }
         catch (IOException e)
         {
@@ -564,31 +642,35 @@ public class FileArgument
         finally
         {
             close();
+            lock.unlock();
         }
     }
 
     @Nullable
     public List<String> listFile(Module module)
     {
+        Lock lock = lock(module, false, true);
+        if (lock == null)
+        {
+            return null;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null)
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null)
-                {
-                    return null;
-                }
-                if (!Files.exists(dataFile))
-                {
-                    return null;
-                }
-                return listFileContent(dataFile);
+                return null;
             }
+            if (!Files.exists(dataFile))
+            {
+                return null;
+            }
+            return listFileContent(dataFile);
         }
         finally
         {
             close();
+            lock.unlock();
         }
     }
 
@@ -618,21 +700,24 @@ public class FileArgument
     @Nullable
     public JsonElement readJsonFile(Module module)
     {
+        Lock lock = lock(module, false, true);
+        if (lock == null)
+        {
+            return null;
+        }
         try
         {
-            synchronized (writeIOSync)
+            Path dataFile = toPath(module);
+            if (dataFile == null || !Files.exists(dataFile))
             {
-                Path dataFile = toPath(module);
-                if (dataFile == null || !Files.exists(dataFile))
-                {
-                    return null;
-                }
-                return readJsonContent(dataFile);
+                return null;
             }
+            return readJsonContent(dataFile);
         }
         finally
         {
             close();
+            lock.unlock();
         }
     }
 
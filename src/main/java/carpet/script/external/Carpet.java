@@ -17,8 +17,11 @@ import carpet.script.Module;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.LoadException;
 import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
+import carpet.script.value.Value;
 import carpet.utils.CarpetProfiler;
+import carpet.utils.TickHealthRecorder;
 import carpet.utils.Messenger;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.FabricLoader;
@@ -41,6 +44,7 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -79,10 +83,36 @@ public class Carpet
         return CarpetSettings.impendingFillSkipUpdates;
     }
 
+    private static final Runnable NO_SECTION = () -> {};
+
     public static Runnable startProfilerSection(String name)
     {
         CarpetProfiler.ProfilerToken token = CarpetProfiler.start_section(null, name, CarpetProfiler.TYPE.GENERAL);
-        return () -> CarpetProfiler.end_current_section(token);
+        return token == null ? NO_SECTION : token.end();
+    }
+
+    /**
+     * @return map of profiled sections to their tick time percentiles in milliseconds, or null if histograms are not recorded
+     */
+    @Nullable
+    public static Value getTickHistograms()
+    {
+        if (!CarpetSettings.tickHealthHistograms)
+        {
+            return null;
+        }
+        Map<Value, Value> sections = new HashMap<>();
+        for (TickHealthRecorder.Summary summary : CarpetProfiler.RECORDER.summaries())
+        {
+            sections.put(StringValue.of(summary.section()), MapValue.wrap(Map.of(
+                    StringValue.of("ticks"), NumericValue.of(summary.ticks()),
+                    StringValue.of("p50"), new NumericValue(summary.p50() / 1000000.0),
+                    StringValue.of("p95"), new NumericValue(summary.p95() / 1000000.0),
+                    StringValue.of("p99"), new NumericValue(summary.p99() / 1000000.0),
+                    StringValue.of("max"), new NumericValue(summary.max() / 1000000.0)
+            )));
+        }
+        return MapValue.wrap(sections);
     }
 
     // not needed in vanilla
@@ -286,6 +286,11 @@ public class Vanilla
         return CarpetSettings.scriptsOptimization;
     }
 
+    public static boolean ScriptServer_scriptCompilation(MinecraftServer server)
+    {
+        return CarpetSettings.scriptsCompilation;
+    }
+
     public static boolean ScriptServer_scriptDebugging(MinecraftServer server)
     {
         return CarpetSettings.scriptsDebugging;
@@ -13,6 +13,25 @@ public class Arithmetic
     public static final Value PI = new NumericValue(Math.PI);
     public static final Value euler = new NumericValue(Math.E);
 
+    /**
+     * Implementations of the arithmetic operators. Two numbers go straight to the primitive long or double arithmetic
+     * of {@link NumericValue}, which returns shared instances for small integers, everything else uses the generic value operations.
+     */
+    public static Value sum(Value v1, Value v2)
+    {
+        return v1 instanceof NumericValue n1 && v2 instanceof NumericValue n2 ? n1.add(n2) : v1.add(v2);
+    }
+
+    public static Value difference(Value v1, Value v2)
+    {
+        return v1 instanceof NumericValue n1 && v2 instanceof NumericValue n2 ? n1.subtract(n2) : v1.subtract(v2);
+    }
+
+    public static Value product(Value v1, Value v2)
+    {
+        return v1 instanceof NumericValue n1 && v2 instanceof NumericValue n2 ? n1.multiply(n2) : v1.multiply(v2);
+    }
+
     public static void apply(Expression expression)
     {
         expression.addTypedContextFunction("not", 1, Context.Type.BOOLEAN, (c, t, lv) -> BooleanValue.of(lv.get(0).getBoolean()));
@@ -117,9 +117,9 @@ public class ControlFlow
                                 NumericValue.of(f.getToken().linepos + 1)
                         ))),
 
-                        StringValue.of("locals"), MapValue.wrap(ret.context.variables.entrySet().stream().filter(e -> !e.getKey().equals("_trace")).collect(Collectors.toMap(
-                                e -> StringValue.of(e.getKey()),
-                                e -> e.getValue().evalValue(ret.context)
+                        StringValue.of("locals"), MapValue.wrap(ret.context.getAllVariableNames().stream().filter(name -> !name.equals("_trace")).collect(Collectors.toMap(
+                                StringValue::of,
+                                name -> ret.context.getVariable(name).evalValue(ret.context)
                         ))),
                         StringValue.of("token"), ListValue.of(
                                 StringValue.of(ret.token.surface),
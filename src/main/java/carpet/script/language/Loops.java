@@ -181,9 +181,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int doYouReally = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
                 try
                 {
@@ -238,9 +238,9 @@ public class Loops
                     continue;
                 }
                 String veriable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -298,9 +298,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -358,9 +358,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 if (!expr.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
@@ -431,9 +431,9 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 Value result = Value.FALSE;
                 try
@@ -505,11 +505,11 @@ public class Loops
                     continue;
                 }
                 String variable = next.boundVariable;
-                next.bindTo("_");
+                Value bound = next.bindTo("_");
                 Value promiseWontChangeYou = acc;
                 int seriously = i;
                 c.setVariable("_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
-                c.setVariable("_", (cc, tt) -> next);
+                c.setVariable("_", (cc, tt) -> bound);
                 c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
                 try
                 {
@@ -41,7 +41,7 @@ public class Operators
 
     public static void apply(Expression expression)
     {
-        expression.addBinaryOperator("+", "sum", precedence.get("addition+-"), true, Value::add, lv -> {
+        expression.addBinaryOperator("+", "sum", precedence.get("addition+-"), true, Arithmetic::sum, lv -> {
             int size = lv.size();
             if (size == 0)
             {
@@ -50,12 +50,12 @@ public class Operators
             Value accumulator = lv.get(0);
             for (Value v : lv.subList(1, size))
             {
-                accumulator = accumulator.add(v);
+                accumulator = Arithmetic.sum(accumulator, v);
             }
             return accumulator;
         });
 
-        expression.addBinaryOperator("-", "difference", precedence.get("addition+-"), true, Value::subtract, lv -> {
+        expression.addBinaryOperator("-", "difference", precedence.get("addition+-"), true, Arithmetic::difference, lv -> {
             int size = lv.size();
             if (size == 0)
             {
@@ -64,12 +64,12 @@ public class Operators
             Value accumulator = lv.get(0);
             for (Value v : lv.subList(1, size))
             {
-                accumulator = accumulator.subtract(v);
+                accumulator = Arithmetic.difference(accumulator, v);
             }
             return accumulator;
         });
 
-        expression.addBinaryOperator("*", "product", precedence.get("multiplication*/%"), true, Value::multiply, lv -> {
+        expression.addBinaryOperator("*", "product", precedence.get("multiplication*/%"), true, Arithmetic::product, lv -> {
             int size = lv.size();
             if (size == 0)
             {
@@ -78,7 +78,7 @@ public class Operators
             Value accumulator = lv.get(0);
             for (Value v : lv.subList(1, size))
             {
-                accumulator = accumulator.multiply(v);
+                accumulator = Arithmetic.product(accumulator, v);
             }
             return accumulator;
         });
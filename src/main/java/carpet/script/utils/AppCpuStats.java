@@ -0,0 +1,66 @@
+package carpet.script.utils;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cumulative time spent by apps running their handlers, split by the section that caused the call,
+ * like the name of the event, or scheduled calls.
+ * Cheap enough to be always on, as it takes two hash lookups per handler call.
+ */
+public class AppCpuStats
+{
+    public static final String SCHEDULED = "scheduled calls";
+
+    private final Map<String, Object2LongOpenHashMap<String>> byApp = new HashMap<>();
+
+    public synchronized void record(String app, String section, long nanos)
+    {
+        byApp.computeIfAbsent(app, a -> new Object2LongOpenHashMap<>()).addTo(section, nanos);
+    }
+
+    /**
+     * Drops the counters of an app, when it gets unloaded
+     */
+    public synchronized void forget(String app)
+    {
+        byApp.remove(app);
+    }
+
+    /**
+     * @return total time in nanoseconds taken by each app
+     */
+    public synchronized Map<String, Long> totals()
+    {
+        Map<String, Long> totals = new HashMap<>();
+        byApp.forEach((app, sections) -> {
+            long total = 0;
+            for (long nanos : sections.values())
+            {
+                total += nanos;
+            }
+            totals.put(app, total);
+        });
+        return totals;
+    }
+
+    /**
+     * @return time in nanoseconds taken by each app, by section
+     */
+    public synchronized Map<String, Map<String, Long>> breakdown()
+    {
+        Map<String, Map<String, Long>> result = new HashMap<>();
+        byApp.forEach((app, sections) -> {
+            Map<String, Long> copy = new HashMap<>();
+            for (Object2LongMap.Entry<String> entry : sections.object2LongEntrySet())
+            {
+                copy.put(entry.getKey(), entry.getLongValue());
+            }
+            result.put(app, copy);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,259 @@
+package carpet.script.utils;
+
+import carpet.script.CarpetScriptServer;
+import carpet.script.Module;
+import carpet.script.ScriptServer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Persistent state of an app, as stored with {@code store_app_data}. When the state is a compound tag, saves only write
+ * its top level entries that changed since the last save, appended to a journal next to the data file, and the journal
+ * is merged back into the data file once it grows larger than it. Writing happens in the background, from a private
+ * copy of the state, in which entries that didn't change are shared between saves instead of being copied again.
+ */
+public class AppDataStore
+{
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    public record Stats(long loadTimeNanos, long dataBytes, long journalBytes)
+    {
+    }
+
+    /**
+     * @param value new value of the entry, or null if the entry was removed
+     */
+    private record Change(String key, @Nullable Tag value)
+    {
+    }
+
+    private final Module module;
+    private final ScriptServer scriptServer;
+    private final Path dataFile;
+    private final Path journalFile;
+    // last saved state, only changed on the server thread, compound tags are only handed out as shallow copies
+    @Nullable
+    private Tag saved;
+    private long loadTimeNanos;
+    private volatile long dataBytes;
+    private volatile long journalBytes;
+
+    public AppDataStore(Module module, ScriptServer scriptServer)
+    {
+        this.module = module;
+        this.scriptServer = scriptServer;
+        this.dataFile = scriptServer.resolveResource(module.name() + ".data.nbt");
+        this.journalFile = scriptServer.resolveResource(module.name() + ".data.journal");
+    }
+
+    public Stats stats()
+    {
+        return new Stats(loadTimeNanos, dataBytes, journalBytes);
+    }
+
+    /**
+     * @return saved state with the journal applied, or null if the app has no data
+     */
+    @Nullable
+    public Tag load()
+    {
+        long start = System.nanoTime();
+        // the app might have just been unloaded with its last save still queued
+        ScriptFileIO.awaitQueued();
+        Tag tag = Module.getData(module, scriptServer);
+        boolean journalDamaged = false;
+        if (Files.isRegularFile(journalFile))
+        {
+            if (tag == null)
+            {
+                tag = new CompoundTag();
+            }
+            if (tag instanceof final CompoundTag compound)
+            {
+                journalDamaged = !replayJournal(compound);
+            }
+            else
+            {
+                CarpetScriptServer.LOG.warn("Ignoring journal of app data " + journalFile + ", as the app data is not a compound tag");
+            }
+        }
+        dataBytes = sizeOf(dataFile);
+        journalBytes = sizeOf(journalFile);
+        // the app gets the loaded tag itself and can change it in place
+        saved = tag == null ? null : tag.copy();
+        if (journalDamaged)
+        {
+            // changes appended after the damaged record would never be read back, so the journal is merged right away
+            CompoundTag snapshot = shallowCopy((CompoundTag) saved);
+            ScriptFileIO.execute(dataFile, () -> writeAll(snapshot));
+        }
+        loadTimeNanos = System.nanoTime() - start;
+        return tag;
+    }
+
+    /**
+     * @return false if the journal could not be read to the end
+     */
+    private boolean replayJournal(CompoundTag state)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile))))
+        {
+            while (true)
+            {
+                in.mark(1);
+                if (in.read() == -1)
+                {
+                    break;
+                }
+                in.reset();
+                CompoundTag change = NbtIo.read(in);
+                String key = change.getStringOr("key", "");
+                Tag value = change.get("value");
+                if (value == null)
+                {
+                    state.remove(key);
+                }
+                else
+                {
+                    state.put(key, value);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // most likely the last change wasn't completely written when the server stopped
+            CarpetScriptServer.LOG.warn("Failed to read the rest of the app data journal " + journalFile, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues the changes of the state since the last save to be written
+     */
+    public void save(@Nullable Tag state)
+    {
+        if (state == null)
+        {
+            return;
+        }
+        if (state instanceof final CompoundTag compound && saved instanceof final CompoundTag previous)
+        {
+            List<Change> changes = new ArrayList<>();
+            for (String key : compound.keySet())
+            {
+                Tag value = compound.get(key);
+                if (!value.equals(previous.get(key)))
+                {
+                    Tag copy = value.copy();
+                    previous.put(key, copy);
+                    changes.add(new Change(key, copy));
+                }
+            }
+            for (String key : List.copyOf(previous.keySet()))
+            {
+                if (!compound.contains(key))
+                {
+                    previous.remove(key);
+                    changes.add(new Change(key, null));
+                }
+            }
+            if (changes.isEmpty())
+            {
+                return;
+            }
+            CompoundTag snapshot = shallowCopy(previous);
+            ScriptFileIO.execute(dataFile, () -> appendChanges(changes, snapshot));
+        }
+        else
+        {
+            saved = state.copy();
+            Tag snapshot = saved instanceof final CompoundTag compound ? shallowCopy(compound) : saved;
+            ScriptFileIO.execute(dataFile, () -> writeAll(snapshot));
+        }
+    }
+
+    private static CompoundTag shallowCopy(CompoundTag tag)
+    {
+        CompoundTag copy = new CompoundTag();
+        for (String key : tag.keySet())
+        {
+            copy.put(key, tag.get(key));
+        }
+        return copy;
+    }
+
+    // writer thread
+    private void appendChanges(List<Change> changes, CompoundTag state)
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+        )))
+        {
+            for (Change change : changes)
+            {
+                CompoundTag record = new CompoundTag();
+                record.putString("key", change.key());
+                if (change.value() != null)
+                {
+                    record.put("value", change.value());
+                }
+                NbtIo.write(record, out);
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("Failed to append to app data journal " + journalFile + ", writing all app data instead", e);
+            writeAll(state);
+            return;
+        }
+        journalBytes = sizeOf(journalFile);
+        if (journalBytes > Math.max(MIN_COMPACTION_BYTES, dataBytes))
+        {
+            writeAll(state);
+        }
+    }
+
+    // writer thread
+    private void writeAll(Tag state)
+    {
+        Module.saveData(module, state, scriptServer);
+        try
+        {
+            Files.deleteIfExists(journalFile);
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("Failed to remove app data journal " + journalFile, e);
+        }
+        dataBytes = sizeOf(dataFile);
+        journalBytes = sizeOf(journalFile);
+    }
+
+    private static long sizeOf(Path path)
+    {
+        try
+        {
+            return Files.isRegularFile(path) ? Files.size(path) : 0;
+        }
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package carpet.script.utils;
+
+/**
+ * Set of positions within a box, one bit per block. Rows along the z axis are padded to whole words,
+ * so neighbouring rows line up and operations on the whole volume can work on 64 blocks at a time.
+ * Coordinates are relative to the lowest corner of the box.
+ */
+public class BlockVolume
+{
+    private final int xSize;
+    private final int ySize;
+    private final int zSize;
+    private final int rowWords;
+    private final long[] bits;
+
+    public BlockVolume(int xSize, int ySize, int zSize)
+    {
+        this.xSize = xSize;
+        this.ySize = ySize;
+        this.zSize = zSize;
+        this.rowWords = (zSize + 63) >>> 6;
+        long words = (long) xSize * ySize * rowWords;
+        if (words > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("Volume of " + xSize + "x" + ySize + "x" + zSize + " blocks is too large");
+        }
+        this.bits = new long[(int) words];
+    }
+
+    private int row(int x, int y)
+    {
+        return (x * ySize + y) * rowWords;
+    }
+
+    public void set(int x, int y, int z)
+    {
+        bits[row(x, y) + (z >>> 6)] |= 1L << z;
+    }
+
+    public boolean get(int x, int y, int z)
+    {
+        return (bits[row(x, y) + (z >>> 6)] & (1L << z)) != 0;
+    }
+
+    /**
+     * @return whether no block in the row along z is set
+     */
+    public boolean isRowEmpty(int x, int y)
+    {
+        int start = row(x, y);
+        for (int w = start; w < start + rowWords; w++)
+        {
+            if (bits[w] != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long count()
+    {
+        long count = 0;
+        for (long word : bits)
+        {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return blocks of the volume which have at least one of their six neighbours outside of the volume,
+     * positions outside of the box don't count, so blocks on the sides of the box are only in the outline
+     * if they have a neighbour within the box that is not in the volume
+     */
+    public BlockVolume outline()
+    {
+        BlockVolume outline = new BlockVolume(xSize, ySize, zSize);
+        // neighbour of the last block of the row, past the end of the box
+        long lastBit = 1L << ((zSize - 1) & 63);
+        for (int x = 0; x < xSize; x++)
+        {
+            for (int y = 0; y < ySize; y++)
+            {
+                int row = row(x, y);
+                for (int w = 0; w < rowWords; w++)
+                {
+                    long word = bits[row + w];
+                    if (word == 0)
+                    {
+                        continue;
+                    }
+                    long below = (word << 1) | (w > 0 ? bits[row + w - 1] >>> 63 : 1L);
+                    long above = (word >>> 1) | (w < rowWords - 1 ? bits[row + w + 1] << 63 : lastBit);
+                    long inside = word & below & above
+                            & (x > 0 ? bits[row(x - 1, y) + w] : -1L) & (x < xSize - 1 ? bits[row(x + 1, y) + w] : -1L)
+                            & (y > 0 ? bits[row(x, y - 1) + w] : -1L) & (y < ySize - 1 ? bits[row(x, y + 1) + w] : -1L);
+                    outline.bits[row + w] = word & ~inside;
+                }
+            }
+        }
+        return outline;
+    }
+}
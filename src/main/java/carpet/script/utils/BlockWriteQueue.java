@@ -0,0 +1,147 @@
+package carpet.script.utils;
+
+import carpet.script.CarpetScriptServer;
+import carpet.script.api.WorldAccess;
+import carpet.script.value.BlockBatchValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.Value;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * Block batches committed by apps, placed on the main thread at the start of each scarpet tick,
+ * up to the number of blocks per tick requested for each of them.
+ */
+public class BlockWriteQueue
+{
+    public static final int DEFAULT_BLOCKS_PER_TICK = 32768;
+
+    private static final class Commit
+    {
+        private final ServerLevel level;
+        private final List<BlockBatchValue.Write> writes;
+        private final int perTick;
+        private final CompletableFuture<Value> done = new CompletableFuture<>();
+        private int next = 0;
+        private int changed = 0;
+
+        private Commit(ServerLevel level, List<BlockBatchValue.Write> writes, int perTick)
+        {
+            this.level = level;
+            this.writes = writes;
+            this.perTick = perTick;
+        }
+    }
+
+    private final Queue<Commit> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Can be called from any thread
+     *
+     * @return future completed with the number of changed blocks once all of them are placed
+     */
+    public CompletableFuture<Value> commit(ServerLevel level, List<BlockBatchValue.Write> writes, int perTick)
+    {
+        Commit commit = new Commit(level, writes, perTick);
+        if (writes.isEmpty())
+        {
+            commit.done.complete(Value.ZERO);
+        }
+        else
+        {
+            pending.add(commit);
+        }
+        return commit.done;
+    }
+
+    public void tick()
+    {
+        pending.removeIf(commit -> place(commit, commit.perTick));
+    }
+
+    /**
+     * Places all remaining blocks of a commit right away, if called on the main thread, which would otherwise
+     * wait forever for the tick placing them
+     *
+     * @param done future returned when committing
+     */
+    public void completeOnMainThread(CompletableFuture<Value> done)
+    {
+        for (Commit commit : pending)
+        {
+            if (commit.done == done)
+            {
+                if (commit.level.getServer().isSameThread())
+                {
+                    pending.remove(commit);
+                    place(commit, Integer.MAX_VALUE);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return whether the commit is complete
+     */
+    private boolean place(Commit commit, int limit)
+    {
+        try
+        {
+            int end = commit.writes.size() - commit.next > limit ? commit.next + limit : commit.writes.size();
+            for (; commit.next < end; commit.next++)
+            {
+                if (apply(commit.level, commit.writes.get(commit.next)))
+                {
+                    commit.changed++;
+                }
+            }
+        }
+        catch (RuntimeException exc)
+        {
+            CarpetScriptServer.LOG.error("Failed to place a block batch", exc);
+            commit.done.completeExceptionally(exc);
+            return true;
+        }
+        if (commit.next < commit.writes.size())
+        {
+            return false;
+        }
+        commit.done.complete(new NumericValue(commit.changed));
+        return true;
+    }
+
+    /**
+     * @return whether anything changed
+     */
+    private static boolean apply(ServerLevel level, BlockBatchValue.Write write)
+    {
+        return switch (write.kind())
+        {
+            case SET -> (write.data() != null || level.getBlockState(write.pos()) != write.state())
+                    && WorldAccess.placeBlock(level, write.pos(), write.state(), write.data());
+            case DESTROY -> WorldAccess.destroyBlock(level, write.pos(), write.how());
+            case UPDATE -> {
+                level.neighborChanged(write.pos(), level.getBlockState(write.pos()).getBlock(), null);
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Drops all batches which are not placed yet, when the server stops
+     */
+    public void cancelAll()
+    {
+        Commit commit;
+        while ((commit = pending.poll()) != null)
+        {
+            commit.done.complete(new NumericValue(commit.changed));
+        }
+    }
+}
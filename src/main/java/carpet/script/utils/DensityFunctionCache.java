@@ -0,0 +1,110 @@
+package carpet.script.utils;
+
+import carpet.script.exception.InternalExpressionException;
+import carpet.script.external.Vanilla;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.levelgen.DensityFunction;
+import net.minecraft.world.level.levelgen.DensityFunctions;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import net.minecraft.world.level.levelgen.NoiseRouter;
+import net.minecraft.world.level.levelgen.RandomState;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Density functions bound to the noises of a level, for sampling registry defined density functions.
+ * Levels are held weakly, so unloaded dimensions are released, and each level keeps only the functions used most recently.
+ */
+public class DensityFunctionCache
+{
+    private static final int MAX_FUNCTIONS_PER_LEVEL = 64;
+
+    private static final class LevelFunctions
+    {
+        // null for levels without noise based generators
+        private final DensityFunction.@Nullable Visitor visitor;
+        private final Map<String, DensityFunction> functions = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DensityFunction> eldest)
+            {
+                return size() > MAX_FUNCTIONS_PER_LEVEL;
+            }
+        };
+
+        private LevelFunctions(ServerLevel level)
+        {
+            if (level.getChunkSource().getGenerator() instanceof final NoiseBasedChunkGenerator noiseBasedChunkGenerator)
+            {
+                RandomState randomState = RandomState.create(
+                        noiseBasedChunkGenerator.generatorSettings().value(),
+                        level.registryAccess().lookupOrThrow(Registries.NOISE), level.getSeed()
+                );
+                visitor = Vanilla.RandomState_getVisitor(randomState);
+            }
+            else
+            {
+                visitor = null;
+            }
+        }
+    }
+
+    private static final Map<ServerLevel, LevelFunctions> levels = new WeakHashMap<>();
+
+    public static synchronized DensityFunction get(ServerLevel level, String densityFunctionQuery)
+    {
+        LevelFunctions levelFunctions = levels.computeIfAbsent(level, LevelFunctions::new);
+        if (levelFunctions.visitor == null)
+        {
+            return DensityFunctions.zero();
+        }
+        DensityFunction cached = levelFunctions.functions.get(densityFunctionQuery);
+        if (cached == null)
+        {
+            cached = find(level, densityFunctionQuery).mapAll(levelFunctions.visitor);
+            levelFunctions.functions.put(densityFunctionQuery, cached);
+        }
+        return cached;
+    }
+
+    private static DensityFunction find(ServerLevel level, String densityFunctionQuery)
+    {
+        ChunkGenerator generator = level.getChunkSource().getGenerator();
+        NoiseRouter router = ((NoiseBasedChunkGenerator) generator).generatorSettings().value().noiseRouter();
+        return switch (densityFunctionQuery)
+        {
+            case "barrier_noise" -> router.barrierNoise();
+            case "fluid_level_floodedness_noise" -> router.fluidLevelFloodednessNoise();
+            case "fluid_level_spread_noise" -> router.fluidLevelSpreadNoise();
+            case "lava_noise" -> router.lavaNoise();
+            case "temperature" -> router.temperature();
+            case "vegetation" -> router.vegetation();
+            case "continents" -> router.continents();
+            case "erosion" -> router.erosion();
+            case "depth" -> router.depth();
+            case "ridges" -> router.ridges();
+            case "preliminary_surface_level" -> router.preliminarySurfaceLevel();
+            case "final_density" -> router.finalDensity();
+            case "vein_toggle" -> router.veinToggle();
+            case "vein_ridged" -> router.veinRidged();
+            case "vein_gap" -> router.veinGap();
+            default -> {
+                Registry<DensityFunction> densityFunctionRegistry = level.registryAccess().lookupOrThrow(Registries.DENSITY_FUNCTION);
+                DensityFunction result = densityFunctionRegistry.getValue(InputValidator.identifierOf(densityFunctionQuery));
+                if (result == null)
+                {
+                    throw new InternalExpressionException("Density function '" + densityFunctionQuery + "' is not defined in the registies.");
+                }
+                yield result;
+            }
+        };
+    }
+}
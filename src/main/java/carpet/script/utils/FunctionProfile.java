@@ -0,0 +1,131 @@
+package carpet.script.utils;
+
+import carpet.script.ScriptHost;
+import carpet.script.value.FunctionValue;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Times all user defined function calls of a single app for a number of ticks.
+ * Functions are identified by the place they are defined in, so all lambdas created in the same spot count as one.
+ * Only calls on the thread that started the profile are counted, calls in tasks are skipped.
+ */
+public class FunctionProfile
+{
+    public record Entry(String function, long calls, long selfNanos, long totalNanos)
+    {
+    }
+
+    private final String app;
+    private final Thread thread;
+    private int ticksLeft;
+    private final int ticks;
+    private final Consumer<FunctionProfile> onComplete;
+
+    private final Reference2ObjectOpenHashMap<Object, String> names = new Reference2ObjectOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Object> calls = new Reference2LongOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Object> selfTime = new Reference2LongOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Object> totalTime = new Reference2LongOpenHashMap<>();
+    // recursive calls only count towards total time once
+    private final Reference2IntOpenHashMap<Object> active = new Reference2IntOpenHashMap<>();
+
+    private Object[] stack = new Object[16];
+    private long[] starts = new long[16];
+    private long[] childTime = new long[16];
+    private int depth = 0;
+
+    /**
+     * @param onComplete called with the results once the profile ran for the requested number of ticks
+     */
+    public FunctionProfile(String app, int ticks, Consumer<FunctionProfile> onComplete)
+    {
+        this.onComplete = onComplete;
+        this.app = app;
+        this.thread = Thread.currentThread();
+        this.ticks = ticks;
+        this.ticksLeft = ticks;
+    }
+
+    public String app()
+    {
+        return app;
+    }
+
+    public int ticks()
+    {
+        return ticks;
+    }
+
+    public boolean tracks(ScriptHost host)
+    {
+        return Thread.currentThread() == thread && app.equals(host.getName());
+    }
+
+    public void enter(FunctionValue function)
+    {
+        Object key = function.getToken();
+        if (depth == stack.length)
+        {
+            stack = Arrays.copyOf(stack, depth * 2);
+            starts = Arrays.copyOf(starts, depth * 2);
+            childTime = Arrays.copyOf(childTime, depth * 2);
+        }
+        if (!names.containsKey(key))
+        {
+            String name = function.getString();
+            names.put(key, (name.equals("_") ? "<lambda>" : name) + " (line " + (function.getToken().lineno + 1) + ")");
+        }
+        stack[depth] = key;
+        childTime[depth] = 0;
+        active.addTo(key, 1);
+        starts[depth++] = System.nanoTime();
+    }
+
+    public void exit()
+    {
+        long elapsed = System.nanoTime() - starts[--depth];
+        Object key = stack[depth];
+        stack[depth] = null;
+        calls.addTo(key, 1);
+        selfTime.addTo(key, elapsed - childTime[depth]);
+        if (active.addTo(key, -1) == 1)
+        {
+            totalTime.addTo(key, elapsed);
+        }
+        if (depth > 0)
+        {
+            childTime[depth - 1] += elapsed;
+        }
+    }
+
+    /**
+     * @return whether the profile is complete
+     */
+    public boolean tick()
+    {
+        return --ticksLeft <= 0;
+    }
+
+    public void complete()
+    {
+        onComplete.accept(this);
+    }
+
+    /**
+     * @return profiled functions, the most expensive ones first
+     */
+    public List<Entry> results()
+    {
+        List<Entry> entries = new ArrayList<>();
+        names.forEach((key, name) -> entries.add(new Entry(name, calls.getLong(key), selfTime.getLong(key), totalTime.getLong(key))));
+        entries.sort(Comparator.comparingLong(Entry::selfNanos).reversed());
+        return entries;
+    }
+}
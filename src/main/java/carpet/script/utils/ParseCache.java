@@ -0,0 +1,135 @@
+package carpet.script.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of parsed arguments, like selectors, block states or particles, shared between the server
+ * and script threads. Entries are split into segments by their hash, each kept in LRU order under its own lock,
+ * so frequently used entries survive apps that parse a stream of always different strings.
+ * Values are computed outside of the lock, so two threads may parse the same string at the same time, and the last one wins.
+ * All caches are cleared together with {@link #clearAll} when the game content they depend on changes.
+ *
+ * @param <V> type of parsed values
+ */
+public class ParseCache<V>
+{
+    private static final int SEGMENTS = 16;
+    private static final List<ParseCache<?>> caches = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final int capacity;
+    private final Segment<V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Segment<V> extends LinkedHashMap<String, V>
+    {
+        private final int capacity;
+
+        private Segment(int capacity)
+        {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+        {
+            return size() > capacity;
+        }
+    }
+
+    public record Stats(String name, int size, int capacity, long hits, long misses)
+    {
+    }
+
+    @SuppressWarnings("unchecked")
+    public ParseCache(String name, int capacity)
+    {
+        this.name = name;
+        this.capacity = capacity;
+        segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new Segment<>(perSegment);
+        }
+        caches.add(this);
+    }
+
+    private Segment<V> segmentFor(String key)
+    {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @param parser computes the value for a missing key, exceptions are passed to the caller and nothing is cached
+     */
+    public V get(String key, Function<String, V> parser)
+    {
+        Segment<V> segment = segmentFor(key);
+        V value;
+        synchronized (segment)
+        {
+            value = segment.get(key);
+        }
+        if (value != null)
+        {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = parser.apply(key);
+        if (value != null)
+        {
+            synchronized (segment)
+            {
+                segment.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void clear()
+    {
+        for (Segment<V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    public Stats stats()
+    {
+        int size = 0;
+        for (Segment<V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+        return new Stats(name, size, capacity, hits.sum(), misses.sum());
+    }
+
+    /**
+     * Clears all caches, on reloads and when the server closes
+     */
+    public static void clearAll()
+    {
+        caches.forEach(ParseCache::clear);
+    }
+
+    public static List<Stats> allStats()
+    {
+        return caches.stream().map(ParseCache::stats).toList();
+    }
+}
@@ -7,12 +7,10 @@ import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.particles.ParticleOptions;
 
 import org.jspecify.annotations.Nullable;
-import java.util.HashMap;
-import java.util.Map;
 
 public class ParticleParser
 {
-    private static final Map<String, ParticleOptions> particleCache = new HashMap<>(); // we reset this on reloads, but probably need something better
+    private static final ParseCache<ParticleOptions> particleCache = new ParseCache<>("particles", 1024);
 
     private static ParticleOptions parseParticle(String name, RegistryAccess lookup)
     {
@@ -33,9 +31,13 @@ public class ParticleParser
         {
             return null;
         }
-        return particleCache.computeIfAbsent(name, particle -> parseParticle(particle, lookup));
+        return particleCache.get(name, particle -> parseParticle(particle, lookup));
     }
 
+    /**
+     * @deprecated all parse caches are cleared together with {@link ParseCache#clearAll}
+     */
+    @Deprecated(forRemoval = true)
     public static void resetCache()
     {
         particleCache.clear();
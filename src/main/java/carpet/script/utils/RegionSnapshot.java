@@ -0,0 +1,60 @@
+package carpet.script.utils;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Immutable copy of the block states in a box, taken section by section, which can be read from any thread
+ * while the world keeps changing. Taking it must happen on the server thread, as it loads chunks
+ * the same way {@link ServerLevel#getBlockState} would.
+ */
+public class RegionSnapshot
+{
+    private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+
+    private final int minSectionY;
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>[]> columns = new Long2ObjectOpenHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public RegionSnapshot(ServerLevel level, int minx, int miny, int minz, int maxx, int maxy, int maxz)
+    {
+        minSectionY = SectionPos.blockToSectionCoord(miny);
+        int sections = SectionPos.blockToSectionCoord(maxy) - minSectionY + 1;
+        for (int cx = SectionPos.blockToSectionCoord(minx); cx <= SectionPos.blockToSectionCoord(maxx); cx++)
+        {
+            for (int cz = SectionPos.blockToSectionCoord(minz); cz <= SectionPos.blockToSectionCoord(maxz); cz++)
+            {
+                LevelChunk chunk = level.getChunk(cx, cz);
+                PalettedContainer<BlockState>[] states = new PalettedContainer[sections];
+                for (int i = 0; i < sections; i++)
+                {
+                    int y = SectionPos.sectionToBlockCoord(minSectionY + i);
+                    // sections outside of the world stay null
+                    if (!level.isOutsideBuildHeight(y))
+                    {
+                        states[i] = chunk.getSection(chunk.getSectionIndex(y)).getStates().copy();
+                    }
+                }
+                columns.put(ChunkPos.asLong(cx, cz), states);
+            }
+        }
+    }
+
+    /**
+     * @return block state at the position, which has to be within the box the snapshot was taken of
+     */
+    public BlockState getBlockState(int x, int y, int z)
+    {
+        PalettedContainer<BlockState>[] column = columns.get(ChunkPos.asLong(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(z)));
+        @Nullable PalettedContainer<BlockState> states = column[SectionPos.blockToSectionCoord(y) - minSectionY];
+        return states == null ? VOID_AIR : states.get(x & 15, y & 15, z & 15);
+    }
+}
@@ -0,0 +1,66 @@
+package carpet.script.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Java Flight Recorder event for an app handling an event or running a scheduled call,
+ * created only while a recording has it enabled.
+ */
+@Name("carpet.ScarpetCall")
+@Label("Scarpet Call")
+@Category({"Carpet", "Scarpet"})
+@Description("App function called for an event, or as a scheduled call")
+@StackTrace(false)
+public class ScarpetCallEvent extends Event
+{
+    private static final EventType TYPE = EventType.getEventType(ScarpetCallEvent.class);
+
+    @Label("App")
+    public String app;
+
+    @Label("Section")
+    @Description("Name of the event, or scheduled calls")
+    public String section;
+
+    @Label("Function")
+    public String function;
+
+    /**
+     * @return started event, or null if no recording wants it
+     */
+    @Nullable
+    public static ScarpetCallEvent start()
+    {
+        if (!TYPE.isEnabled())
+        {
+            return null;
+        }
+        ScarpetCallEvent event = new ScarpetCallEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void finish(@Nullable ScarpetCallEvent event, @Nullable String app, String section, String function)
+    {
+        if (event == null)
+        {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.app = app;
+            event.section = section;
+            event.function = function;
+            event.commit();
+        }
+    }
+}
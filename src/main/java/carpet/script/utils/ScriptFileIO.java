@@ -0,0 +1,354 @@
+package carpet.script.utils;
+
+import carpet.script.CarpetScriptServer;
+import carpet.script.argument.FileArgument;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.minecraft.nbt.Tag;
+
+/**
+ * Coordinates access of apps to their files. Files are locked by path, spread over a fixed number of locks,
+ * so apps using different files don't wait for each other. NBT files are written in the background,
+ * with repeated writes to the same file replaced by the latest one, and text files that are appended to
+ * are kept open and flushed periodically. Anything reading, listing or removing a file first writes out
+ * what is queued for it, so apps always see their own writes.
+ */
+public class ScriptFileIO
+{
+    private static final int STRIPES = 64;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long APPENDER_IDLE_MS = 10000;
+
+    private static final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    static
+    {
+        for (int i = 0; i < STRIPES; i++)
+        {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private record PendingWrite(Tag tag, long bytes)
+    {
+    }
+
+    private static final class Appender
+    {
+        private final BufferedWriter writer;
+        private long unflushed = 0;
+        private long lastUse;
+
+        private Appender(BufferedWriter writer)
+        {
+            this.writer = writer;
+            this.lastUse = System.currentTimeMillis();
+        }
+    }
+
+    private static final Map<Path, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private static final Map<Path, Appender> appenders = new ConcurrentHashMap<>();
+    private static final AtomicLong pendingBytes = new AtomicLong();
+    private static final AtomicLong coalescedWrites = new AtomicLong();
+
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Scarpet file writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static
+    {
+        writer.scheduleWithFixedDelay(() -> flushAppenders(false), FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public record Stats(int pendingWrites, long pendingBytes, long coalescedWrites, int openAppenders)
+    {
+    }
+
+    public static Stats stats()
+    {
+        long appended = 0;
+        for (Appender appender : appenders.values())
+        {
+            appended += appender.unflushed;
+        }
+        return new Stats(pendingWrites.size(), pendingBytes.get() + appended, coalescedWrites.get(), appenders.size());
+    }
+
+    /**
+     * @param path file, or zip container holding the file, to lock
+     */
+    public static ReadWriteLock lockFor(Path path)
+    {
+        return locks[(path.toAbsolutePath().normalize().hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * Queues the tag to be written to the file in the background, replacing any write still queued for it
+     */
+    public static void queueWrite(Path path, Tag tag)
+    {
+        long bytes = tag.sizeInBytes();
+        PendingWrite previous = pendingWrites.put(path.toAbsolutePath().normalize(), new PendingWrite(tag, bytes));
+        if (previous == null)
+        {
+            pendingBytes.addAndGet(bytes);
+            writer.execute(() -> writePending(path));
+        }
+        else
+        {
+            // previous write wasn't picked up yet, and its task will write this one instead
+            pendingBytes.addAndGet(bytes - previous.bytes());
+            coalescedWrites.incrementAndGet();
+        }
+    }
+
+    private static void writePending(Path path)
+    {
+        Lock lock = lockFor(path).writeLock();
+        lock.lock();
+        try
+        {
+            PendingWrite pending = pendingWrites.remove(path.toAbsolutePath().normalize());
+            if (pending == null)
+            {
+                return; // already written when something needed the file
+            }
+            pendingBytes.addAndGet(-pending.bytes());
+            FileArgument.writeTagDisk(pending.tag(), path, false);
+        }
+        catch (RuntimeException e)
+        {
+            CarpetScriptServer.LOG.warn("Failed to write queued file " + path, e);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the task on the writer thread while holding the write lock of the file,
+     * after all writes and tasks queued before it
+     */
+    public static void execute(Path path, Runnable task)
+    {
+        writer.execute(() -> {
+            Lock lock = lockFor(path).writeLock();
+            lock.lock();
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                CarpetScriptServer.LOG.warn("Failed to write queued file " + path, e);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Waits for all writes and tasks queued so far to complete
+     */
+    public static void awaitQueued()
+    {
+        try
+        {
+            writer.submit(() -> {}).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            CarpetScriptServer.LOG.warn("Failed to wait for queued file writes", e);
+        }
+    }
+
+    /**
+     * Appends lines to a text file, keeping the file open for further appends
+     */
+    public static void append(Path path, List<String> lines, boolean newLines) throws IOException
+    {
+        Lock lock = lockFor(path).writeLock();
+        lock.lock();
+        try
+        {
+            Appender appender = appenders.get(path.toAbsolutePath().normalize());
+            if (appender == null)
+            {
+                appender = new Appender(new BufferedWriter(new OutputStreamWriter(
+                        Files.newOutputStream(path, StandardOpenOption.APPEND, StandardOpenOption.CREATE), StandardCharsets.UTF_8
+                )));
+                appenders.put(path.toAbsolutePath().normalize(), appender);
+            }
+            for (String line : lines)
+            {
+                appender.writer.append(line);
+                appender.unflushed += line.length();
+                if (newLines)
+                {
+                    appender.writer.newLine();
+                    appender.unflushed++;
+                }
+            }
+            appender.lastUse = System.currentTimeMillis();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes out the queued write and appended text for the file, if there are any.
+     * Has to be called without holding the lock of the file.
+     */
+    public static void flush(Path path)
+    {
+        Path key = path.toAbsolutePath().normalize();
+        if (pendingWrites.containsKey(key))
+        {
+            writePending(path);
+        }
+        if (appenders.containsKey(key))
+        {
+            Lock lock = lockFor(path).writeLock();
+            lock.lock();
+            try
+            {
+                closeAppender(key, true);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes out queued writes for all files in the folder, so they show up when listing it.
+     * Has to be called without holding any file lock.
+     */
+    public static void flushFolder(Path folder)
+    {
+        Path key = folder.toAbsolutePath().normalize();
+        for (Path path : pendingWrites.keySet())
+        {
+            if (path.startsWith(key))
+            {
+                writePending(path);
+            }
+        }
+    }
+
+    /**
+     * Drops the queued write and closes the appender for a file which is about to be removed.
+     * Has to be called while holding the write lock of the file.
+     *
+     * @return whether there was a queued write for the file
+     */
+    public static boolean discard(Path path)
+    {
+        Path key = path.toAbsolutePath().normalize();
+        PendingWrite pending = pendingWrites.remove(key);
+        if (pending != null)
+        {
+            pendingBytes.addAndGet(-pending.bytes());
+        }
+        closeAppender(key, false);
+        return pending != null;
+    }
+
+    private static void closeAppender(Path key, boolean log)
+    {
+        Appender appender = appenders.remove(key);
+        if (appender == null)
+        {
+            return;
+        }
+        try
+        {
+            appender.writer.close();
+        }
+        catch (IOException e)
+        {
+            if (log)
+            {
+                CarpetScriptServer.LOG.warn("IOException when closing text file " + key, e);
+            }
+        }
+    }
+
+    private static void flushAppenders(boolean closeAll)
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Path, Appender> entry : appenders.entrySet())
+        {
+            Lock lock = lockFor(entry.getKey()).writeLock();
+            lock.lock();
+            try
+            {
+                Appender appender = appenders.get(entry.getKey());
+                if (appender == null)
+                {
+                    continue;
+                }
+                if (closeAll || now - appender.lastUse > APPENDER_IDLE_MS)
+                {
+                    closeAppender(entry.getKey(), true);
+                }
+                else if (appender.unflushed > 0)
+                {
+                    appender.writer.flush();
+                    appender.unflushed = 0;
+                }
+            }
+            catch (IOException e)
+            {
+                CarpetScriptServer.LOG.warn("IOException when flushing text file " + entry.getKey(), e);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes out everything that is queued and closes all open files, when the server stops
+     */
+    public static void flushAll()
+    {
+        awaitQueued();
+        for (Path path : pendingWrites.keySet())
+        {
+            writePending(path);
+        }
+        flushAppenders(true);
+    }
+}
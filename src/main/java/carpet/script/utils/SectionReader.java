@@ -0,0 +1,73 @@
+package carpet.script.utils;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reads block states straight from chunk sections, remembering the last section it read from,
+ * so walking along a row of blocks only looks up the chunk once every 16 blocks, instead of on each block.
+ * Chunks are loaded the same way {@link ServerLevel#getBlockState} would load them.
+ */
+public class SectionReader
+{
+    private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+
+    private final ServerLevel level;
+    private int sectionX;
+    private int sectionY;
+    private int sectionZ;
+    private boolean cached = false;
+    // null for positions outside of the world height
+    private @Nullable LevelChunkSection section;
+
+    public SectionReader(ServerLevel level)
+    {
+        this.level = level;
+    }
+
+    @Nullable
+    private LevelChunkSection sectionAt(int x, int y, int z)
+    {
+        int sx = SectionPos.blockToSectionCoord(x);
+        int sy = SectionPos.blockToSectionCoord(y);
+        int sz = SectionPos.blockToSectionCoord(z);
+        if (!cached || sx != sectionX || sy != sectionY || sz != sectionZ)
+        {
+            sectionX = sx;
+            sectionY = sy;
+            sectionZ = sz;
+            cached = true;
+            if (level.isOutsideBuildHeight(y))
+            {
+                section = null;
+            }
+            else
+            {
+                LevelChunk chunk = level.getChunk(sx, sz);
+                section = chunk.getSection(chunk.getSectionIndex(y));
+            }
+        }
+        return section;
+    }
+
+    public BlockState getBlockState(int x, int y, int z)
+    {
+        LevelChunkSection current = sectionAt(x, y, z);
+        return current == null ? VOID_AIR : current.getBlockState(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * @return whether the section containing the position has nothing but air
+     */
+    public boolean isOnlyAir(int x, int y, int z)
+    {
+        LevelChunkSection current = sectionAt(x, y, z);
+        return current == null || current.hasOnlyAir();
+    }
+}
@@ -45,6 +45,36 @@ public class SystemInfo
         put("app_list", c -> ListValue.wrap(((CarpetScriptHost) c.host).scriptServer().modules.keySet().stream().filter(Objects::nonNull).map(StringValue::new)));
         put("app_scope", c -> StringValue.of((c.host).isPerUser() ? "player" : "global"));
         put("app_players", c -> ListValue.wrap(c.host.getUserList().stream().map(StringValue::new)));
+        put("app_scheduled_calls", c -> {
+            Map<Value, Value> pending = new HashMap<>();
+            ((CarpetScriptHost) c.host).scriptServer().events.pendingCalls().forEach((app, count) ->
+                    pending.put(app == null ? Value.NULL : StringValue.of(app), NumericValue.of(count)));
+            return MapValue.wrap(pending);
+        });
+        put("app_cpu", c -> {
+            Map<Value, Value> apps = new HashMap<>();
+            ((CarpetScriptHost) c.host).scriptServer().cpuStats.breakdown().forEach((app, sections) -> {
+                Map<Value, Value> times = new HashMap<>();
+                sections.forEach((section, nanos) -> times.put(StringValue.of(section), new NumericValue(nanos / 1000000.0)));
+                apps.put(app == null ? Value.NULL : StringValue.of(app), MapValue.wrap(times));
+            });
+            return MapValue.wrap(apps);
+        });
+        put("app_data", c -> {
+            Map<Value, Value> apps = new HashMap<>();
+            ((CarpetScriptHost) c.host).scriptServer().modules.forEach((app, host) -> {
+                AppDataStore.Stats stats = host.appDataStats();
+                if (stats != null)
+                {
+                    apps.put(StringValue.of(app), MapValue.wrap(Map.of(
+                            StringValue.of("load_time"), new NumericValue(stats.loadTimeNanos() / 1000000.0),
+                            StringValue.of("size"), NumericValue.of(stats.dataBytes() + stats.journalBytes()),
+                            StringValue.of("journal_size"), NumericValue.of(stats.journalBytes())
+                    )));
+                }
+            });
+            return MapValue.wrap(apps);
+        });
 
         put("world_name", c -> new StringValue(c.server().getWorldData().getLevelName()));
         put("world_seed", c -> new NumericValue(c.level().getSeed()));
@@ -125,6 +155,10 @@ public class SystemInfo
         });
         put("server_dev_environment", c -> BooleanValue.of(Vanilla.isDevelopmentEnvironment()));
         put("server_mods", c -> Vanilla.getServerMods(c.server()));
+        put("server_tick_histograms", c -> {
+            Value histograms = Carpet.getTickHistograms();
+            return histograms == null ? Value.NULL : histograms;
+        });
         put("server_last_tick_times", c -> {
             //assuming we are in the tick world section
             // might be off one tick when run in the off tasks or asynchronously.
@@ -191,6 +225,28 @@ public class SystemInfo
             return ListValue.of(new NumericValue(rotation.x), new NumericValue(rotation.y));
         });
         put("scarpet_version", c -> StringValue.of(Carpet.getCarpetVersion()));
+        put("scarpet_caches", c -> {
+            Map<Value, Value> caches = new HashMap<>();
+            for (ParseCache.Stats stats : ParseCache.allStats())
+            {
+                caches.put(StringValue.of(stats.name()), MapValue.wrap(Map.of(
+                        StringValue.of("size"), NumericValue.of(stats.size()),
+                        StringValue.of("capacity"), NumericValue.of(stats.capacity()),
+                        StringValue.of("hits"), NumericValue.of(stats.hits()),
+                        StringValue.of("misses"), NumericValue.of(stats.misses())
+                )));
+            }
+            return MapValue.wrap(caches);
+        });
+        put("scarpet_file_queue", c -> {
+            ScriptFileIO.Stats stats = ScriptFileIO.stats();
+            return MapValue.wrap(Map.of(
+                    StringValue.of("pending_writes"), NumericValue.of(stats.pendingWrites()),
+                    StringValue.of("pending_bytes"), NumericValue.of(stats.pendingBytes()),
+                    StringValue.of("coalesced_writes"), NumericValue.of(stats.coalescedWrites()),
+                    StringValue.of("open_appenders"), NumericValue.of(stats.openAppenders())
+            ));
+        });
     }};
 
     public static Value get(String what, CarpetContext cc)
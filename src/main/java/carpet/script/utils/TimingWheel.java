@@ -0,0 +1,291 @@
+package carpet.script.utils;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel of tasks keyed by an absolute tick, with tasks grouped by an owner.
+ * Scheduling and cancelling a single task is O(1), advancing a tick costs only the tasks that are due
+ * (plus occasional cascading of the coarser wheels), and all the tasks of an owner can be cancelled
+ * without looking at tasks of other owners.
+ * Tasks due on the same tick are returned in the order they were scheduled.
+ *
+ * @param <K> owner of the tasks
+ * @param <T> the task
+ */
+public class TimingWheel<K, T>
+{
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    /**
+     * Furthest distance that can be placed in the wheels directly,
+     * later tasks are placed at the end of the outermost wheel and placed again once it comes around
+     */
+    private static final long MAX_SPAN = (1L << (BITS * LEVELS)) - 1;
+
+    private final Entry<K, T>[][] heads;
+    private final Entry<K, T>[][] tails;
+    private final Map<K, Entry<K, T>> owners = new HashMap<>();
+    private final Object2IntMap<K> ownerCounts = new Object2IntOpenHashMap<>();
+    private long current = 0;
+    private long sequence = 0;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel()
+    {
+        heads = new Entry[LEVELS][SLOTS];
+        tails = new Entry[LEVELS][SLOTS];
+    }
+
+    private static final class Entry<K, T>
+    {
+        private final K owner;
+        private final T task;
+        private final long deadline;
+        private final long order;
+        // position in the wheel
+        private int level = -1;
+        private int slot;
+        private Entry<K, T> prev;
+        private Entry<K, T> next;
+        // list of tasks of the same owner
+        private Entry<K, T> prevOfOwner;
+        private Entry<K, T> nextOfOwner;
+
+        private Entry(K owner, T task, long deadline, long order)
+        {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+            this.order = order;
+        }
+    }
+
+    /**
+     * @return tick that the next call to {@link #advance} processes
+     */
+    public long currentTick()
+    {
+        return current;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return number of pending tasks of each owner
+     */
+    public Map<K, Integer> pendingByOwner()
+    {
+        return new HashMap<>(ownerCounts);
+    }
+
+    /**
+     * Schedules a task to be returned by {@link #advance} a given number of ticks from now.
+     * Delays below 1 are treated as 1, so the task is returned by the next call to advance.
+     */
+    public void schedule(K owner, T task, long delay)
+    {
+        Entry<K, T> entry = new Entry<>(owner, task, current + Math.max(delay, 1) - 1, sequence++);
+        place(entry);
+        Entry<K, T> first = owners.get(owner);
+        if (first != null)
+        {
+            first.prevOfOwner = entry;
+            entry.nextOfOwner = first;
+        }
+        owners.put(owner, entry);
+        ownerCounts.mergeInt(owner, 1, Integer::sum);
+        size++;
+    }
+
+    /**
+     * Removes all pending tasks of an owner
+     *
+     * @return number of removed tasks
+     */
+    public int cancelAll(K owner)
+    {
+        Entry<K, T> entry = owners.remove(owner);
+        int removed = ownerCounts.removeInt(owner);
+        while (entry != null)
+        {
+            unlink(entry);
+            Entry<K, T> next = entry.nextOfOwner;
+            entry.prevOfOwner = entry.nextOfOwner = null;
+            entry = next;
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Processes the current tick and moves to the next one
+     *
+     * @return tasks that are due, in the order they were scheduled
+     */
+    public List<T> advance()
+    {
+        int slot = (int) (current & MASK);
+        // when a wheel comes around, tasks from the next slot of the coarser wheel are spread into the finer ones
+        int index = slot;
+        for (int level = 1; level < LEVELS && index == 0; level++)
+        {
+            index = (int) ((current >> (BITS * level)) & MASK);
+            cascade(level, index);
+        }
+        List<Entry<K, T>> due = new ArrayList<>();
+        Entry<K, T> entry = heads[0][slot];
+        heads[0][slot] = tails[0][slot] = null;
+        while (entry != null)
+        {
+            Entry<K, T> next = entry.next;
+            entry.prev = entry.next = null;
+            entry.level = -1;
+            if (entry.deadline <= current)
+            {
+                due.add(entry);
+                forget(entry);
+            }
+            else
+            {
+                place(entry);
+            }
+            entry = next;
+        }
+        current++;
+        if (due.size() > 1)
+        {
+            due.sort(Comparator.comparingLong(e -> e.order));
+        }
+        List<T> tasks = new ArrayList<>(due.size());
+        for (Entry<K, T> dueEntry : due)
+        {
+            tasks.add(dueEntry.task);
+        }
+        return tasks;
+    }
+
+    private void cascade(int level, int slot)
+    {
+        Entry<K, T> entry = heads[level][slot];
+        heads[level][slot] = tails[level][slot] = null;
+        while (entry != null)
+        {
+            Entry<K, T> next = entry.next;
+            entry.prev = entry.next = null;
+            entry.level = -1;
+            place(entry);
+            entry = next;
+        }
+    }
+
+    private void place(Entry<K, T> entry)
+    {
+        long distance = entry.deadline - current;
+        int level;
+        long position;
+        if (distance < 0)
+        {
+            level = 0;
+            position = current;
+        }
+        else
+        {
+            position = current + Math.min(distance, MAX_SPAN);
+            level = 0;
+            while (level < LEVELS - 1 && Math.min(distance, MAX_SPAN) >= (1L << (BITS * (level + 1))))
+            {
+                level++;
+            }
+        }
+        int slot = (int) ((position >> (BITS * level)) & MASK);
+        entry.level = level;
+        entry.slot = slot;
+        Entry<K, T> tail = tails[level][slot];
+        if (tail == null)
+        {
+            heads[level][slot] = entry;
+        }
+        else
+        {
+            tail.next = entry;
+            entry.prev = tail;
+        }
+        tails[level][slot] = entry;
+    }
+
+    private void unlink(Entry<K, T> entry)
+    {
+        if (entry.level < 0)
+        {
+            return;
+        }
+        if (entry.prev == null)
+        {
+            heads[entry.level][entry.slot] = entry.next;
+        }
+        else
+        {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next == null)
+        {
+            tails[entry.level][entry.slot] = entry.prev;
+        }
+        else
+        {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = entry.next = null;
+        entry.level = -1;
+    }
+
+    /**
+     * Removes a task that is no longer in the wheel from the list of its owner
+     */
+    private void forget(Entry<K, T> entry)
+    {
+        if (entry.prevOfOwner == null)
+        {
+            if (entry.nextOfOwner == null)
+            {
+                owners.remove(entry.owner);
+            }
+            else
+            {
+                owners.put(entry.owner, entry.nextOfOwner);
+            }
+        }
+        else
+        {
+            entry.prevOfOwner.nextOfOwner = entry.nextOfOwner;
+        }
+        if (entry.nextOfOwner != null)
+        {
+            entry.nextOfOwner.prevOfOwner = entry.prevOfOwner;
+        }
+        entry.prevOfOwner = entry.nextOfOwner = null;
+        int left = ownerCounts.getInt(entry.owner) - 1;
+        if (left > 0)
+        {
+            ownerCounts.put(entry.owner, left);
+        }
+        else
+        {
+            ownerCounts.removeInt(entry.owner);
+        }
+        size--;
+    }
+}
@@ -0,0 +1,149 @@
+package carpet.script.value;
+
+import carpet.script.exception.InternalExpressionException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.state.BlockState;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Block changes collected by an app, possibly off the main thread, to be placed in the world together
+ * with {@code batch_commit}, instead of one cross-thread call per block.
+ */
+public class BlockBatchValue extends Value
+{
+    public enum Kind
+    {
+        SET,
+        DESTROY,
+        UPDATE
+    }
+
+    /**
+     * @param state block to place, only for {@link Kind#SET}
+     * @param how   like the second argument of {@code destroy}, only for {@link Kind#DESTROY}
+     */
+    public record Write(Kind kind, BlockPos pos, @Nullable BlockState state, @Nullable CompoundTag data, long how)
+    {
+        public Write(BlockPos pos, BlockState state, @Nullable CompoundTag data)
+        {
+            this(Kind.SET, pos, state, data, 0);
+        }
+
+        public static Write destroy(BlockPos pos, long how)
+        {
+            return new Write(Kind.DESTROY, pos, null, null, how);
+        }
+
+        public static Write update(BlockPos pos)
+        {
+            return new Write(Kind.UPDATE, pos, null, null, 0);
+        }
+    }
+
+    /**
+     * Groups writes by chunk section, so they are placed section by section
+     */
+    private static final Comparator<Write> SECTION_ORDER = Comparator
+            .<Write>comparingInt(w -> SectionPos.blockToSectionCoord(w.pos().getX()))
+            .thenComparingInt(w -> SectionPos.blockToSectionCoord(w.pos().getZ()))
+            .thenComparingInt(w -> SectionPos.blockToSectionCoord(w.pos().getY()));
+
+    private final ServerLevel level;
+    private List<Write> writes = new ArrayList<>();
+
+    public BlockBatchValue(ServerLevel level)
+    {
+        this.level = level;
+    }
+
+    public ServerLevel level()
+    {
+        return level;
+    }
+
+    /**
+     * @return number of writes in the batch
+     */
+    public synchronized int add(ServerLevel targetLevel, Write write)
+    {
+        if (targetLevel != level)
+        {
+            throw new InternalExpressionException("Block batch can only place blocks in the dimension it was created in");
+        }
+        writes.add(write);
+        return writes.size();
+    }
+
+    public synchronized int size()
+    {
+        return writes.size();
+    }
+
+    /**
+     * Empties the batch, so it can be filled again
+     *
+     * @return writes sorted by chunk section, later writes to the same position still come after earlier ones
+     */
+    public List<Write> drain()
+    {
+        List<Write> drained;
+        synchronized (this)
+        {
+            drained = writes;
+            writes = new ArrayList<>();
+        }
+        drained.sort(SECTION_ORDER);
+        return drained;
+    }
+
+    @Override
+    public String getString()
+    {
+        return "block_batch(" + size() + ")";
+    }
+
+    @Override
+    public boolean getBoolean()
+    {
+        return size() > 0;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o == this;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String getTypeString()
+    {
+        return "block_batch";
+    }
+
+    @Override
+    public Tag toTag(boolean force, RegistryAccess regs)
+    {
+        if (!force)
+        {
+            throw new NBTSerializableValue.IncompatibleTypeException(this);
+        }
+        return StringValue.of(getString()).toTag(true, regs);
+    }
+}
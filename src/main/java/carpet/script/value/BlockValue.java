@@ -4,13 +4,13 @@ import carpet.script.CarpetContext;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.utils.ParseCache;
 
 import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -60,17 +60,24 @@ public class BlockValue extends Value
         return new BlockValue(null, c.level(), pos);
     }
 
-    private static final Map<String, BlockValue> bvCache = new HashMap<>();
+    private static final ParseCache<BlockValue> bvCache = new ParseCache<>("block_states", 10000);
 
     public static BlockValue fromString(String str, ServerLevel level)
+    {
+        // cache is cleared on reloads, so it doesn't hold on to blocks from previous registries
+        BlockValue bv = bvCache.get(str, s -> parseBlock(s, level));
+        if (bv == null)
+        {
+            throw new ThrowStatement(str, Throwables.UNKNOWN_BLOCK);
+        }
+        return bv;
+    }
+
+    @Nullable
+    private static BlockValue parseBlock(String str, ServerLevel level)
     {
         try
         {
-            BlockValue bv = bvCache.get(str); // [SCARY SHIT] persistent caches over server reloads
-            if (bv != null)
-            {
-                return bv;
-            }
             BlockStateParser.BlockResult foo = BlockStateParser.parseForBlock(level.registryAccess().lookupOrThrow(Registries.BLOCK), new StringReader(str), true);
             if (foo.blockState() != null)
             {
@@ -79,19 +86,13 @@ public class BlockValue extends Value
                 {
                     bd = new CompoundTag();
                 }
-                bv = new BlockValue(foo.blockState(), level, null, bd);
-                if (bvCache.size() > 10000)
-                {
-                    bvCache.clear();
-                }
-                bvCache.put(str, bv);
-                return bv;
+                return new BlockValue(foo.blockState(), level, null, bd);
             }
         }
         catch (CommandSyntaxException ignored)
         {
         }
-        throw new ThrowStatement(str, Throwables.UNKNOWN_BLOCK);
+        return null;
     }
 
     public static BlockPos locateBlockPos(CarpetContext c, int xpos, int ypos, int zpos)
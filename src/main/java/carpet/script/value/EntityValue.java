@@ -1,6 +1,7 @@
 package carpet.script.value;
 
 import carpet.script.external.Vanilla;
+import carpet.script.utils.ParseCache;
 import carpet.script.utils.Tracer;
 import carpet.script.CarpetContext;
 import carpet.script.CarpetScriptServer;
@@ -114,19 +115,13 @@ public class EntityValue extends Value
         return e == null ? Value.NULL : new EntityValue(e);
     }
 
-    private static final Map<String, EntitySelector> selectorCache = new HashMap<>();
+    private static final ParseCache<EntitySelector> selectorCache = new ParseCache<>("entity_selectors", 1024);
 
     public static Collection<? extends Entity> getEntitiesFromSelector(CommandSourceStack source, String selector)
     {
         try
         {
-            EntitySelector entitySelector = selectorCache.get(selector);
-            if (entitySelector != null)
-            {
-                return entitySelector.findEntities(source.withMaximumPermission(LevelBasedPermissionSet.OWNER));
-            }
-            entitySelector = new EntitySelectorParser(new StringReader(selector), true).parse();
-            selectorCache.put(selector, entitySelector);
+            EntitySelector entitySelector = selectorCache.get(selector, EntityValue::parseSelector);
             return entitySelector.findEntities(source.withMaximumPermission(LevelBasedPermissionSet.OWNER));
         }
         catch (CommandSyntaxException e)
@@ -135,6 +130,18 @@ public class EntityValue extends Value
         }
     }
 
+    private static EntitySelector parseSelector(String selector)
+    {
+        try
+        {
+            return new EntitySelectorParser(new StringReader(selector), true).parse();
+        }
+        catch (CommandSyntaxException e)
+        {
+            throw new InternalExpressionException("Cannot select entities from " + selector);
+        }
+    }
+
     public Entity getEntity()
     {
         if (entity instanceof ServerPlayer serverPlayer && Vanilla.ServerPlayer_isInvalidEntityObject(serverPlayer))
@@ -5,18 +5,22 @@ import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.Fluff;
 import carpet.script.LazyValue;
+import carpet.script.LocalScope;
 import carpet.script.Module;
+import carpet.script.ScriptSampler;
 import carpet.script.Token;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.ExpressionException;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ReturnStatement;
+import carpet.script.utils.FunctionProfile;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import net.minecraft.core.RegistryAccess;
@@ -30,14 +34,23 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     private final Expression expression;
     private final Token token;
     private final String name;
-    private final LazyValue body;
+    private volatile LazyValue body;
+    // called from task threads as well, negative once compiled
+    private final AtomicInteger invocations = new AtomicInteger();
     private Map<String, LazyValue> outerState;
     private final List<String> args;
     private final String varArgs;
+    private final LocalScope scope;
+    private final int[] argSlots;
+    private final int varArgsSlot;
+    /**
+     * Number of calls after which function body is compiled, if compilation is enabled for the app
+     */
+    public static final int COMPILE_THRESHOLD = 1000;
     private static long variantCounter = 1;
     private long variant;
 
-    private FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs)
+    private FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs, LocalScope scope)
     {
         this.expression = expression;
         this.token = token;
@@ -46,17 +59,24 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         this.args = args;
         this.varArgs = varArgs;
         this.outerState = null;
+        this.scope = scope;
+        this.argSlots = new int[args.size()];
+        for (int i = 0; i < argSlots.length; i++)
+        {
+            argSlots[i] = scope.slotOf(args.get(i));
+        }
+        this.varArgsSlot = varArgs == null ? -1 : scope.slotOf(varArgs);
         variant = 0L;
     }
 
     public FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState)
     {
-        this.expression = expression;
-        this.token = token;
-        this.name = name;
-        this.body = body;
-        this.args = args;
-        this.varArgs = varArgs;
+        this(expression, token, name, body, args, varArgs, outerState, LocalScope.NONE);
+    }
+
+    public FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState, LocalScope scope)
+    {
+        this(expression, token, name, body, args, varArgs, scope);
         this.outerState = outerState;
         variant = variantCounter++;
     }
@@ -98,7 +118,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     @Override
     protected Value clone()
     {
-        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs);
+        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs, scope);
         ret.outerState = this.outerState;
         ret.variant = this.variant;
         return ret;
@@ -239,7 +259,13 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
                             ". Should be at least " + args.size() + ", not " + params.size() + " like " + argList
             );
         });
-        Context newFrame = c.recreate();
+        if (invocations.get() >= 0 && expression.compilesFunctions() && invocations.incrementAndGet() >= FunctionValue.COMPILE_THRESHOLD
+                && invocations.getAndSet(-1) >= 0)
+        {
+            // tiering up to bytecode, only once per function
+            body = expression.compileFunctionBody(c, token, body);
+        }
+        Context newFrame = c.recreate(scope);
         if (freshNewCallingThread != null)
         {
             newFrame.setThreadContext(freshNewCallingThread);
@@ -253,7 +279,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         {
             String arg = args.get(i);
             Value val = params.get(i).reboundedTo(arg); // todo check if we need to copy that
-            newFrame.setVariable(arg, (cc, tt) -> val);
+            newFrame.setVariable(scope, argSlots[i], arg, (cc, tt) -> val);
         }
         if (varArgs != null)
         {
@@ -263,9 +289,16 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
                 extraParams.add(params.get(i).reboundedTo(null)); // copy by value I guess
             }
             Value rest = ListValue.wrap(extraParams).bindTo(varArgs); // didn't we just copied that?
-            newFrame.setVariable(varArgs, (cc, tt) -> rest);
+            newFrame.setVariable(scope, varArgsSlot, varArgs, (cc, tt) -> rest);
 
         }
+        FunctionProfile profile = c.host.scriptServer().functionProfile;
+        boolean profiled = profile != null && profile.tracks(c.host);
+        if (profiled)
+        {
+            profile.enter(this);
+        }
+        int sampled = ScriptSampler.enter(c, this);
         Value retVal;
         try
         {
@@ -279,6 +312,17 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         {
             retVal = returnStatement.retval;
         }
+        finally
+        {
+            if (profiled)
+            {
+                profile.exit();
+            }
+            if (sampled != 0)
+            {
+                ScriptSampler.exit(sampled);
+            }
+        }
         Value otherRetVal = retVal;
         return (cc, tt) -> otherRetVal;
     }
@@ -22,10 +22,31 @@ import static java.lang.Math.signum;
 public class NumericValue extends Value
 {
     private final double value;
-    private Long longValue;
+    /**
+     * Exact value of integers, only meaningful if {@link #isLong} is set.
+     * Kept as a primitive next to the double, so integer arithmetic doesn't box
+     */
+    private final long longValue;
+    private final boolean isLong;
     private static final double epsilon = abs(32 * ((7 * 0.1) * 10 - 7));
     private static final MathContext displayRounding = new MathContext(12, RoundingMode.HALF_EVEN);
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    /**
+     * Shared instances of small integers, most loop counters, coordinates and indices fall in that range.
+     * They are never bound to variables, see {@link #bindTo}
+     */
+    private static final NumericValue[] SMALL_INTEGERS = new NumericValue[CACHE_HIGH - CACHE_LOW + 1];
+
+    static
+    {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++)
+        {
+            SMALL_INTEGERS[i] = new NumericValue(CACHE_LOW + i);
+        }
+    }
+
     public static NumericValue asNumber(Value v1, String id)
     {
         if (v1 instanceof NumericValue nv)
@@ -52,7 +73,7 @@ public class NumericValue extends Value
         }
         if (value.doubleValue() == value.longValue())
         {
-            return new NumericValue(value.longValue());
+            return of(value.longValue());
         }
         if (value instanceof Float)
         {
@@ -61,11 +82,35 @@ public class NumericValue extends Value
         return new NumericValue(value.doubleValue());
     }
 
+    /**
+     * Same as {@link #NumericValue(long)}, but small integers are taken from a shared cache
+     */
+    public static NumericValue of(long value)
+    {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH)
+        {
+            return SMALL_INTEGERS[(int) value - CACHE_LOW];
+        }
+        return new NumericValue(value);
+    }
+
+    private boolean isShared()
+    {
+        return isLong && longValue >= CACHE_LOW && longValue <= CACHE_HIGH && SMALL_INTEGERS[(int) longValue - CACHE_LOW] == this;
+    }
+
+    @Override
+    public Value bindTo(String value)
+    {
+        // cached integers are shared between all the scripts, so they get a private copy instead
+        return isShared() ? reboundedTo(value) : super.bindTo(value);
+    }
+
 
     @Override
     public String getString()
     {
-        if (longValue != null)
+        if (isLong)
         {
             return Long.toString(getLong());
         }
@@ -95,7 +140,7 @@ public class NumericValue extends Value
     @Override
     public String getPrettyString()
     {
-        return longValue != null || getDouble() == getLong()
+        return isLong || getDouble() == getLong()
                 ? Long.toString(getLong())
                 : String.format(Locale.ROOT, "%.1f..", getDouble());
     }
@@ -124,39 +169,54 @@ public class NumericValue extends Value
 
     public long getLong()
     {
-        return longValue != null ? longValue : Long.valueOf(floor((value + epsilon)));
+        return isLong ? longValue : floor(value + epsilon);
     }
 
     @Override
     public Value add(Value v)
-    {  // TODO test if definintn add(NumericVlaue) woud solve the casting
+    {
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue + nv.longValue) : new NumericValue(value + nv.value);
+            return add(nv);
         }
         return super.add(v);
     }
 
+    public NumericValue add(NumericValue nv)
+    {
+        return isLong && nv.isLong ? of(longValue + nv.longValue) : new NumericValue(value + nv.value);
+    }
+
     @Override
     public Value subtract(Value v)
-    {  // TODO test if definintn add(NumericVlaue) woud solve the casting
+    {
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue - nv.longValue) : new NumericValue(value - nv.value);
+            return subtract(nv);
         }
         return super.subtract(v);
     }
 
+    public NumericValue subtract(NumericValue nv)
+    {
+        return isLong && nv.isLong ? of(longValue - nv.longValue) : new NumericValue(value - nv.value);
+    }
+
     @Override
     public Value multiply(Value v)
     {
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue * nv.longValue) : new NumericValue(value * nv.value);
+            return multiply(nv);
         }
         return v instanceof ListValue ? v.multiply(this) : new StringValue(StringUtils.repeat(v.getString(), (int) getLong()));
     }
 
+    public NumericValue multiply(NumericValue nv)
+    {
+        return isLong && nv.isLong ? of(longValue * nv.longValue) : new NumericValue(value * nv.value);
+    }
+
     @Override
     public Value divide(Value v)
     {
@@ -166,7 +226,7 @@ public class NumericValue extends Value
     @Override
     public Value clone()
     {
-        return new NumericValue(value, longValue);
+        return new NumericValue(value, longValue, isLong);
     }
 
     @Override
@@ -178,7 +238,7 @@ public class NumericValue extends Value
         }
         if (o instanceof NumericValue no)
         {
-            return longValue != null && no.longValue != null ? longValue.compareTo(no.longValue) : Double.compare(value, no.value);
+            return isLong && no.isLong ? Long.compare(longValue, no.longValue) : Double.compare(value, no.value);
         }
         return getString().compareTo(o.getString());
     }
@@ -194,9 +254,9 @@ public class NumericValue extends Value
             }
             if (o instanceof NumericValue no)
             {
-                if (longValue != null && no.longValue != null)
+                if (isLong && no.isLong)
                 {
-                    return longValue.equals(no.longValue);
+                    return longValue == no.longValue;
                 }
                 if (Double.isNaN(this.value) || Double.isNaN(no.value))
                 {
@@ -211,35 +271,40 @@ public class NumericValue extends Value
 
     public NumericValue(double value)
     {
-        this.value = value;
+        this(value, 0L, false);
     }
 
-    private NumericValue(double value, Long longValue)
+    private NumericValue(double value, long longValue, boolean isLong)
     {
         this.value = value;
         this.longValue = longValue;
+        this.isLong = isLong;
     }
 
     public NumericValue(String value)
     {
         BigDecimal decimal = new BigDecimal(value);
+        long exact = 0L;
+        boolean integer = false;
         if (decimal.stripTrailingZeros().scale() <= 0)
         {
             try
             {
-                longValue = decimal.longValueExact();
+                exact = decimal.longValueExact();
+                integer = true;
             }
             catch (ArithmeticException ignored)
             {
             }
         }
         this.value = decimal.doubleValue();
+        this.longValue = exact;
+        this.isLong = integer;
     }
 
     public NumericValue(long value)
     {
-        this.longValue = value;
-        this.value = (double) value;
+        this(value, value, true);
     }
 
     @Override
@@ -270,7 +335,7 @@ public class NumericValue extends Value
     public int hashCode()
     {
         // is sufficiently close to the integer value
-        return longValue != null || Math.abs(Math.floor(value + 0.5D) - value) < epsilon ? Long.hashCode(getLong()) : Double.hashCode(value);
+        return isLong || Math.abs(Math.floor(value + 0.5D) - value) < epsilon ? Long.hashCode(getLong()) : Double.hashCode(value);
     }
 
 
@@ -282,11 +347,11 @@ public class NumericValue extends Value
     @Override
     public Tag toTag(boolean force, RegistryAccess regs)
     {
-        if (longValue != null)
+        if (isLong)
         {
             if (abs(longValue) < Integer.MAX_VALUE - 2)
             {
-                return IntTag.valueOf((int) (long) longValue);
+                return IntTag.valueOf((int) longValue);
             }
             return LongTag.valueOf(longValue);
         }
@@ -308,7 +373,7 @@ public class NumericValue extends Value
     @Override
     public JsonElement toJson()
     {
-        if (longValue != null)
+        if (isLong)
         {
             return new JsonPrimitive(longValue);
         }
@@ -317,19 +382,19 @@ public class NumericValue extends Value
 
     public NumericValue opposite()
     {
-        return longValue != null ? new NumericValue(-longValue) : new NumericValue(-value);
+        return isLong ? of(-longValue) : new NumericValue(-value);
     }
 
     public boolean isInteger()
     {
-        return longValue != null || getDouble() == getLong();
+        return isLong || getDouble() == getLong();
     }
 
     public Value mod(NumericValue n2)
     {
-        if (this.longValue != null && n2.longValue != null)
+        if (isLong && n2.isLong)
         {
-            return new NumericValue(Math.floorMod(longValue, n2.longValue));
+            return of(Math.floorMod(longValue, n2.longValue));
         }
         double x = value;
         double y = n2.value;
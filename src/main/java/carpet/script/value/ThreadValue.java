@@ -19,9 +19,14 @@ import java.util.concurrent.atomic.AtomicReference;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.nbt.Tag;
 
+import org.jspecify.annotations.Nullable;
+
 public class ThreadValue extends LazyListValue
 {
     private final CompletableFuture<Value> taskFuture;
+    // for tasks completed by the game, tries to complete them right away when joined
+    @Nullable
+    private final Runnable completeOnJoin;
     private final long id;
     private static long sequence = 0L;
     private final Deque<Value> coState = new ArrayDeque<>();
@@ -32,11 +37,26 @@ public class ThreadValue extends LazyListValue
     {
         this.id = sequence++;
         this.isCoroutine = ctx.host.canSynchronouslyExecute();
+        this.completeOnJoin = null;
         this.taskFuture = getCompletableFutureFromFunction(pool, function, expr, token, ctx, args);
 
         Thread.yield();
     }
 
+    /**
+     * Task completed by the game rather than by a script function, like placing blocks of a batch
+     *
+     * @param completeOnJoin called when the task is joined before it completes, to complete it right away if the
+     *                       joining thread is the one that would complete it later, as waiting there would never end
+     */
+    public ThreadValue(CompletableFuture<Value> future, Runnable completeOnJoin)
+    {
+        this.id = sequence++;
+        this.isCoroutine = false;
+        this.taskFuture = future;
+        this.completeOnJoin = completeOnJoin;
+    }
+
     public CompletableFuture<Value> getCompletableFutureFromFunction(Value pool, FunctionValue function, Expression expr, Token token, Context ctx, List<Value> args)
     {
         ExecutorService executor = ctx.host.getExecutor(pool);
@@ -86,6 +106,10 @@ public class ThreadValue extends LazyListValue
 
     public Value join()
     {
+        if (completeOnJoin != null && !taskFuture.isDone())
+        {
+            completeOnJoin.run();
+        }
         try
         {
             return taskFuture.get();
@@ -95,7 +119,16 @@ public class ThreadValue extends LazyListValue
             taskFuture.complete(exit.retval);
             return exit.retval;
         }
-        catch (InterruptedException | ExecutionException e)
+        catch (ExecutionException e)
+        {
+            if (completeOnJoin != null)
+            {
+                // scripts handle their own errors, but errors of the game would otherwise go unnoticed
+                throw new InternalExpressionException("Task failed: " + e.getCause().getMessage());
+            }
+            return Value.NULL;
+        }
+        catch (InterruptedException e)
         {
             return Value.NULL;
         }
@@ -1,8 +1,18 @@
 package carpet.utils;
 
+import carpet.CarpetServer;
+import carpet.CarpetSettings;
+import carpet.script.utils.ShapeDispatcher;
+import carpet.script.value.ListValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.core.registries.Registries;
@@ -11,21 +21,49 @@ import net.minecraft.resources.Identifier;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.entity.BlockEntityType;
 import org.apache.commons.lang3.tuple.Pair;
 
+import jdk.jfr.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Map.entry;
 
 public class CarpetProfiler
 {
-    private static final Object2LongOpenHashMap<String> SECTION_STATS = new Object2LongOpenHashMap<>();
-    private static final Object2LongOpenHashMap<Pair<Level,Object>> ENTITY_TIMES = new Object2LongOpenHashMap<>();
-    private static final Object2LongOpenHashMap<Pair<Level,Object>> ENTITY_COUNT = new Object2LongOpenHashMap<>();
+    // sections and entity types are registered once per level, and then looked up and timed without allocating
+    private static final Map<String, ProfilerToken> GLOBAL_SECTIONS = new ConcurrentHashMap<>();
+    private static final Map<Level, Map<String, ProfilerToken>> LEVEL_SECTIONS = new ConcurrentHashMap<>();
+    private static final Map<Level, Map<Object, ProfilerToken>> LEVEL_ENTITIES = new ConcurrentHashMap<>();
+    // registered tokens, indexed by their ids, with null for ids of forgotten levels, which are reused first
+    private static final List<ProfilerToken> SECTION_TOKENS = new ArrayList<>();
+    private static final List<ProfilerToken> ENTITY_TOKENS = new ArrayList<>();
+    private static final IntArrayList FREE_SECTION_IDS = new IntArrayList();
+    private static final IntArrayList FREE_ENTITY_IDS = new IntArrayList();
+    private static long[] section_times = new long[64];
+    private static long[] entity_times = new long[256];
+    private static long[] entity_counts = new long[256];
+    private static long total_tick_time = 0;
+    // top chunks and block entity positions of an entity report, when asked for
+    private static final int POSITIONS_TRACKED = 256;
+    private static final int POSITIONS_SHOWN = 10;
+    private static final int OVERLAY_DURATION = 1200;
+    private static boolean attribute_positions = false;
+    private static final Map<Level, SpaceSavingSketch> CHUNK_TIMES = new Reference2ObjectOpenHashMap<>();
+    private static final Map<Level, SpaceSavingSketch> BLOCK_ENTITY_TIMES = new Reference2ObjectOpenHashMap<>();
+    public static final TickHealthRecorder RECORDER = new TickHealthRecorder();
+    public static final LagSpikeRecorder SPIKES = new LagSpikeRecorder();
 
 
     private static CommandSourceStack currentRequester = null;
@@ -33,6 +71,10 @@ public class CarpetProfiler
     private static int tick_health_elapsed = 0;
     private static TYPE test_type = TYPE.NONE; //1 for ticks, 2 for entities
     private static long current_tick_start = 0;
+    // only sections on the thread running server ticks go to the tick histograms and lag spike reports
+    private static volatile Thread tick_thread = null;
+    // app times at the start of the report, as scarpet keeps them running all the time
+    private static Map<String, Long> scarpet_app_times = Collections.emptyMap();
     private static final Map<String, String> GENERAL_SECTIONS = Map.of(
         "Network",     "Packet sending, player logins, disconnects, kicks, anti-cheat check for player movement, etc.",
         "Autosave",    "Autosave",
@@ -42,13 +84,14 @@ public class CarpetProfiler
     );
 
     private static final Map<String, String> SCARPET_SECTIONS = Map.of(
-        "Scarpet run",      "script run command execution",
-        "Scarpet events",   "script events, custom or built-in",
-        "Scarpet schedule", "script scheduled calls/events",
-        "Scarpet command",  "script custom commands. Calls, executions, suggestions, etc.",
-        "Scarpet load",     "script and libraries (if required) loading",
-        "Scarpet app data", "script module data (if required) ticking and saving",
-        "Scarpet client",   "script shape rendering. (Client side)"
+        "Scarpet run",           "script run command execution",
+        "Scarpet events",        "script events, custom or built-in",
+        "Scarpet schedule",      "script scheduled calls/events",
+        "Scarpet block batches", "script block changes queued to be applied over several ticks",
+        "Scarpet command",       "script custom commands. Calls, executions, suggestions, etc.",
+        "Scarpet load",          "script and libraries (if required) loading",
+        "Scarpet app data",      "script module data (if required) ticking and saving",
+        "Scarpet client",        "script shape rendering. (Client side)"
     );
 
     private static final Map<String, String> SECTIONS = Map.ofEntries(
@@ -74,21 +117,238 @@ public class CarpetProfiler
         TILEENTITY
     }
 
-    public static record ProfilerToken(TYPE type, Object section, long start, Level world)
+    /**
+     * Timing of a section or entity type in a level. There is one token per registered section, reused each time
+     * the section runs on the server thread. Sections that start again before they end, and sections running on
+     * any other thread, get a new token, so tokens are never shared between threads.
+     */
+    public static final class ProfilerToken
+    {
+        public final TYPE type;
+        public final Object section;
+        public final Level world;
+        // key of general sections in reports, including the dimension, or id of entity types
+        private final String name;
+        private final String dimension;
+        private final int id;
+        private final Runnable end = () -> end_current_section(this);
+        private long start;
+        // packed position of the chunk of entity sections, unused for other sections
+        private long chunk;
+        // packed position of block entity sections, unused for other sections
+        private long pos;
+        // only used by the server thread, see begin
+        private boolean active;
+        // flight recorder event of the current run, only while a recording wants it
+        private Event event;
+
+        private ProfilerToken(TYPE type, Object section, Level world, String name, int id)
+        {
+            this.type = type;
+            this.section = section;
+            this.world = world;
+            this.name = name;
+            this.dimension = world == null ? null : world.dimension().identifier().toString();
+            this.id = id;
+        }
+
+        private ProfilerToken begin(long chunk, long pos)
+        {
+            // only the server thread reuses the token, other threads could race it or each other
+            ProfilerToken token = active || Thread.currentThread() != tick_thread ? new ProfilerToken(type, section, world, name, id) : this;
+            token.active = true;
+            token.chunk = chunk;
+            token.pos = pos;
+            token.event = null;
+            if (type == TYPE.GENERAL ? ProfilerEvents.sectionsEnabled() : ProfilerEvents.entitiesEnabled())
+            {
+                token.event = type == TYPE.GENERAL ? new ProfilerEvents.Section() : new ProfilerEvents.EntityTick();
+                token.event.begin();
+            }
+            token.start = System.nanoTime();
+            return token;
+        }
+
+        private void commitEvent()
+        {
+            Event current = event;
+            if (current == null)
+                return;
+            event = null;
+            current.end();
+            if (!current.shouldCommit())
+                return;
+            if (current instanceof ProfilerEvents.Section sectionEvent)
+            {
+                sectionEvent.section = (String) section;
+                sectionEvent.dimension = dimension;
+            }
+            else if (current instanceof ProfilerEvents.EntityTick entityEvent)
+            {
+                entityEvent.type = name;
+                entityEvent.dimension = dimension;
+                entityEvent.chunkX = ChunkPos.getX(chunk);
+                entityEvent.chunkZ = ChunkPos.getZ(chunk);
+            }
+            current.commit();
+        }
+
+        /**
+         * @return task ending this section, for code that can't reference the profiler
+         */
+        public Runnable end()
+        {
+            return end;
+        }
+    }
+
+    private static synchronized ProfilerToken registerSection(Level world, String section, TYPE type)
+    {
+        forget_previous_client_levels(world);
+        Map<String, ProfilerToken> tokens = world == null ? GLOBAL_SECTIONS : LEVEL_SECTIONS.computeIfAbsent(world, w -> new ConcurrentHashMap<>());
+        ProfilerToken token = tokens.get(section);
+        if (token == null)
+        {
+            String name = (world == null) ?
+                    section :
+                    String.format("%s.%s%s", world.dimension().identifier(), section, world.isClientSide() ? " (Client)" : "");
+            token = new ProfilerToken(type, section, world, name, FREE_SECTION_IDS.isEmpty() ? SECTION_TOKENS.size() : FREE_SECTION_IDS.popInt());
+            if (token.id == SECTION_TOKENS.size())
+                SECTION_TOKENS.add(token);
+            else
+                SECTION_TOKENS.set(token.id, token);
+            if (token.id >= section_times.length)
+                section_times = Arrays.copyOf(section_times, section_times.length * 2);
+            tokens.put(section, token);
+        }
+        return token;
+    }
+
+    private static synchronized ProfilerToken registerEntity(Level world, Object entityType, TYPE type)
+    {
+        forget_previous_client_levels(world);
+        Map<Object, ProfilerToken> tokens = LEVEL_ENTITIES.computeIfAbsent(world, w -> new ConcurrentHashMap<>());
+        ProfilerToken token = tokens.get(entityType);
+        if (token == null)
+        {
+            token = new ProfilerToken(type, entityType, world, typeName(world, entityType), FREE_ENTITY_IDS.isEmpty() ? ENTITY_TOKENS.size() : FREE_ENTITY_IDS.popInt());
+            if (token.id == ENTITY_TOKENS.size())
+                ENTITY_TOKENS.add(token);
+            else
+                ENTITY_TOKENS.set(token.id, token);
+            if (token.id >= entity_times.length)
+            {
+                entity_times = Arrays.copyOf(entity_times, entity_times.length * 2);
+                entity_counts = Arrays.copyOf(entity_counts, entity_counts.length * 2);
+            }
+            tokens.put(entityType, token);
+        }
+        return token;
+    }
+
+    private static ProfilerToken sectionToken(Level world, String section, TYPE type)
+    {
+        Map<String, ProfilerToken> tokens = world == null ? GLOBAL_SECTIONS : LEVEL_SECTIONS.get(world);
+        ProfilerToken token = tokens == null ? null : tokens.get(section);
+        return token == null ? registerSection(world, section, type) : token;
+    }
+
+    private static ProfilerToken entityToken(Level world, Object entityType, TYPE type)
+    {
+        Map<Object, ProfilerToken> tokens = LEVEL_ENTITIES.get(world);
+        ProfilerToken token = tokens == null ? null : tokens.get(entityType);
+        return token == null ? registerEntity(world, entityType, type) : token;
+    }
+
+    private static synchronized void clear_times()
+    {
+        Arrays.fill(section_times, 0L);
+        Arrays.fill(entity_times, 0L);
+        Arrays.fill(entity_counts, 0L);
+        total_tick_time = 0L;
+    }
+
+    /**
+     * Forgets sections and entity types of the levels of the server that closed
+     */
+    public static synchronized void forget_levels()
     {
-        public ProfilerToken(TYPE type, Object section, Level world)
+        LEVEL_SECTIONS.clear();
+        LEVEL_ENTITIES.clear();
+        GLOBAL_SECTIONS.clear();
+        SECTION_TOKENS.clear();
+        ENTITY_TOKENS.clear();
+        FREE_SECTION_IDS.clear();
+        FREE_ENTITY_IDS.clear();
+        clear_times();
+        SPIKES.clear();
+    }
+
+    /**
+     * The client has a single level at a time, so once a new client level registers anything,
+     * the previous ones are gone, and their tokens are dropped so they don't keep the levels in memory
+     */
+    private static void forget_previous_client_levels(Level world)
+    {
+        if (world == null || !world.isClientSide())
+            return;
+        for (Level level : List.copyOf(LEVEL_SECTIONS.keySet()))
+            if (level != world && level.isClientSide())
+                forget_level(level);
+        for (Level level : List.copyOf(LEVEL_ENTITIES.keySet()))
+            if (level != world && level.isClientSide())
+                forget_level(level);
+    }
+
+    private static synchronized void forget_level(Level world)
+    {
+        Map<String, ProfilerToken> sections = LEVEL_SECTIONS.remove(world);
+        if (sections != null)
         {
-            this(type, section, System.nanoTime(), world);
+            for (ProfilerToken token : sections.values())
+            {
+                SECTION_TOKENS.set(token.id, null);
+                section_times[token.id] = 0L;
+                FREE_SECTION_IDS.add(token.id);
+            }
         }
+        Map<Object, ProfilerToken> entities = LEVEL_ENTITIES.remove(world);
+        if (entities != null)
+        {
+            for (ProfilerToken token : entities.values())
+            {
+                ENTITY_TOKENS.set(token.id, null);
+                entity_times[token.id] = 0L;
+                entity_counts[token.id] = 0L;
+                FREE_ENTITY_IDS.add(token.id);
+            }
+        }
+    }
+
+    private static synchronized Object2LongOpenHashMap<String> section_stats()
+    {
+        Object2LongOpenHashMap<String> stats = new Object2LongOpenHashMap<>();
+        for (ProfilerToken token : SECTION_TOKENS)
+            if (token != null && token.id < section_times.length && section_times[token.id] != 0)
+                stats.addTo(token.name, section_times[token.id]);
+        return stats;
+    }
+
+    private static synchronized Object2LongOpenHashMap<Pair<Level,Object>> entity_stats(long[] values)
+    {
+        Object2LongOpenHashMap<Pair<Level,Object>> stats = new Object2LongOpenHashMap<>();
+        for (ProfilerToken token : ENTITY_TOKENS)
+            if (token != null && token.id < values.length && values[token.id] != 0)
+                stats.addTo(Pair.of(token.world, token.section), values[token.id]);
+        return stats;
     }
 
     public static void prepare_tick_report(CommandSourceStack source, int ticks)
     {
         //maybe add so it only spams the sending player, but honestly - all may want to see it
-        SECTION_STATS.clear(); // everything then defaults to 0
-        ENTITY_COUNT.clear();
-        ENTITY_TIMES.clear();
+        clear_times();
         test_type = TYPE.GENERAL;
+        scarpet_app_times = CarpetServer.scriptServer == null ? Collections.emptyMap() : CarpetServer.scriptServer.cpuStats.totals();
 
         tick_health_elapsed = ticks;
         tick_health_requested = ticks;
@@ -97,11 +357,20 @@ public class CarpetProfiler
     }
 
     public static void prepare_entity_report(CommandSourceStack source, int ticks)
+    {
+        prepare_entity_report(source, ticks, false);
+    }
+
+    /**
+     * @param positions whether to also find the chunks and block entities taking the most time
+     */
+    public static void prepare_entity_report(CommandSourceStack source, int ticks, boolean positions)
     {
         //maybe add so it only spams the sending player, but honestly - all may want to see it
-        SECTION_STATS.clear();
-        ENTITY_COUNT.clear();
-        ENTITY_TIMES.clear();
+        clear_times();
+        CHUNK_TIMES.clear();
+        BLOCK_ENTITY_TIMES.clear();
+        attribute_positions = positions;
         test_type = TYPE.ENTITY;
         tick_health_elapsed = ticks;
         tick_health_requested = ticks;
@@ -109,62 +378,120 @@ public class CarpetProfiler
         currentRequester = source;
     }
 
+    /**
+     * @return whether tick times are needed, either for a running report, to keep in histograms, or to catch lag spikes
+     */
+    public static boolean isProfiling()
+    {
+        return tick_health_requested != 0L || CarpetSettings.tickHealthHistograms || CarpetSettings.lagSpikeThreshold > 0
+                || ProfilerEvents.isRecording();
+    }
+
+    private static boolean isProfilingSections()
+    {
+        return current_tick_start != 0 && ((tick_health_requested != 0L && test_type == TYPE.GENERAL)
+                || CarpetSettings.tickHealthHistograms || CarpetSettings.lagSpikeThreshold > 0 || ProfilerEvents.sectionsEnabled());
+    }
+
+    private static boolean isProfilingEntities()
+    {
+        return current_tick_start != 0 && ((tick_health_requested != 0L && test_type == TYPE.ENTITY)
+                || CarpetSettings.lagSpikeThreshold > 0 || ProfilerEvents.entitiesEnabled());
+    }
+
     public static ProfilerToken start_section(Level world, String name, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0)
+        if (!isProfilingSections())
             return null;
-        return new ProfilerToken(type, name, world);
+        return sectionToken(world, name, type).begin(0L, 0L);
     }
 
     public static ProfilerToken start_entity_section(Level world, Entity e, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0)
+        if (!isProfilingEntities())
             return null;
-        return new ProfilerToken(type, e.getType(), world);
+        return entityToken(world, e.getType(), type).begin(e.chunkPosition().toLong(), 0L);
     }
 
     public static ProfilerToken start_block_entity_section(Level world, BlockEntity be, TYPE type)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0)
+        if (!isProfilingEntities())
             return null;
-        return new ProfilerToken(type, be.getType(), world);
+        BlockPos pos = be.getBlockPos();
+        return entityToken(world, be.getType(), type).begin(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4), pos.asLong());
     }
 
     public static void end_current_section(ProfilerToken tok)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.GENERAL || current_tick_start == 0 || tok == null)
+        if (tok == null)
             return;
         long end_time = System.nanoTime();
+        tok.commitEvent();
+        // released even if profiling stopped in the meantime, so the token can be reused
+        tok.active = false;
+        if (!isProfilingSections())
+            return;
         if (tok.type == TYPE.GENERAL)
         {
-            Level world = tok.world;
-            String current_section = (world == null) ?
-                    (String) tok.section :
-                    String.format("%s.%s%s", world.dimension().identifier(), tok.section, world.isClientSide() ? " (Client)" : "");
-            SECTION_STATS.addTo(current_section, end_time - tok.start);
+            long[] times = section_times;
+            if (tick_health_requested != 0L && test_type == TYPE.GENERAL && tok.id < times.length)
+                times[tok.id] += end_time - tok.start;
+            // client sections run on the client thread, and aren't part of server ticks
+            if (Thread.currentThread() == tick_thread)
+            {
+                if (CarpetSettings.tickHealthHistograms)
+                    RECORDER.addSection(tok.name, end_time - tok.start);
+                if (CarpetSettings.lagSpikeThreshold > 0)
+                    SPIKES.addSection(tok.name, end_time - tok.start);
+            }
         }
     }
 
     public static void end_current_entity_section(ProfilerToken tok)
     {
-        if (tick_health_requested == 0L || test_type != TYPE.ENTITY || current_tick_start == 0 || tok == null)
+        if (tok == null)
             return;
         long end_time = System.nanoTime();
-        Pair<Level,Object> section = Pair.of(tok.world, tok.section);
-        ENTITY_TIMES.addTo(section, end_time - tok.start);
-        ENTITY_COUNT.addTo(section, 1);
+        tok.commitEvent();
+        tok.active = false;
+        if (!isProfilingEntities())
+            return;
+        long[] times = entity_times;
+        long[] counts = entity_counts;
+        if (tick_health_requested != 0L && test_type == TYPE.ENTITY && tok.id < times.length && tok.id < counts.length)
+        {
+            times[tok.id] += end_time - tok.start;
+            counts[tok.id]++;
+            // client levels tick on another thread, and don't have positions worth teleporting to
+            if (attribute_positions && !tok.world.isClientSide())
+            {
+                CHUNK_TIMES.computeIfAbsent(tok.world, w -> new SpaceSavingSketch(POSITIONS_TRACKED)).add(tok.chunk, end_time - tok.start);
+                if (tok.type == TYPE.TILEENTITY)
+                    BLOCK_ENTITY_TIMES.computeIfAbsent(tok.world, w -> new SpaceSavingSketch(POSITIONS_TRACKED)).add(tok.pos, end_time - tok.start);
+            }
+        }
+        if (CarpetSettings.lagSpikeThreshold > 0 && Thread.currentThread() == tick_thread)
+            SPIKES.addEntity(tok.world, tok.section, tok.chunk, end_time - tok.start);
     }
 
     public static void start_tick_profiling()
     {
         current_tick_start = System.nanoTime();
+        tick_thread = Thread.currentThread();
     }
 
     public static void end_tick_profiling(MinecraftServer server)
     {
         if (current_tick_start == 0L)
             return;
-        SECTION_STATS.addTo("tick", System.nanoTime() - current_tick_start);
+        long tick_time = System.nanoTime() - current_tick_start;
+        if (CarpetSettings.tickHealthHistograms)
+            RECORDER.endTick(tick_time);
+        if (CarpetSettings.lagSpikeThreshold > 0)
+            SPIKES.endTick(server, tick_time);
+        if (tick_health_requested == 0L)
+            return;
+        total_tick_time += tick_time;
         tick_health_elapsed--;
         if (tick_health_elapsed <= 0)
         {
@@ -172,6 +499,36 @@ public class CarpetProfiler
         }
     }
 
+    public static void report_histograms(CommandSourceStack source)
+    {
+        if (!CarpetSettings.tickHealthHistograms)
+        {
+            Messenger.m(source, "r Tick histograms are not being recorded, enable them with /carpet tickHealthHistograms true");
+            return;
+        }
+        List<TickHealthRecorder.Summary> summaries = RECORDER.summaries();
+        if (summaries.isEmpty())
+        {
+            Messenger.m(source, "gi No ticks recorded yet");
+            return;
+        }
+        Messenger.m(source, "w ");
+        Messenger.m(source, "wb Tick times over the last hour: ", "g p50 / p95 / p99 / max");
+        for (TickHealthRecorder.Summary summary : summaries)
+        {
+            String section = summary.section();
+            boolean tick = section.equals(TickHealthRecorder.TICK);
+            String description = tick ? "Whole tick" : GENERAL_SECTIONS.getOrDefault(section, SCARPET_SECTIONS.getOrDefault(section,
+                    SECTIONS.getOrDefault(section.substring(section.lastIndexOf('.') + 1), section)));
+            Messenger.m(source,
+                    (tick ? "wb " : "w ") + section + ": ",
+                    "^ " + description + "\n" + summary.ticks() + " ticks",
+                    "%s %.2f / %.2f / %.2f / %.2fms".formatted(tick ? "yb" : "y",
+                            summary.p50() / 1000000.0, summary.p95() / 1000000.0, summary.p99() / 1000000.0, summary.max() / 1000000.0)
+            );
+        }
+    }
+
     public static void finalize_tick_report(MinecraftServer server)
     {
         if (test_type == TYPE.GENERAL)
@@ -183,14 +540,16 @@ public class CarpetProfiler
 
     public static void cleanup_tick_report()
     {
-        SECTION_STATS.clear();
-        ENTITY_TIMES.clear();
-        ENTITY_COUNT.clear();
+        clear_times();
+        CHUNK_TIMES.clear();
+        BLOCK_ENTITY_TIMES.clear();
+        attribute_positions = false;
         test_type = TYPE.NONE;
         tick_health_elapsed = 0;
         tick_health_requested = 0;
         current_tick_start = 0L;
         currentRequester = null;
+        scarpet_app_times = Collections.emptyMap();
     }
 
     public static void finalize_tick_report_for_time(MinecraftServer server)
@@ -198,7 +557,7 @@ public class CarpetProfiler
         //print stats
         if (currentRequester == null)
             return;
-        long total_tick_time = SECTION_STATS.getLong("tick");
+        Object2LongOpenHashMap<String> stats = section_stats();
         double divider = 1.0D / tick_health_requested / 1000000;
         Messenger.m(currentRequester, "w ");
         Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time));
@@ -206,10 +565,10 @@ public class CarpetProfiler
 
         for (String section : GENERAL_SECTIONS.keySet())
         {
-            double amount = divider * SECTION_STATS.getLong(section);
+            double amount = divider * stats.getLong(section);
             if (amount > 0.01)
             {
-                accumulated += SECTION_STATS.getLong(section);
+                accumulated += stats.getLong(section);
                 Messenger.m(
                         currentRequester,
                         "w " + section + ": ",
@@ -220,7 +579,7 @@ public class CarpetProfiler
         }
         for (String section : SCARPET_SECTIONS.keySet())
         {
-            double amount = divider * SECTION_STATS.getLong(section);
+            double amount = divider * stats.getLong(section);
             if (amount > 0.01)
             {
                 Messenger.m(
@@ -231,6 +590,19 @@ public class CarpetProfiler
                 );
             }
         }
+        if (CarpetServer.scriptServer != null)
+        {
+            CarpetServer.scriptServer.cpuStats.totals().entrySet().stream()
+                    .map(e -> Pair.of(e.getKey(), e.getValue() - scarpet_app_times.getOrDefault(e.getKey(), 0L)))
+                    .filter(p -> divider * p.getValue() > 0.01)
+                    .sorted(Comparator.comparingLong((Pair<String, Long> p) -> p.getValue()).reversed())
+                    .forEach(p -> Messenger.m(
+                            currentRequester,
+                            "gi  - app " + (p.getKey() == null ? "built-in default app" : p.getKey()) + ": ",
+                            "^ events and scheduled calls of that app",
+                            "di %.3fms".formatted(divider * p.getValue())
+                    ));
+        }
 
         for (ResourceKey<Level> dim : server.levelKeys())
         {
@@ -238,7 +610,7 @@ public class CarpetProfiler
             boolean hasSomethin = false;
             for (String section : SECTIONS.keySet())
             {
-                double amount = divider * SECTION_STATS.getLong(dimensionId + "." + section);
+                double amount = divider * stats.getLong(dimensionId + "." + section);
                 if (amount > 0.01)
                 {
                     hasSomethin = true;
@@ -252,12 +624,12 @@ public class CarpetProfiler
             Messenger.m(currentRequester, "wb "+(dimensionId.getNamespace().equals("minecraft")?dimensionId.getPath():dimensionId.toString()) + ":");
             for (String section : SECTIONS.keySet())
             {
-                double amount = divider * SECTION_STATS.getLong(dimensionId + "." + section);
+                double amount = divider * stats.getLong(dimensionId + "." + section);
                 if (amount > 0.01)
                 {
                     boolean cli = section.endsWith("(Client)");
                     if (!cli)
-                        accumulated += SECTION_STATS.getLong(dimensionId + "." + section);
+                        accumulated += stats.getLong(dimensionId + "." + section);
                     Messenger.m(
                             currentRequester,
                             "%s - %s: ".formatted(cli ? "gi" : "w", section),
@@ -273,19 +645,24 @@ public class CarpetProfiler
         Messenger.m(currentRequester, String.format("gi The Rest, whatever that might be: %.3fms", divider * rest));
     }
 
-    private static String sectionName(Pair<Level,Object> section)
+    private static String typeName(Level level, Object type)
     {
         Identifier id;
-        final RegistryAccess regs = section.getKey().registryAccess();
-        if (section.getValue() instanceof EntityType)
+        final RegistryAccess regs = level.registryAccess();
+        if (type instanceof EntityType)
         {
-            id = regs.lookupOrThrow(Registries.ENTITY_TYPE).getKey((EntityType<?>) section.getValue());
+            id = regs.lookupOrThrow(Registries.ENTITY_TYPE).getKey((EntityType<?>) type);
         }
         else
         {
-            id = regs.lookupOrThrow(Registries.BLOCK_ENTITY_TYPE).getKey((BlockEntityType<?>) section.getValue());
+            id = regs.lookupOrThrow(Registries.BLOCK_ENTITY_TYPE).getKey((BlockEntityType<?>) type);
         }
-        String name = "minecraft".equals(id.getNamespace())?id.getPath():id.toString();
+        return "minecraft".equals(id.getNamespace())?id.getPath():id.toString();
+    }
+
+    private static String sectionName(Pair<Level,Object> section)
+    {
+        String name = typeName(section.getKey(), section.getValue());
         if (section.getKey().isClientSide())
         {
             name += " (client)";
@@ -299,15 +676,15 @@ public class CarpetProfiler
     {
         if (currentRequester == null)
             return;
-        long total_tick_time = SECTION_STATS.getLong("tick");
+        Object2LongOpenHashMap<Pair<Level,Object>> times = entity_stats(entity_times);
+        Object2LongOpenHashMap<Pair<Level,Object>> counts = entity_stats(entity_counts);
         double divider = 1.0D / tick_health_requested / 1000000;
         double divider_1 = 1.0D / (tick_health_requested - 1) / 1000000;
         Messenger.m(currentRequester, "w ");
         Messenger.m(currentRequester, "wb Average tick time: ", String.format("yb %.3fms", divider * total_tick_time));
-        SECTION_STATS.removeLong("tick");
         Messenger.m(currentRequester, "wb Top 10 counts:");
         int total = 0;
-        for (Object2LongMap.Entry<Pair<Level, Object>> sectionEntry : sortedByValue(ENTITY_COUNT))
+        for (Object2LongMap.Entry<Pair<Level, Object>> sectionEntry : sortedByValue(counts))
         {
             if (++total > 10) break;
             Pair<Level,Object> section = sectionEntry.getKey();
@@ -321,7 +698,7 @@ public class CarpetProfiler
         }
         Messenger.m(currentRequester, "wb Top 10 CPU hogs:");
         total = 0;
-        for (Object2LongMap.Entry<Pair<Level, Object>> sectionEntry : sortedByValue(ENTITY_TIMES))
+        for (Object2LongMap.Entry<Pair<Level, Object>> sectionEntry : sortedByValue(times))
         {
             if (++total > 10) break;
             Pair<Level,Object> section = sectionEntry.getKey();
@@ -333,6 +710,86 @@ public class CarpetProfiler
                     (cli ? divider : divider_1) * sectionEntry.getLongValue()
             ));
         }
+        if (attribute_positions)
+            report_positions(divider_1);
+    }
+
+    private record HotSpot(Level level, SpaceSavingSketch.Entry entry)
+    {
+    }
+
+    private static List<HotSpot> hot_spots(Map<Level, SpaceSavingSketch> sketches)
+    {
+        List<HotSpot> spots = new ArrayList<>();
+        sketches.forEach((level, sketch) -> sketch.top(POSITIONS_SHOWN).forEach(e -> spots.add(new HotSpot(level, e))));
+        spots.sort(Comparator.comparingLong((HotSpot h) -> h.entry().total()).reversed());
+        return spots.subList(0, Math.min(POSITIONS_SHOWN, spots.size()));
+    }
+
+    private static void report_positions(double divider)
+    {
+        List<ShapeDispatcher.ShapeWithConfig> shapes = new ArrayList<>();
+        List<HotSpot> chunks = hot_spots(CHUNK_TIMES);
+        Messenger.m(currentRequester, "wb Top 10 chunks:");
+        for (HotSpot spot : chunks)
+        {
+            ChunkPos chunk = new ChunkPos(spot.entry().key());
+            String dim = spot.level().dimension().identifier().toString();
+            Messenger.m(currentRequester,
+                    "w  - %s [%d, %d]: ".formatted(dimensionName(spot.level()), chunk.x, chunk.z),
+                    "!/execute in %s run tp @s %d ~ %d".formatted(dim, chunk.getMiddleBlockX(), chunk.getMiddleBlockZ()),
+                    "^ Teleport to the chunk, at blocks %d, %d".formatted(chunk.getMinBlockX(), chunk.getMinBlockZ()),
+                    "y %.2fms".formatted(divider * spot.entry().total()),
+                    "^ Might be overestimated by up to %.2fms".formatted(divider * spot.entry().error())
+            );
+            shapes.add(hot_spot_box(spot, chunks.get(0).entry().total(),
+                    chunk.getMinBlockX(), spot.level().getMinY(), chunk.getMinBlockZ(),
+                    chunk.getMaxBlockX() + 1, spot.level().getMaxY() + 1, chunk.getMaxBlockZ() + 1));
+        }
+        List<HotSpot> blockEntities = hot_spots(BLOCK_ENTITY_TIMES);
+        Messenger.m(currentRequester, "wb Top 10 block entities:");
+        for (HotSpot spot : blockEntities)
+        {
+            BlockPos pos = BlockPos.of(spot.entry().key());
+            String dim = spot.level().dimension().identifier().toString();
+            BlockEntity be = spot.level().getBlockEntity(pos);
+            String name = be == null ? "removed block entity" : sectionName(Pair.of(spot.level(), be.getType()));
+            Messenger.m(currentRequester,
+                    "w  - %s at [%d, %d, %d]: ".formatted(name, pos.getX(), pos.getY(), pos.getZ()),
+                    "!/execute in %s run tp @s %d %d %d".formatted(dim, pos.getX(), pos.getY() + 1, pos.getZ()),
+                    "^ Teleport to the block entity",
+                    "y %.2fms".formatted(divider * spot.entry().total()),
+                    "^ Might be overestimated by up to %.2fms".formatted(divider * spot.entry().error())
+            );
+            shapes.add(hot_spot_box(spot, blockEntities.get(0).entry().total(),
+                    pos.getX(), pos.getY(), pos.getZ(), pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1));
+        }
+        if (currentRequester.getPlayer() != null && !shapes.isEmpty())
+        {
+            ShapeDispatcher.sendShape(List.of(currentRequester.getPlayer()), shapes, currentRequester.registryAccess());
+        }
+    }
+
+    private static ShapeDispatcher.ShapeWithConfig hot_spot_box(HotSpot spot, long hottest, double x1, double y1, double z1, double x2, double y2, double z2)
+    {
+        double heat = hottest == 0 ? 1.0 : (double) spot.entry().total() / hottest;
+        int red = 255;
+        int green = (int) Math.round(200 * (1.0 - heat));
+        long rgb = ((long) red << 24) | (green << 16);
+        Map<String, Value> params = new HashMap<>();
+        params.put("from", ListValue.ofNums(x1, y1, z1));
+        params.put("to", ListValue.ofNums(x2, y2, z2));
+        params.put("color", NumericValue.of(rgb | 0xFF));
+        params.put("fill", NumericValue.of(rgb | 0x30));
+        params.put("duration", NumericValue.of(OVERLAY_DURATION));
+        params.put("dim", StringValue.of(spot.level().dimension().identifier().toString()));
+        return new ShapeDispatcher.ShapeWithConfig(ShapeDispatcher.create(currentRequester.getServer(), "box", params), params);
+    }
+
+    private static String dimensionName(Level level)
+    {
+        Identifier id = level.dimension().identifier();
+        return "minecraft".equals(id.getNamespace()) ? id.getPath() : id.toString();
     }
 
     private static <T> Iterable<Object2LongMap.Entry<T>> sortedByValue(Object2LongMap<T> mapToSort) {
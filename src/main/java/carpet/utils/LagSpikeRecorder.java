@@ -0,0 +1,248 @@
+package carpet.utils;
+
+import carpet.CarpetSettings;
+import carpet.logging.LoggerRegistry;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Util;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps section, entity and chunk times of the last ticks in a ring buffer, and when a tick takes longer than
+ * {@link CarpetSettings#lagSpikeThreshold}, writes what happened in the ticks leading to it to the lag_spikes folder
+ * of the world, and tells players subscribed to the lagSpikes logger. Records of old ticks are cleared and reused,
+ * so after the first ticks recording doesn't allocate.
+ */
+public class LagSpikeRecorder
+{
+    private static final int HISTORY = 100;
+    private static final long COOLDOWN_MILLIS = 60 * 1000;
+    private static final int TOP = 10;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss");
+
+    private static final class TickRecord
+    {
+        private long nanos;
+        private final Object2LongOpenHashMap<String> sections = new Object2LongOpenHashMap<>();
+        // entity and block entity types, and chunk positions, per level
+        private final Map<Level, Object2LongOpenHashMap<Object>> entityTimes = new Reference2ObjectOpenHashMap<>();
+        private final Map<Level, Object2LongOpenHashMap<Object>> entityCounts = new Reference2ObjectOpenHashMap<>();
+        private final Map<Level, Long2LongOpenHashMap> chunkTimes = new Reference2ObjectOpenHashMap<>();
+
+        private void clear()
+        {
+            nanos = 0;
+            sections.clear();
+            entityTimes.values().forEach(Object2LongOpenHashMap::clear);
+            entityCounts.values().forEach(Object2LongOpenHashMap::clear);
+            chunkTimes.values().forEach(Long2LongOpenHashMap::clear);
+        }
+    }
+
+    private final TickRecord[] ticks = new TickRecord[HISTORY];
+    // index of the tick in progress
+    private int current = 0;
+    private int recorded = 0;
+    private long lastSpike = 0;
+
+    public LagSpikeRecorder()
+    {
+        for (int i = 0; i < HISTORY; i++)
+        {
+            ticks[i] = new TickRecord();
+        }
+    }
+
+    public void addSection(String section, long nanos)
+    {
+        ticks[current].sections.addTo(section, nanos);
+    }
+
+    /**
+     * @param chunk packed position of the chunk the entity or block entity is in
+     */
+    public void addEntity(Level level, Object type, long chunk, long nanos)
+    {
+        TickRecord tick = ticks[current];
+        tick.entityTimes.computeIfAbsent(level, l -> new Object2LongOpenHashMap<>()).addTo(type, nanos);
+        tick.entityCounts.computeIfAbsent(level, l -> new Object2LongOpenHashMap<>()).addTo(type, 1);
+        tick.chunkTimes.computeIfAbsent(level, l -> new Long2LongOpenHashMap()).addTo(chunk, nanos);
+    }
+
+    public void endTick(MinecraftServer server, long tickNanos)
+    {
+        ticks[current].nanos = tickNanos;
+        recorded = Math.min(recorded + 1, HISTORY);
+        long now = System.currentTimeMillis();
+        if (CarpetSettings.lagSpikeThreshold > 0 && tickNanos >= CarpetSettings.lagSpikeThreshold * 1000000L && now - lastSpike > COOLDOWN_MILLIS)
+        {
+            lastSpike = now;
+            // report is built before the buffer moves on, only writing the file happens off thread
+            List<String> report = report(tickNanos);
+            Path file = server.getWorldPath(LevelResource.ROOT).resolve("lag_spikes").resolve("spike-" + LocalDateTime.now().format(FILE_TIME) + ".txt");
+            Util.ioPool().execute(() -> write(file, report));
+            notifySubscribers(tickNanos, file);
+        }
+        current = (current + 1) % HISTORY;
+        ticks[current].clear();
+    }
+
+    public void clear()
+    {
+        for (TickRecord tick : ticks)
+        {
+            tick.clear();
+            tick.entityTimes.clear();
+            tick.entityCounts.clear();
+            tick.chunkTimes.clear();
+        }
+        recorded = 0;
+    }
+
+    private static void write(Path file, List<String> report)
+    {
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Files.write(file, report, StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            CarpetSettings.LOG.warn("Failed to write lag spike report " + file, e);
+        }
+    }
+
+    private void notifySubscribers(long tickNanos, Path file)
+    {
+        if (!LoggerRegistry.__lagSpikes)
+        {
+            return;
+        }
+        TickRecord spike = ticks[current];
+        List<Object2LongMap.Entry<String>> slowest = top(spike.sections, 3);
+        LoggerRegistry.getLogger("lagSpikes").log((String option) -> {
+            List<Component> lines = new ArrayList<>();
+            lines.add(Messenger.c(
+                    "r Lag spike: ", "rb %.1fms".formatted(tickNanos / 1000000.0),
+                    "r  tick, report saved to ", "y lag_spikes/" + file.getFileName(), "^ " + file
+            ));
+            if ("full".equals(option))
+            {
+                for (Object2LongMap.Entry<String> section : slowest)
+                {
+                    lines.add(Messenger.c("w  - " + section.getKey() + ": ", "y %.2fms".formatted(section.getLongValue() / 1000000.0)));
+                }
+            }
+            return lines.toArray(new Component[0]);
+        });
+    }
+
+    private List<String> report(long tickNanos)
+    {
+        TickRecord spike = ticks[current];
+        List<String> lines = new ArrayList<>();
+        lines.add("Lag spike at %s: tick took %.2fms, threshold is %dms".formatted(LocalDateTime.now(), tickNanos / 1000000.0, CarpetSettings.lagSpikeThreshold));
+        lines.add("");
+
+        Object2LongOpenHashMap<String> totals = new Object2LongOpenHashMap<>();
+        StringBuilder recent = new StringBuilder();
+        long total = 0;
+        for (int i = recorded - 1; i >= 0; i--)
+        {
+            TickRecord tick = ticks[(current - i + HISTORY) % HISTORY];
+            total += tick.nanos;
+            tick.sections.object2LongEntrySet().forEach(e -> totals.addTo(e.getKey(), e.getLongValue()));
+            recent.append("%.1f ".formatted(tick.nanos / 1000000.0));
+        }
+        lines.add("Last %d ticks, averaging %.2fms, oldest first:".formatted(recorded, total / 1000000.0 / recorded));
+        lines.add(recent.toString().trim());
+        lines.add("");
+
+        lines.add("Sections in the spike tick, and averaged over the last %d ticks:".formatted(recorded));
+        for (Object2LongMap.Entry<String> section : top(spike.sections, Integer.MAX_VALUE))
+        {
+            lines.add("  %s: %.2fms (average %.2fms)".formatted(section.getKey(), section.getLongValue() / 1000000.0, totals.getLong(section.getKey()) / 1000000.0 / recorded));
+        }
+        lines.add("");
+
+        lines.add("Slowest entities and block entities in the spike tick:");
+        spike.entityTimes.forEach((level, times) -> {
+            if (times.isEmpty())
+            {
+                return;
+            }
+            lines.add("  " + dimensionName(level) + ":");
+            Object2LongOpenHashMap<Object> counts = spike.entityCounts.get(level);
+            for (Object2LongMap.Entry<Object> entry : top(times, TOP))
+            {
+                lines.add("    %s: %.2fms, %d ticked".formatted(typeName(level, entry.getKey()), entry.getLongValue() / 1000000.0, counts.getLong(entry.getKey())));
+            }
+        });
+        lines.add("");
+
+        lines.add("Slowest chunks in the spike tick, by entity and block entity time:");
+        record ChunkTime(Level level, long chunk, long nanos)
+        {
+        }
+        List<ChunkTime> chunks = new ArrayList<>();
+        spike.chunkTimes.forEach((level, times) -> {
+            for (Long2LongMap.Entry entry : times.long2LongEntrySet())
+            {
+                chunks.add(new ChunkTime(level, entry.getLongKey(), entry.getLongValue()));
+            }
+        });
+        chunks.sort(Comparator.comparingLong(ChunkTime::nanos).reversed());
+        for (ChunkTime chunk : chunks.subList(0, Math.min(TOP, chunks.size())))
+        {
+            ChunkPos pos = new ChunkPos(chunk.chunk());
+            lines.add("  %s chunk [%d, %d] (blocks %d, %d): %.2fms".formatted(
+                    dimensionName(chunk.level()), pos.x, pos.z, pos.getMinBlockX(), pos.getMinBlockZ(), chunk.nanos() / 1000000.0
+            ));
+        }
+        return lines;
+    }
+
+    private static <T> List<Object2LongMap.Entry<T>> top(Object2LongMap<T> map, int limit)
+    {
+        return map.object2LongEntrySet().stream()
+                .sorted(Comparator.<Object2LongMap.Entry<T>>comparingLong(Object2LongMap.Entry::getLongValue).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private static String dimensionName(Level level)
+    {
+        Identifier id = level.dimension().identifier();
+        return "minecraft".equals(id.getNamespace()) ? id.getPath() : id.toString();
+    }
+
+    private static String typeName(Level level, Object type)
+    {
+        Identifier id = type instanceof final EntityType<?> entityType
+                ? level.registryAccess().lookupOrThrow(Registries.ENTITY_TYPE).getKey(entityType)
+                : level.registryAccess().lookupOrThrow(Registries.BLOCK_ENTITY_TYPE).getKey((BlockEntityType<?>) type);
+        return "minecraft".equals(id.getNamespace()) ? id.getPath() : id.toString();
+    }
+}
@@ -1,11 +1,20 @@
 package carpet.utils;
 
+import carpet.script.utils.RegionSnapshot;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.LongStream;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.BlockTags;
 import net.minecraft.tags.FluidTags;
 import net.minecraft.util.random.Weighted;
+import net.minecraft.util.random.WeightedList;
 import net.minecraft.world.entity.AgeableMob;
 import net.minecraft.world.entity.EntitySpawnReason;
 import net.minecraft.world.entity.EntityType;
@@ -15,6 +24,7 @@ import net.minecraft.world.entity.SpawnPlacements;
 import net.minecraft.world.entity.ambient.AmbientCreature;
 import net.minecraft.world.entity.animal.fish.WaterAnimal;
 import net.minecraft.world.entity.monster.Enemy;
+import net.minecraft.world.level.EmptyBlockGetter;
 import net.minecraft.world.level.NaturalSpawner;
 import net.minecraft.world.level.biome.MobSpawnSettings;
 import net.minecraft.world.level.block.Block;
@@ -34,31 +44,28 @@ public class PerimeterDiagnostics
             samples = new ArrayList<>();
         }
     }
-    private MobSpawnSettings.SpawnerData sle;
-    private ServerLevel worldServer;
-    private MobCategory ctype;
-    private Mob el;
+    private final ServerLevel worldServer;
+    private final MobCategory ctype;
+    private final Mob el;
+    // spawn lists are shared by all positions with the same biome and structures, so the mob entry is looked up once per list
+    private final Map<WeightedList<MobSpawnSettings.SpawnerData>, Optional<MobSpawnSettings.SpawnerData>> spawnerData = new IdentityHashMap<>();
     private PerimeterDiagnostics(ServerLevel server, MobCategory ctype, Mob el)
     {
-        this.sle = null;
         this.worldServer = server;
         this.ctype = ctype;
         this.el = el;
     }
 
+    private static final int RADIUS = 128;
+    private static final int MIN_DISTANCE = 24;
+
     public static Result countSpots(ServerLevel worldserver, BlockPos epos, Mob el)
     {
-        BlockPos pos;
-        //List<BlockPos> samples = new ArrayList<BlockPos>();
-        //if (el != null) CarpetSettings.LOG.error(String.format("Got %s to check",el.toString()));
         int eY = epos.getY();
         int eX = epos.getX();
         int eZ = epos.getZ();
         Result result = new Result();
 
-        //int ground_spawns = 0;
-        //int liquid_spawns = 0;
-        //int specific_spawns = 0;
         boolean add_water = false;
         boolean add_ground = false;
         MobCategory ctype = null;
@@ -86,39 +93,65 @@ public class PerimeterDiagnostics
             }
         }
         PerimeterDiagnostics diagnostic = new PerimeterDiagnostics(worldserver,ctype,el);
-        EntityType<?> type = EntityType.ZOMBIE;
-        if (el != null) type = el.getType();
-        int minY = worldserver.getMinY();
-        int maxY = worldserver.getMaxY();
-        for (int x = -128; x <= 128; ++x)
+        EntityType<?> type = el == null ? EntityType.ZOMBIE : el.getType();
+        int minY = Math.max(worldserver.getMinY(), eY - RADIUS);
+        int maxY = Math.min(worldserver.getMaxY() - 1, eY + RADIUS);
+        if (minY > maxY)
+        {
+            return result;
+        }
+        // one block more on each side for the blocks above and below
+        RegionSnapshot snapshot = new RegionSnapshot(worldserver, eX - RADIUS, minY - 1, eZ - RADIUS, eX + RADIUS, maxY + 1, eZ + RADIUS);
+        List<int[]> columns = new ArrayList<>();
+        for (int cx = SectionPos.blockToSectionCoord(eX - RADIUS); cx <= SectionPos.blockToSectionCoord(eX + RADIUS); cx++)
         {
-            for (int z = -128; z <= 128; ++z)
+            for (int cz = SectionPos.blockToSectionCoord(eZ - RADIUS); cz <= SectionPos.blockToSectionCoord(eZ + RADIUS); cz++)
             {
-                if (x*x + z*z > 128*128) // cut out a cyllinder first
-                {
-                    continue;
-                }
-                for (int y= minY; y < maxY; ++y)
+                columns.add(new int[]{cx, cz});
+            }
+        }
+        // positions which might be spawning spaces are found in parallel, and only these are checked in the world,
+        // in the same order the area was checked in before, so the samples stay the same
+        long[] candidates = columns.parallelStream()
+                .flatMapToLong(column -> findCandidates(snapshot, column[0], column[1], epos, minY, maxY, type))
+                .toArray();
+        LongArrays.quickSort(candidates, (p1, p2) -> {
+            int byX = Integer.compare(BlockPos.getX(p1), BlockPos.getX(p2));
+            if (byX != 0) return byX;
+            int byZ = Integer.compare(BlockPos.getZ(p1), BlockPos.getZ(p2));
+            return byZ != 0 ? byZ : Integer.compare(BlockPos.getY(p1), BlockPos.getY(p2));
+        });
+
+        for (long candidate : candidates)
+        {
+            BlockPos pos = BlockPos.of(candidate);
+
+            BlockState iblockstate = worldserver.getBlockState(pos);
+            BlockState iblockstate_down = worldserver.getBlockState(pos.below());
+            BlockState iblockstate_up = worldserver.getBlockState(pos.above());
+
+            if ( iblockstate.getFluidState().is(FluidTags.WATER) && !iblockstate_up.isRedstoneConductor(worldserver, pos)) // isSimpleFUllBLock
+            {
+                result.liquid++;
+                if (add_water && diagnostic.check_entity_spawn(pos))
                 {
-                    if ((Math.abs(y-eY)>128) )
+                    result.specific++;
+                    if (result.samples.size() < 10)
                     {
-                        continue;
+                        result.samples.add(pos);
                     }
-                    int distsq = (x)*(x)+(eY-y)*(eY-y)+(z)*(z);
-                    if (distsq > 128*128 || distsq < 24*24)
-                    {
-                        continue;
-                    }
-                    pos = new BlockPos(eX+x, y, eZ+z);
-
-                    BlockState iblockstate = worldserver.getBlockState(pos);
-                    BlockState iblockstate_down = worldserver.getBlockState(pos.below());
-                    BlockState iblockstate_up = worldserver.getBlockState(pos.above());
-
-                    if ( iblockstate.getFluidState().is(FluidTags.WATER) && !iblockstate_up.isRedstoneConductor(worldserver, pos)) // isSimpleFUllBLock
+                }
+            }
+            else
+            {
+                if (iblockstate_down.isRedstoneConductor(worldserver, pos)) // isSimpleFUllBLock
+                {
+                    Block block = iblockstate_down.getBlock();
+                    boolean flag = block != Blocks.BEDROCK && block != Blocks.BARRIER;
+                    if( flag && NaturalSpawner.isValidEmptySpawnBlock(worldserver, pos, iblockstate, iblockstate.getFluidState(), type) && NaturalSpawner.isValidEmptySpawnBlock(worldserver, pos.above(), iblockstate_up, iblockstate_up.getFluidState(), type))
                     {
-                        result.liquid++;
-                        if (add_water && diagnostic.check_entity_spawn(pos))
+                        result.ground ++;
+                        if (add_ground && diagnostic.check_entity_spawn(pos))
                         {
                             result.specific++;
                             if (result.samples.size() < 10)
@@ -127,56 +160,88 @@ public class PerimeterDiagnostics
                             }
                         }
                     }
-                    else
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Goes up each column of the chunk within the checked perimeter, keeping the block below, at and above the position,
+     * and keeps positions which could pass the spawning space checks. Only checks that depend on nothing but the block
+     * states are done here, so the result can only have more positions than the actual spawning spaces.
+     */
+    private static LongStream findCandidates(RegionSnapshot snapshot, int cx, int cz, BlockPos epos, int minY, int maxY, EntityType<?> type)
+    {
+        LongStream.Builder candidates = LongStream.builder();
+        int eY = epos.getY();
+        for (int bx = SectionPos.sectionToBlockCoord(cx); bx <= SectionPos.sectionToBlockCoord(cx, 15); bx++)
+        {
+            int x = bx - epos.getX();
+            for (int bz = SectionPos.sectionToBlockCoord(cz); bz <= SectionPos.sectionToBlockCoord(cz, 15); bz++)
+            {
+                int z = bz - epos.getZ();
+                if (x*x + z*z > RADIUS*RADIUS) // cut out a cyllinder first
+                {
+                    continue;
+                }
+                BlockState down = snapshot.getBlockState(bx, minY - 1, bz);
+                BlockState state = snapshot.getBlockState(bx, minY, bz);
+                for (int y = minY; y <= maxY; ++y)
+                {
+                    BlockState up = snapshot.getBlockState(bx, y + 1, bz);
+                    int distsq = (x)*(x)+(eY-y)*(eY-y)+(z)*(z);
+                    if (distsq <= RADIUS*RADIUS && distsq >= MIN_DISTANCE*MIN_DISTANCE)
                     {
-                        if (iblockstate_down.isRedstoneConductor(worldserver, pos)) // isSimpleFUllBLock
+                        if (state.getFluidState().is(FluidTags.WATER) || (
+                                !down.isAir() && !down.is(Blocks.BEDROCK) && !down.is(Blocks.BARRIER)
+                                && mayBeEmptySpawnBlock(state, type) && mayBeEmptySpawnBlock(up, type)
+                        ))
                         {
-                            Block block = iblockstate_down.getBlock();
-                            boolean flag = block != Blocks.BEDROCK && block != Blocks.BARRIER;
-                            if( flag && NaturalSpawner.isValidEmptySpawnBlock(worldserver, pos, iblockstate, iblockstate.getFluidState(), type) && NaturalSpawner.isValidEmptySpawnBlock(worldserver, pos.above(), iblockstate_up, iblockstate_up.getFluidState(), type))
-                            {
-                                result.ground ++;
-                                if (add_ground && diagnostic.check_entity_spawn(pos))
-                                {
-                                    result.specific++;
-                                    if (result.samples.size() < 10)
-                                    {
-                                        result.samples.add(pos);
-                                    }
-                                }
-                            }
+                            candidates.add(BlockPos.asLong(bx, y, bz));
                         }
                     }
+                    down = state;
+                    state = up;
                 }
             }
         }
-        //ashMap<String,Integer> result= new HashMap<>();
-        //result.put("Potential in-water spawning spaces", liquid_spawns);
-        //result.put("Potential on-ground spawning spaces", ground_spawns);
-        //if (el != null) result.put(String.format("%s spawning spaces",el.getDisplayName().getUnformattedText()),specific_spawns);
-        return result;
+        return candidates.build();
+    }
+
+    /**
+     * Parts of {@link NaturalSpawner#isValidEmptySpawnBlock} that don't need the world.
+     * Blocks with a fixed shape have it cached, so it doesn't depend on the world either.
+     */
+    private static boolean mayBeEmptySpawnBlock(BlockState state, EntityType<?> type)
+    {
+        if (!state.hasDynamicShape() && state.isCollisionShapeFullBlock(EmptyBlockGetter.INSTANCE, BlockPos.ZERO))
+        {
+            return false;
+        }
+        return !state.isSignalSource() && state.getFluidState().isEmpty()
+                && !state.is(BlockTags.PREVENT_MOB_SPAWNING_INSIDE) && !type.isBlockDangerous(state);
     }
 
 
     private boolean check_entity_spawn(BlockPos pos)
     {
-        if (sle == null || !worldServer.getChunkSource().getGenerator().getMobsAt(worldServer.getBiome(pos), worldServer.structureManager(), ctype, pos).unwrap().contains(sle))
-        {
-            sle = null;
-            for (Weighted<MobSpawnSettings.SpawnerData> wsle: worldServer.getChunkSource().getGenerator().getMobsAt(worldServer.getBiome(pos), worldServer.structureManager(), ctype, pos).unwrap())
+        WeightedList<MobSpawnSettings.SpawnerData> mobs = worldServer.getChunkSource().getGenerator().getMobsAt(worldServer.getBiome(pos), worldServer.structureManager(), ctype, pos);
+        Optional<MobSpawnSettings.SpawnerData> data = spawnerData.computeIfAbsent(mobs, list -> {
+            for (Weighted<MobSpawnSettings.SpawnerData> wsle: list.unwrap())
             {
-                MobSpawnSettings.SpawnerData sle = wsle.value();
-                if (el.getType() == sle.type())
+                if (el.getType() == wsle.value().type())
                 {
-                    this.sle = sle;
-                    break;
+                    return Optional.of(wsle.value());
                 }
             }
-            if (sle == null || !worldServer.getChunkSource().getGenerator().getMobsAt(worldServer.getBiome(pos), worldServer.structureManager(), ctype, pos).unwrap().contains(sle))
-            {
-                return false;
-            }
+            return Optional.empty();
+        });
+        if (data.isEmpty())
+        {
+            return false;
         }
+        MobSpawnSettings.SpawnerData sle = data.get();
 
         if (SpawnPlacements.isSpawnPositionOk(sle.type(), worldServer, pos))
         {
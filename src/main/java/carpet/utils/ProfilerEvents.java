@@ -0,0 +1,77 @@
+package carpet.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for carpet profiler sections and entity ticks, so recordings show them next to GC pauses,
+ * lock contention and the rest of the JVM. Events are only created while a recording has them enabled, and the profiler
+ * times sections whenever that is the case, without needing to run /profile.
+ */
+public class ProfilerEvents
+{
+    private static final EventType SECTION_TYPE = EventType.getEventType(Section.class);
+    private static final EventType ENTITY_TYPE = EventType.getEventType(EntityTick.class);
+
+    @Name("carpet.ProfilerSection")
+    @Label("Carpet Profiler Section")
+    @Category({"Carpet", "Profiler"})
+    @Description("Part of the server tick, as shown by /profile health")
+    @StackTrace(false)
+    public static class Section extends Event
+    {
+        @Label("Section")
+        public String section;
+
+        @Label("Dimension")
+        public String dimension;
+    }
+
+    @Name("carpet.EntityTick")
+    @Label("Carpet Entity Tick")
+    @Category({"Carpet", "Profiler"})
+    @Description("Tick of an entity or block entity, as shown by /profile entities")
+    @StackTrace(false)
+    // thousands per tick otherwise, so recordings have to ask for them, and then get the slow ones
+    @Enabled(false)
+    @Threshold("1 ms")
+    public static class EntityTick extends Event
+    {
+        @Label("Type")
+        public String type;
+
+        @Label("Dimension")
+        public String dimension;
+
+        @Label("Chunk X")
+        public int chunkX;
+
+        @Label("Chunk Z")
+        public int chunkZ;
+    }
+
+    public static boolean sectionsEnabled()
+    {
+        return SECTION_TYPE.isEnabled();
+    }
+
+    public static boolean entitiesEnabled()
+    {
+        return ENTITY_TYPE.isEnabled();
+    }
+
+    /**
+     * @return whether any recording wants carpet events
+     */
+    public static boolean isRecording()
+    {
+        return SECTION_TYPE.isEnabled() || ENTITY_TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,138 @@
+package carpet.utils;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Approximate top-K of weights added to long keys, using the space-saving algorithm. Only K keys are kept,
+ * and a key that isn't kept replaces the one with the lowest total, taking over its total as the possible error.
+ * Any key whose real total is larger than the sum of all weights divided by K is kept, and totals are never underestimated.
+ * Kept keys are in a min-heap on their totals, so adding a weight takes logarithmic time.
+ */
+public class SpaceSavingSketch
+{
+    public record Entry(long key, long total, long error)
+    {
+    }
+
+    private final int capacity;
+    private final long[] keys;
+    private final long[] totals;
+    private final long[] errors;
+    // heap slot of each kept key
+    private final Long2IntOpenHashMap slots;
+    private int size = 0;
+
+    public SpaceSavingSketch(int capacity)
+    {
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.totals = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = new Long2IntOpenHashMap(capacity * 2);
+        this.slots.defaultReturnValue(-1);
+    }
+
+    public void add(long key, long weight)
+    {
+        int slot = slots.get(key);
+        if (slot < 0 && size < capacity)
+        {
+            // new leaf, which can only be lighter than its parents
+            slot = size++;
+            keys[slot] = key;
+            totals[slot] = weight;
+            errors[slot] = 0;
+            slots.put(key, slot);
+            siftUp(slot);
+            return;
+        }
+        if (slot < 0)
+        {
+            // replacing the key with the lowest total
+            slot = 0;
+            slots.remove(keys[slot]);
+            errors[slot] = totals[slot];
+            keys[slot] = key;
+            slots.put(key, slot);
+        }
+        totals[slot] += weight;
+        siftDown(slot);
+    }
+
+    private void siftUp(int slot)
+    {
+        while (slot > 0)
+        {
+            int parent = (slot - 1) / 2;
+            if (totals[parent] <= totals[slot])
+            {
+                return;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot)
+    {
+        while (true)
+        {
+            int smallest = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if (left < size && totals[left] < totals[smallest])
+            {
+                smallest = left;
+            }
+            if (right < size && totals[right] < totals[smallest])
+            {
+                smallest = right;
+            }
+            if (smallest == slot)
+            {
+                return;
+            }
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        long key = keys[a];
+        long total = totals[a];
+        long error = errors[a];
+        keys[a] = keys[b];
+        totals[a] = totals[b];
+        errors[a] = errors[b];
+        keys[b] = key;
+        totals[b] = total;
+        errors[b] = error;
+        slots.put(keys[a], a);
+        slots.put(keys[b], b);
+    }
+
+    /**
+     * @return up to limit kept keys, from the largest total
+     */
+    public List<Entry> top(int limit)
+    {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            entries.add(new Entry(keys[i], totals[i], errors[i]));
+        }
+        entries.sort(Comparator.comparingLong(Entry::total).reversed());
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    public void clear()
+    {
+        slots.clear();
+        size = 0;
+    }
+}
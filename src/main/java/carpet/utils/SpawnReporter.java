@@ -1,6 +1,11 @@
 package carpet.utils;
 
 import carpet.CarpetSettings;
+import carpet.script.utils.ShapeDispatcher;
+import carpet.script.value.ListValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2LongMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
@@ -10,6 +15,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.tags.BlockTags;
 import net.minecraft.util.Mth;
 import net.minecraft.util.random.Weighted;
@@ -45,6 +51,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 public class SpawnReporter
 {
@@ -395,7 +402,95 @@ public class SpawnReporter
         return NaturalSpawner.isInNetherFortressBounds(blockPos, serverLevel, mobCategory, structureManager) ? NetherFortressStructure.FORTRESS_ENEMIES : chunkGenerator.getMobsAt(holder != null ? holder : serverLevel.getBiome(blockPos), structureManager, mobCategory, blockPos);
     }
 
+    public static final int DEFAULT_SAMPLES = 50;
+    private static final int HEATMAP_DURATION = 1200;
+    public static final int MAX_HEATMAP_POSITIONS = 4096;
+    // positions times samples, as the whole heatmap is checked within a single tick
+    public static final long MAX_HEATMAP_SAMPLES = 40960;
+    private static final int CHECKS_PER_SAMPLE = 20;
+
+    /**
+     * Mobs used to check spawning rules, one per entity type, created once and moved around instead of
+     * creating a new mob for each attempt. They are never added to the world nor initialized with
+     * {@link Mob#finalizeSpawn}, so they behave like freshly created mobs on each check.
+     */
+    private static class SpawnProbes
+    {
+        private final ServerLevel level;
+        private final Map<EntityType<?>, Mob> probes = new HashMap<>();
+
+        private SpawnProbes(ServerLevel level)
+        {
+            this.level = level;
+        }
+
+        private Mob get(EntityType<?> type)
+        {
+            return probes.computeIfAbsent(type, t -> (Mob) t.create(level, EntitySpawnReason.NATURAL));
+        }
+
+        private void discardAll()
+        {
+            probes.values().forEach(Entity::discard);
+            probes.clear();
+        }
+    }
+
+    /**
+     * @return number of passed spawn rule checks, out of {@code samples * 20}
+     */
+    private static int countPassedChecks(ServerLevel worldIn, BlockPos pos, Mob probe, int samples)
+    {
+        int willSpawn = 0;
+        EntityType<?> etype = probe.getType();
+        for (int attempt = 0; attempt < samples; ++attempt)
+        {
+            probe.snapTo(pos.getX() + 0.5F, pos.getY(), pos.getZ() + 0.5F, worldIn.getRandom().nextFloat() * 360.0F, 0.0F);
+            for (int i = 0; i < CHECKS_PER_SAMPLE; ++i)
+            {
+                if (
+                        SpawnPlacements.checkSpawnRules(etype,worldIn, EntitySpawnReason.NATURAL, pos, worldIn.getRandom()) &&
+                        SpawnPlacements.isSpawnPositionOk(etype, worldIn, pos) &&
+                        probe.checkSpawnRules(worldIn, EntitySpawnReason.NATURAL)
+                    // && mob.canSpawn(worldIn) // entity collisions // mostly - except ocelots
+                )
+                {
+                    if (etype == EntityType.OCELOT)
+                    {
+                        BlockState blockState = worldIn.getBlockState(pos.below());
+                        if ((pos.getY() < worldIn.getSeaLevel()) || !(blockState.is(Blocks.GRASS_BLOCK) || blockState.is(BlockTags.LEAVES))) {
+                           continue;
+                        }
+                    }
+                    willSpawn += 1;
+                }
+            }
+        }
+        return willSpawn;
+    }
+
+    /**
+     * Checks if a freshly spawned mob would fit at the position, which needs a new mob,
+     * since {@link Mob#finalizeSpawn} can change its size, or add riders
+     */
+    private static boolean fitsAfterSpawn(ServerLevel worldIn, BlockPos pos, EntityType<?> type)
+    {
+        Mob mob = (Mob) type.create(worldIn, EntitySpawnReason.NATURAL);
+        mob.snapTo(pos.getX() + 0.5F, pos.getY(), pos.getZ() + 0.5F, worldIn.getRandom().nextFloat() * 360.0F, 0.0F);
+        boolean fits = worldIn.noCollision(mob);
+        mob.finalizeSpawn(worldIn, worldIn.getCurrentDifficultyAt(mob.blockPosition()), EntitySpawnReason.NATURAL, null);
+        // the code invokes onInitialSpawn after getCanSpawHere
+        fits = fits && worldIn.noCollision(mob);
+        killEntity(mob);
+        return fits;
+    }
+
     public static List<Component> report(BlockPos pos, ServerLevel worldIn)
+    {
+        return report(pos, worldIn, DEFAULT_SAMPLES);
+    }
+
+    public static List<Component> report(BlockPos pos, ServerLevel worldIn, int samples)
     {
         List<Component> rep = new ArrayList<>();
         int x = pos.getX();
@@ -406,103 +501,146 @@ public class SpawnReporter
         String relativeHeight = (y == lc) ? "right at it." : String.format("%d blocks %s it.", Mth.abs(y - lc), (y >= lc) ? "above" : "below");
         rep.add(Messenger.s(String.format("Maximum spawn Y value for (%+d, %+d) is %d. You are " + relativeHeight, x, z, lc)));
         rep.add(Messenger.s("Spawns:"));
-        for (MobCategory category : cachedMobCategories())
+        SpawnProbes probes = new SpawnProbes(worldIn);
+        try
         {
-            String categoryCode = String.valueOf(category).substring(0, 3);
-            WeightedList<MobSpawnSettings.SpawnerData> lst = getSpawnEntries(worldIn, worldIn.structureManager(), worldIn.getChunkSource().getGenerator(), category, pos, worldIn.getBiome(pos));
-            if (lst != null && !lst.isEmpty())
+            for (MobCategory category : cachedMobCategories())
             {
-                for (Weighted<MobSpawnSettings.SpawnerData> wspawnEntry : lst.unwrap())
+                String categoryCode = String.valueOf(category).substring(0, 3);
+                WeightedList<MobSpawnSettings.SpawnerData> lst = getSpawnEntries(worldIn, worldIn.structureManager(), worldIn.getChunkSource().getGenerator(), category, pos, worldIn.getBiome(pos));
+                if (lst != null && !lst.isEmpty())
                 {
-                    MobSpawnSettings.SpawnerData spawnEntry = wspawnEntry.value();
-                    if (SpawnPlacements.getPlacementType(spawnEntry.type()) == null)
-                        continue; // vanilla bug
-                    boolean canSpawn = SpawnPlacements.isSpawnPositionOk(spawnEntry.type(), worldIn, pos);
-                    int willSpawn = -1;
-                    boolean fits = false;
-                    
-                    Mob mob;
-                    try
+                    for (Weighted<MobSpawnSettings.SpawnerData> wspawnEntry : lst.unwrap())
                     {
-                        mob = (Mob) spawnEntry.type().create(worldIn, EntitySpawnReason.NATURAL);
-                    }
-                    catch (Exception e)
-                    {
-                        CarpetSettings.LOG.warn("Exception while creating mob for spawn reporter", e);
-                        return rep;
-                    }
-                    
-                    if (canSpawn)
-                    {
-                        willSpawn = 0;
-                        for (int attempt = 0; attempt < 50; ++attempt)
+                        MobSpawnSettings.SpawnerData spawnEntry = wspawnEntry.value();
+                        if (SpawnPlacements.getPlacementType(spawnEntry.type()) == null)
+                            continue; // vanilla bug
+                        boolean canSpawn = SpawnPlacements.isSpawnPositionOk(spawnEntry.type(), worldIn, pos);
+
+                        Mob mob = probes.get(spawnEntry.type());
+
+                        String mobTypeName = mob.getType().getDescription().getString();
+                        //String pack_size = Integer.toString(mob.getMaxSpawnClusterSize());//String.format("%d-%d", animal.minGroupCount, animal.maxGroupCount);
+                        int weight = wspawnEntry.weight();
+                        if (canSpawn)
+                        {
+                            int willSpawn = countPassedChecks(worldIn, pos, mob, samples);
+                            boolean fits = fitsAfterSpawn(worldIn, pos, spawnEntry.type());
+                            String color = (fits && willSpawn > 0) ? "e" : "gi";
+                            rep.add(Messenger.c(
+                                    String.format("%s %s: %s (%d:%d-%d/%d), can: ", color, categoryCode, mobTypeName, weight, spawnEntry.minCount(), spawnEntry.maxCount(),  mob.getMaxSpawnClusterSize()),
+                                    "l YES",
+                                    color + " , fit: ",
+                                    (fits ? "l YES" : "r NO"),
+                                    color + " , will: ",
+                                    ((willSpawn > 0)?"l ":"r ") + willSpawn * 100 / (samples * CHECKS_PER_SAMPLE) + "%"
+                            ));
+                        }
+                        else
                         {
-                            float f = x + 0.5F;
-                            float f1 = z + 0.5F;
-                            mob.snapTo(f, y, f1, worldIn.getRandom().nextFloat() * 360.0F, 0.0F);
-                            fits = worldIn.noCollision(mob);
-                            EntityType<?> etype = mob.getType();
-
-                            for (int i = 0; i < 20; ++i)
-                            {
-                                if (
-                                        SpawnPlacements.checkSpawnRules(etype,worldIn, EntitySpawnReason.NATURAL, pos, worldIn.getRandom()) &&
-                                        SpawnPlacements.isSpawnPositionOk(etype, worldIn, pos) &&
-                                        mob.checkSpawnRules(worldIn, EntitySpawnReason.NATURAL)
-                                    // && mob.canSpawn(worldIn) // entity collisions // mostly - except ocelots
-                                )
-                                {
-                                    if (etype == EntityType.OCELOT)
-                                    {
-                                        BlockState blockState = worldIn.getBlockState(pos.below());
-                                        if ((pos.getY() < worldIn.getSeaLevel()) || !(blockState.is(Blocks.GRASS_BLOCK) || blockState.is(BlockTags.LEAVES))) {
-                                           continue;
-                                        }
-                                    }
-                                    willSpawn += 1;
-                                }
-                            }
-                            mob.finalizeSpawn(worldIn, worldIn.getCurrentDifficultyAt(mob.blockPosition()), EntitySpawnReason.NATURAL, null);
-                            // the code invokes onInitialSpawn after getCanSpawHere
-                            fits = fits && worldIn.noCollision(mob);
-                            
-                            killEntity(mob);
-                            
-                            try
-                            {
-                                mob = (Mob) spawnEntry.type().create(worldIn, EntitySpawnReason.NATURAL);
-                            }
-                            catch (Exception e)
-                            {
-                                CarpetSettings.LOG.warn("Exception while creating mob for spawn reporter", e);
-                                return rep;
-                            }
+                            rep.add(Messenger.c(String.format("gi %s: %s (%d:%d-%d/%d), can: ", categoryCode, mobTypeName, weight, spawnEntry.minCount(), spawnEntry.maxCount(), mob.getMaxSpawnClusterSize()), "n NO"));
                         }
                     }
-                    
-                    String mobTypeName = mob.getType().getDescription().getString();
-                    //String pack_size = Integer.toString(mob.getMaxSpawnClusterSize());//String.format("%d-%d", animal.minGroupCount, animal.maxGroupCount);
-                    int weight = wspawnEntry.weight();
-                    if (canSpawn)
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            CarpetSettings.LOG.warn("Exception while creating mob for spawn reporter", e);
+        }
+        finally
+        {
+            probes.discardAll();
+        }
+        return rep;
+    }
+
+    /**
+     * Estimates the chance of a mob passing spawning rules for each position in the area, taking the most likely mob
+     * at each position, and shows it to the player as a coloured square on each position, from red to green.
+     * Positions where no mob can be placed are not shown.
+     */
+    public static List<Component> spawnHeatmap(ServerLevel worldIn, BoundingBox area, int samples, @Nullable ServerPlayer player)
+    {
+        List<ShapeDispatcher.ShapeWithConfig> shapes = new ArrayList<>();
+        int positions = 0;
+        int spawnable = 0;
+        double totalChance = 0.0;
+        SpawnProbes probes = new SpawnProbes(worldIn);
+        try
+        {
+            for (BlockPos pos : BlockPos.betweenClosed(area.minX(), area.minY(), area.minZ(), area.maxX(), area.maxY(), area.maxZ()))
+            {
+                positions++;
+                double best = -1.0;
+                for (MobCategory category : cachedMobCategories())
+                {
+                    WeightedList<MobSpawnSettings.SpawnerData> lst = getSpawnEntries(worldIn, worldIn.structureManager(), worldIn.getChunkSource().getGenerator(), category, pos, worldIn.getBiome(pos));
+                    if (lst == null || lst.isEmpty())
                     {
-                        String color = (fits && willSpawn > 0) ? "e" : "gi";
-                        rep.add(Messenger.c(
-                                String.format("%s %s: %s (%d:%d-%d/%d), can: ", color, categoryCode, mobTypeName, weight, spawnEntry.minCount(), spawnEntry.maxCount(),  mob.getMaxSpawnClusterSize()),
-                                "l YES",
-                                color + " , fit: ",
-                                (fits ? "l YES" : "r NO"),
-                                color + " , will: ",
-                                ((willSpawn > 0)?"l ":"r ") + Math.round((double)willSpawn) / 10 + "%"
-                        ));
+                        continue;
                     }
-                    else
+                    for (Weighted<MobSpawnSettings.SpawnerData> wspawnEntry : lst.unwrap())
                     {
-                        rep.add(Messenger.c(String.format("gi %s: %s (%d:%d-%d/%d), can: ", categoryCode, mobTypeName, weight, spawnEntry.minCount(), spawnEntry.maxCount(), mob.getMaxSpawnClusterSize()), "n NO"));
+                        EntityType<?> type = wspawnEntry.value().type();
+                        if (SpawnPlacements.getPlacementType(type) == null || !SpawnPlacements.isSpawnPositionOk(type, worldIn, pos))
+                        {
+                            continue;
+                        }
+                        double chance = (double) countPassedChecks(worldIn, pos, probes.get(type), samples) / (samples * CHECKS_PER_SAMPLE);
+                        best = Math.max(best, chance);
                     }
-                    killEntity(mob);
+                }
+                if (best < 0)
+                {
+                    continue;
+                }
+                spawnable++;
+                totalChance += best;
+                if (player != null)
+                {
+                    shapes.add(heatmapSquare(worldIn, pos, best));
                 }
             }
         }
+        catch (Exception e)
+        {
+            CarpetSettings.LOG.warn("Exception while creating mob for spawn reporter", e);
+            return List.of(Messenger.c("r Failed to check spawning in the area"));
+        }
+        finally
+        {
+            probes.discardAll();
+        }
+        if (player != null && !shapes.isEmpty())
+        {
+            ShapeDispatcher.sendShape(List.of(player), shapes, worldIn.registryAccess());
+        }
+        List<Component> rep = new ArrayList<>();
+        rep.add(Messenger.s(String.format("Checked %d positions with %d samples each", positions, samples)));
+        if (spawnable == 0)
+        {
+            rep.add(Messenger.c("r No mob can spawn in the area"));
+        }
+        else
+        {
+            rep.add(Messenger.c(String.format("w Mobs can spawn on %d positions, with an average spawning chance of %.1f%%", spawnable, 100.0 * totalChance / spawnable)));
+        }
         return rep;
     }
+
+    private static ShapeDispatcher.ShapeWithConfig heatmapSquare(ServerLevel worldIn, BlockPos pos, double chance)
+    {
+        int red = (int) Math.round(255 * (1.0 - chance));
+        int green = (int) Math.round(255 * chance);
+        long rgb = ((long) red << 24) | (green << 16);
+        Map<String, Value> params = new HashMap<>();
+        params.put("from", ListValue.ofNums(pos.getX(), pos.getY(), pos.getZ()));
+        params.put("to", ListValue.ofNums(pos.getX() + 1, pos.getY() + 0.05, pos.getZ() + 1));
+        params.put("color", NumericValue.of(rgb | 0xFF));
+        params.put("fill", NumericValue.of(rgb | 0x60));
+        params.put("duration", NumericValue.of(HEATMAP_DURATION));
+        params.put("dim", StringValue.of(worldIn.dimension().identifier().toString()));
+        return new ShapeDispatcher.ShapeWithConfig(ShapeDispatcher.create(worldIn.getServer(), "box", params), params);
+    }
 }
@@ -0,0 +1,180 @@
+package carpet.utils;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the time each profiled section took in each tick, over the last hour, in histograms with logarithmic buckets,
+ * which take the same amount of memory regardless of how many ticks they hold. The hour is split into slots of five minutes,
+ * and the oldest slot is reused once a new one starts, so percentiles cover the last 55 to 60 minutes.
+ */
+public class TickHealthRecorder
+{
+    private static final long SLOT_MILLIS = 5 * 60 * 1000;
+    private static final int SLOTS = 12;
+    // each power of two is split into 8 buckets, so values are off by at most 12.5%
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // from about a microsecond, everything shorter lands in the first bucket
+    private static final int MIN_EXPONENT = 10;
+    // to about four and a half minutes, everything longer lands in the last bucket
+    private static final int MAX_EXPONENT = 38;
+    private static final int BUCKETS = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    public static final String TICK = "tick";
+
+    public record Summary(String section, long ticks, long p50, long p95, long p99, long max)
+    {
+    }
+
+    private static final class SectionHistogram
+    {
+        private final int[][] counts = new int[SLOTS][BUCKETS];
+        private final long[] slotIds = new long[SLOTS];
+        private final long[] max = new long[SLOTS];
+
+        private SectionHistogram()
+        {
+            Arrays.fill(slotIds, -1);
+        }
+
+        private void record(long slot, long nanos)
+        {
+            int i = (int) (slot % SLOTS);
+            if (slotIds[i] != slot)
+            {
+                Arrays.fill(counts[i], 0);
+                max[i] = 0;
+                slotIds[i] = slot;
+            }
+            counts[i][bucket(nanos)]++;
+            max[i] = Math.max(max[i], nanos);
+        }
+
+        private Summary summarize(String section, long currentSlot)
+        {
+            long[] merged = new long[BUCKETS];
+            long total = 0;
+            long maximum = 0;
+            for (int i = 0; i < SLOTS; i++)
+            {
+                if (slotIds[i] < 0 || slotIds[i] <= currentSlot - SLOTS)
+                {
+                    continue;
+                }
+                for (int b = 0; b < BUCKETS; b++)
+                {
+                    merged[b] += counts[i][b];
+                    total += counts[i][b];
+                }
+                maximum = Math.max(maximum, max[i]);
+            }
+            return new Summary(section, total,
+                    percentile(merged, total, 0.50, maximum),
+                    percentile(merged, total, 0.95, maximum),
+                    percentile(merged, total, 0.99, maximum),
+                    maximum
+            );
+        }
+    }
+
+    private static int bucket(long nanos)
+    {
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent < MIN_EXPONENT)
+        {
+            return 0;
+        }
+        if (exponent > MAX_EXPONENT)
+        {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return highest value that falls into the bucket
+     */
+    private static long bucketTop(int bucket)
+    {
+        if (bucket == 0)
+        {
+            return (1L << MIN_EXPONENT) - 1;
+        }
+        int exponent = (bucket - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int sub = (bucket - 1) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double fraction, long maximum)
+    {
+        if (total == 0)
+        {
+            return 0;
+        }
+        long target = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++)
+        {
+            seen += counts[b];
+            if (seen >= target)
+            {
+                return Math.min(bucketTop(b), maximum);
+            }
+        }
+        return maximum;
+    }
+
+    // guarded by this, summaries can be requested from other threads than the server thread
+    private final Map<String, SectionHistogram> sections = new Object2ObjectOpenHashMap<>();
+    // section times of the tick in progress, sections can run several times in one tick
+    private final Object2LongOpenHashMap<String> currentTick = new Object2LongOpenHashMap<>();
+
+    public void addSection(String section, long nanos)
+    {
+        currentTick.addTo(section, nanos);
+    }
+
+    public synchronized void endTick(long tickNanos)
+    {
+        long slot = System.currentTimeMillis() / SLOT_MILLIS;
+        currentTick.addTo(TICK, tickNanos);
+        for (Object2LongMap.Entry<String> entry : currentTick.object2LongEntrySet())
+        {
+            sections.computeIfAbsent(entry.getKey(), s -> new SectionHistogram()).record(slot, entry.getLongValue());
+        }
+        currentTick.clear();
+    }
+
+    /**
+     * @return summaries of all sections, with the whole tick first, then sections from the slowest
+     */
+    public synchronized List<Summary> summaries()
+    {
+        long slot = System.currentTimeMillis() / SLOT_MILLIS;
+        List<Summary> summaries = new ArrayList<>();
+        sections.forEach((section, histogram) -> {
+            Summary summary = histogram.summarize(section, slot);
+            if (summary.ticks() > 0)
+            {
+                summaries.add(summary);
+            }
+        });
+        summaries.sort(Comparator.comparing((Summary s) -> !s.section().equals(TICK)).thenComparing(Comparator.comparingLong(Summary::p99).reversed()));
+        return summaries;
+    }
+
+    public synchronized void clear()
+    {
+        sections.clear();
+        currentTick.clear();
+    }
+}